@@ -0,0 +1,64 @@
+package com.github.davidfantasy.fastrule.benchmark;
+
+import com.github.davidfantasy.fastrule.condition.Condition;
+import com.github.davidfantasy.fastrule.fact.Fact;
+import com.github.davidfantasy.fastrule.fact.FactSchema;
+import com.github.davidfantasy.fastrule.fact.SchemaFact;
+import com.github.davidfantasy.fastrule.janino.JaninoCondition;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 同一个Janino条件匹配一批SchemaFact时，逐个调用evaluate和按列批量匹配evaluateBatch的耗时
+ */
+@State(Scope.Thread)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class BatchConditionBenchmark {
+
+    @Param({"64", "1024"})
+    private int batchSize;
+
+    private List<Fact> facts;
+
+    private Condition condition;
+
+    private final BitSet out = new BitSet();
+
+    @Setup
+    public void setup() {
+        FactSchema schema = FactSchema.builder().doubleField("temp").longField("count").build();
+        condition = new JaninoCondition("temp > 30.5 && count > 2", new String[]{"temp", "count"},
+                new Class[]{double.class, long.class}, schema);
+        facts = new ArrayList<>(batchSize);
+        for (int i = 0; i < batchSize; i++) {
+            facts.add(new SchemaFact(schema, "fact" + i, 0L).setValue("temp", 20.0 + i % 20).setValue("count", i % 5));
+        }
+    }
+
+    @Benchmark
+    public BitSet evaluateEach() {
+        out.clear();
+        for (int i = 0; i < facts.size(); i++) {
+            if (condition.evaluate(facts.get(i))) {
+                out.set(i);
+            }
+        }
+        return out;
+    }
+
+    @Benchmark
+    public BitSet evaluateBatch() {
+        out.clear();
+        condition.evaluateBatch(facts, out);
+        return out;
+    }
+
+}
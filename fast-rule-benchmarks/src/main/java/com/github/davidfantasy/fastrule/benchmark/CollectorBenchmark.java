@@ -0,0 +1,74 @@
+package com.github.davidfantasy.fastrule.benchmark;
+
+import com.github.davidfantasy.fastrule.fact.Fact;
+import com.github.davidfantasy.fastrule.fact.SimpleFact;
+import com.github.davidfantasy.fastrule.fact.collector.CachedQueueCollector;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * CachedQueueCollector缓存fact并批量取出的速率，每次调用写入batchSize个fact后由collect一次性取出
+ */
+@State(Scope.Thread)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class CollectorBenchmark {
+
+    @Param({"1", "64", "1024"})
+    private int batchSize;
+
+    private BenchmarkCollector collector;
+
+    private Fact fact;
+
+    @Setup
+    public void setup() {
+        collector = new BenchmarkCollector(batchSize);
+        fact = new SimpleFact("fact", "v", 1, System.currentTimeMillis());
+    }
+
+    /**
+     * 吞吐量的单位为fact数，而不是调用次数
+     */
+    @Benchmark
+    public void offerAndDrain(Blackhole blackhole, OpCounter counter) {
+        for (int i = 0; i < batchSize; i++) {
+            collector.offer(fact);
+        }
+        List<Fact> facts = collector.collect();
+        counter.facts += facts.size();
+        blackhole.consume(facts);
+    }
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class OpCounter {
+
+        public long facts;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            facts = 0;
+        }
+
+    }
+
+    private static class BenchmarkCollector extends CachedQueueCollector {
+
+        BenchmarkCollector(int capacity) {
+            super(capacity);
+        }
+
+        void offer(Fact fact) {
+            addFact(fact);
+        }
+
+    }
+
+}
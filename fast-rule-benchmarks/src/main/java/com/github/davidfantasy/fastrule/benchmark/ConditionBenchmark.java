@@ -0,0 +1,71 @@
+package com.github.davidfantasy.fastrule.benchmark;
+
+import com.github.davidfantasy.fastrule.condition.AndCondition;
+import com.github.davidfantasy.fastrule.condition.Condition;
+import com.github.davidfantasy.fastrule.fact.SimpleFact;
+import com.github.davidfantasy.fastrule.janino.ConditionCompiler;
+import com.github.davidfantasy.fastrule.janino.JaninoCondition;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 相同逻辑的条件在不同实现方式下的evaluate耗时
+ */
+@State(Scope.Thread)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ConditionBenchmark {
+
+    private SimpleFact fact;
+
+    private Condition handwritten;
+
+    private Condition janino;
+
+    private Condition janinoTree;
+
+    private Condition compiledTree;
+
+    @Setup
+    public void setup() {
+        fact = new SimpleFact("fact", "v", 7, System.currentTimeMillis());
+        fact.addValue("status", 1);
+        handwritten = f -> {
+            int v = (Integer) f.getValue("v");
+            return v > 5 && v < 10 && (Integer) f.getValue("status") == 1;
+        };
+        janino = new JaninoCondition("v > 5 && v < 10 && status == 1",
+                new String[]{"v", "status"}, new Class[]{int.class, int.class});
+        Condition tree = new AndCondition(List.of(
+                new JaninoCondition("v > 5 && v < 10", new String[]{"v"}, new Class[]{int.class}),
+                new JaninoCondition("status == 1", new String[]{"status"}, new Class[]{int.class})));
+        janinoTree = tree;
+        compiledTree = ConditionCompiler.compile(tree);
+    }
+
+    @Benchmark
+    public boolean handwritten() {
+        return handwritten.evaluate(fact);
+    }
+
+    @Benchmark
+    public boolean janino() {
+        return janino.evaluate(fact);
+    }
+
+    @Benchmark
+    public boolean janinoTree() {
+        return janinoTree.evaluate(fact);
+    }
+
+    @Benchmark
+    public boolean compiledTree() {
+        return compiledTree.evaluate(fact);
+    }
+
+}
@@ -0,0 +1,113 @@
+package com.github.davidfantasy.fastrule.benchmark;
+
+import com.github.davidfantasy.fastrule.BaseRule;
+import com.github.davidfantasy.fastrule.DefaultRuleEngine;
+import com.github.davidfantasy.fastrule.DefaultRuleManager;
+import com.github.davidfantasy.fastrule.Rule;
+import com.github.davidfantasy.fastrule.RuleEngine;
+import com.github.davidfantasy.fastrule.RuleManager;
+import com.github.davidfantasy.fastrule.RulesEngineConfig;
+import com.github.davidfantasy.fastrule.fact.Fact;
+import com.github.davidfantasy.fastrule.fact.SimpleFact;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 规则触发的吞吐量和端到端延迟，每次调用都会等待本次触发的全部规则执行完成后才返回。
+ * 无序模式下每个fact会展开为ruleCount个事件，优先级模式下每个fact只有一个事件，由一个线程按顺序执行全部规则
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class FireBenchmark {
+
+    private static final int BATCH_SIZE = 100;
+
+    @Param({"10", "1000", "100000"})
+    private int ruleCount;
+
+    @Param({"false", "true"})
+    private boolean firedByPriority;
+
+    /**
+     * 已经执行过evaluate的规则次数，用于判断一次触发是否已经完成
+     */
+    private final LongAdder evaluated = new LongAdder();
+
+    private RuleEngine ruleEngine;
+
+    private Fact fact;
+
+    private List<Fact> batch;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        RuleManager ruleManager = new DefaultRuleManager();
+        List<Rule> rules = new ArrayList<>(ruleCount);
+        for (int i = 0; i < ruleCount; i++) {
+            rules.add(new CountingRule(i, evaluated));
+        }
+        ruleManager.addAll(rules);
+        ruleEngine = new DefaultRuleEngine(ruleManager, RulesEngineConfig.builder().ringBufferSize(1 << 16).build());
+        ruleEngine.start();
+        //一半的规则满足条件
+        fact = new SimpleFact("fact", "v", ruleCount / 2, System.currentTimeMillis());
+        batch = new ArrayList<>(BATCH_SIZE);
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            batch.add(new SimpleFact("fact" + i, "v", ruleCount / 2, System.currentTimeMillis()));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        ruleEngine.shutdown();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    @OperationsPerInvocation(BATCH_SIZE)
+    public void throughput() {
+        long expected = evaluated.sum() + (long) BATCH_SIZE * ruleCount;
+        ruleEngine.fireAll(batch, firedByPriority);
+        await(expected);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SampleTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public void latency() {
+        long expected = evaluated.sum() + ruleCount;
+        ruleEngine.fire(fact, firedByPriority);
+        await(expected);
+    }
+
+    private void await(long expected) {
+        while (evaluated.sum() < expected) {
+            Thread.onSpinWait();
+        }
+    }
+
+    private static class CountingRule extends BaseRule {
+
+        CountingRule(int index, LongAdder evaluated) {
+            super("rule" + index, "rule" + index, index, null, fact -> {
+                evaluated.increment();
+                return ((Integer) fact.getValue("v")) > index;
+            });
+            enable();
+        }
+
+        @Override
+        public void executeThen(Fact fact) {
+            //只测量引擎本身的开销
+        }
+
+    }
+
+}
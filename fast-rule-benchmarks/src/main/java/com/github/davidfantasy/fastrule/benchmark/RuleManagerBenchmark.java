@@ -0,0 +1,98 @@
+package com.github.davidfantasy.fastrule.benchmark;
+
+import com.github.davidfantasy.fastrule.BaseRule;
+import com.github.davidfantasy.fastrule.CopyOnWriteRuleManager;
+import com.github.davidfantasy.fastrule.DefaultRuleManager;
+import com.github.davidfantasy.fastrule.RuleManager;
+import com.github.davidfantasy.fastrule.fact.Fact;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 规则管理器在并发变更规则时按factId遍历规则的性能，readOnly作为没有写入时的对照
+ */
+@State(Scope.Group)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class RuleManagerBenchmark {
+
+    private static final int FACT_COUNT = 100;
+
+    @Param({"DEFAULT", "COPY_ON_WRITE"})
+    private String managerType;
+
+    @Param({"1000"})
+    private int ruleCount;
+
+    private final AtomicLong sequence = new AtomicLong();
+
+    private RuleManager ruleManager;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        ruleManager = "DEFAULT".equals(managerType) ? new DefaultRuleManager() : new CopyOnWriteRuleManager();
+        List<BaseRule> rules = new ArrayList<>(ruleCount);
+        for (int i = 0; i < ruleCount; i++) {
+            BaseRule rule = new NoopRule("rule" + i, i);
+            //一半的规则只关注特定的fact，另一半关注所有的fact
+            if (i % 2 == 0) {
+                rule.addConcernedFact("fact" + (i % FACT_COUNT));
+            }
+            rules.add(rule);
+        }
+        ruleManager.addAll(rules);
+    }
+
+    @Benchmark
+    @Group("readWrite")
+    @GroupThreads(3)
+    public void read(Blackhole blackhole) {
+        forEach(blackhole);
+    }
+
+    @Benchmark
+    @Group("readWrite")
+    @GroupThreads(1)
+    public void write() {
+        String id = "temp" + sequence.incrementAndGet();
+        ruleManager.add(new NoopRule(id, ThreadLocalRandom.current().nextInt(ruleCount)));
+        ruleManager.remove(id);
+    }
+
+    @Benchmark
+    @Group("readOnly")
+    @GroupThreads(3)
+    public void readOnly(Blackhole blackhole) {
+        forEach(blackhole);
+    }
+
+    private void forEach(Blackhole blackhole) {
+        String factId = "fact" + ThreadLocalRandom.current().nextInt(FACT_COUNT);
+        ruleManager.forEach(factId, rule -> {
+            blackhole.consume(rule);
+            return true;
+        });
+    }
+
+    private static class NoopRule extends BaseRule {
+
+        NoopRule(String id, int priority) {
+            super(id, id, priority, null, fact -> true);
+        }
+
+        @Override
+        public void executeThen(Fact fact) {
+        }
+
+    }
+
+}
@@ -0,0 +1,103 @@
+package com.github.davidfantasy.fastrule.benchmark;
+
+import com.github.davidfantasy.fastrule.fact.FactSchema;
+import com.github.davidfantasy.fastrule.fact.SchemaFact;
+import com.github.davidfantasy.fastrule.fact.SimpleFact;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * SimpleFact在单值和多值两种形态下的访问耗时，以及同样字段数的SchemaFact按名称和按槽位访问的耗时
+ */
+@State(Scope.Thread)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class SimpleFactBenchmark {
+
+    private static final int FIELD_COUNT = 8;
+
+    private SimpleFact single;
+
+    private SimpleFact multi;
+
+    private FactSchema schema;
+
+    private SchemaFact schemaFact;
+
+    private int lastSlot;
+
+    @Setup
+    public void setup() {
+        single = new SimpleFact("single", "v0", 0, System.currentTimeMillis());
+        multi = new SimpleFact("multi", "v0", 0, System.currentTimeMillis());
+        for (int i = 1; i < FIELD_COUNT; i++) {
+            multi.addValue("v" + i, i);
+        }
+        FactSchema.Builder builder = FactSchema.builder();
+        for (int i = 0; i < FIELD_COUNT; i++) {
+            builder.doubleField("v" + i);
+        }
+        schema = builder.build();
+        schemaFact = new SchemaFact(schema, "schema", System.currentTimeMillis());
+        for (int i = 0; i < FIELD_COUNT; i++) {
+            schemaFact.setDouble(schema.field(i), i);
+        }
+        lastSlot = schema.field("v" + (FIELD_COUNT - 1)).slot();
+    }
+
+    @Benchmark
+    public Object singleGetValue() {
+        return single.getValue("v0");
+    }
+
+    @Benchmark
+    public Object multiGetFirstValue() {
+        return multi.getValue("v0");
+    }
+
+    @Benchmark
+    public Object multiGetLastValue() {
+        return multi.getValue("v" + (FIELD_COUNT - 1));
+    }
+
+    @Benchmark
+    public Collection<Object> singleGetValues() {
+        return single.getValues();
+    }
+
+    @Benchmark
+    public Collection<Object> multiGetValues() {
+        return multi.getValues();
+    }
+
+    @Benchmark
+    public SimpleFact createMulti() {
+        SimpleFact fact = new SimpleFact("multi", "v0", 0, 0L);
+        fact.addValue("v1", 1);
+        return fact;
+    }
+
+    @Benchmark
+    public Object schemaGetLastValue() {
+        return schemaFact.getValue("v" + (FIELD_COUNT - 1));
+    }
+
+    @Benchmark
+    public double schemaGetLastDouble() {
+        return schemaFact.getDouble(lastSlot);
+    }
+
+    @Benchmark
+    public SchemaFact createSchema() {
+        SchemaFact fact = new SchemaFact(schema, "schema", 0L);
+        fact.setDouble(schema.field(0), 0);
+        fact.setDouble(schema.field(1), 1);
+        return fact;
+    }
+
+}
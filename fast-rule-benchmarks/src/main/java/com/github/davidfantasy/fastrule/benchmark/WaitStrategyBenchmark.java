@@ -0,0 +1,115 @@
+package com.github.davidfantasy.fastrule.benchmark;
+
+import com.github.davidfantasy.fastrule.BaseRule;
+import com.github.davidfantasy.fastrule.Rule;
+import com.github.davidfantasy.fastrule.RulesEngineConfig;
+import com.github.davidfantasy.fastrule.executor.RuleTaskExecutor;
+import com.github.davidfantasy.fastrule.executor.WaitStrategyType;
+import com.github.davidfantasy.fastrule.fact.Fact;
+import com.github.davidfantasy.fastrule.fact.SimpleFact;
+
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 在当前机器上比较不同等待策略下规则事件从发布到开始执行的延迟，
+ * 用于为不同的部署环境选择合适的RulesEngineConfig配置；
+ * 测量的是执行线程从空闲状态被唤醒的延迟，需要控制发布的间隔，因此没有使用JMH，直接运行main方法即可
+ */
+public class WaitStrategyBenchmark {
+
+    private static final String TS_FIELD = "publishNanos";
+
+    /**
+     * 对每种等待策略按固定的间隔发布samples个事件并统计延迟
+     *
+     * @param config         提供队列容量、执行线程数和生产者模式，等待策略会被逐一替换
+     * @param samples        每种策略的采样数
+     * @param intervalMicros 发布事件的间隔，单位微秒，间隔越大越能体现执行线程从空闲状态被唤醒的延迟
+     */
+    public static Map<WaitStrategyType, LatencyReport> compare(RulesEngineConfig config, int samples, long intervalMicros)
+            throws InterruptedException {
+        Map<WaitStrategyType, LatencyReport> reports = new EnumMap<>(WaitStrategyType.class);
+        for (WaitStrategyType type : WaitStrategyType.values()) {
+            reports.put(type, measure(config, type, samples, intervalMicros));
+        }
+        return reports;
+    }
+
+    private static LatencyReport measure(RulesEngineConfig config, WaitStrategyType type, int samples, long intervalMicros)
+            throws InterruptedException {
+        long[] latencies = new long[samples];
+        CountDownLatch finished = new CountDownLatch(samples);
+        Rule probe = new BaseRule("wait-strategy-probe", "wait-strategy-probe", null, null, fact -> true) {
+            @Override
+            public void executeThen(Fact fact) {
+                long now = System.nanoTime();
+                latencies[(int) (fact.getTs() % samples)] = now - (Long) fact.getValue(TS_FIELD);
+                finished.countDown();
+            }
+        };
+        probe.enable();
+        RuleTaskExecutor executor = new RuleTaskExecutor(RulesEngineConfig.builder()
+                .ringBufferSize(config.getRingBufferSize())
+                .executorThreadPoolSize(config.getExecutorThreadPoolSize())
+                .producerType(config.getProducerType())
+                .waitStrategy(type)
+                .build());
+        executor.start();
+        try {
+            List<Rule> rules = List.of(probe);
+            long intervalNanos = TimeUnit.MICROSECONDS.toNanos(intervalMicros);
+            for (int i = 0; i < samples; i++) {
+                long deadline = System.nanoTime() + intervalNanos;
+                while (System.nanoTime() < deadline) {
+                    Thread.onSpinWait();
+                }
+                SimpleFact fact = new SimpleFact("probe", TS_FIELD, System.nanoTime(), (long) i);
+                executor.submitAll(List.of(fact), rules, null, null);
+            }
+            if (!finished.await(30, TimeUnit.SECONDS)) {
+                throw new IllegalStateException("wait strategy benchmark timeout: " + type);
+            }
+        } finally {
+            executor.shutdown();
+        }
+        Arrays.sort(latencies);
+        long total = 0;
+        for (long latency : latencies) {
+            total += latency;
+        }
+        return new LatencyReport(total / samples,
+                percentile(latencies, 0.5),
+                percentile(latencies, 0.99),
+                percentile(latencies, 0.999),
+                latencies[samples - 1]);
+    }
+
+    private static long percentile(long[] sorted, double p) {
+        int index = (int) Math.ceil(p * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(index, sorted.length - 1))];
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        int samples = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        long intervalMicros = args.length > 1 ? Long.parseLong(args[1]) : 20;
+        //自旋类的策略会让每个执行线程占满一个CPU核，这里只使用一半的核心，避免和发布线程争抢CPU
+        RulesEngineConfig config = RulesEngineConfig.builder()
+                .executorThreadPoolSize(Math.max(1, Runtime.getRuntime().availableProcessors() / 2))
+                .build();
+        //预热一轮，避免JIT编译影响结果
+        compare(config, Math.min(samples, 10_000), intervalMicros);
+        Map<WaitStrategyType, LatencyReport> reports = compare(config, samples, intervalMicros);
+        System.out.printf("%-16s %12s %12s %12s %12s %12s%n", "strategy(ns)", "mean", "p50", "p99", "p99.9", "max");
+        reports.forEach((type, r) -> System.out.printf("%-16s %12d %12d %12d %12d %12d%n",
+                type, r.mean(), r.p50(), r.p99(), r.p999(), r.max()));
+    }
+
+    /**
+     * 延迟统计结果，单位纳秒
+     */
+    public record LatencyReport(long mean, long p50, long p99, long p999, long max) {
+    }
+
+}
@@ -0,0 +1,361 @@
+package com.github.davidfantasy.fastrule;
+
+import com.github.davidfantasy.fastrule.condition.AndCondition;
+import com.github.davidfantasy.fastrule.condition.Condition;
+import com.github.davidfantasy.fastrule.condition.FieldCondition;
+import com.github.davidfantasy.fastrule.fact.Fact;
+
+import java.util.*;
+
+/**
+ * 针对字段比较条件的判别网络（Rete中的alpha网络），按字段建立等值哈希索引和数值区间索引，
+ * 匹配fact时只需要查找索引就能得到条件可能满足的规则，而不需要逐个规则的比对。
+ * 以下规则无法通过索引排除，总是会作为候选规则：
+ * 1. 条件不是FieldCondition或由FieldCondition参与的AndCondition；
+ * 2. 重写了preEvaluate的规则，因为preEvaluate可能会补充fact的数据；
+ * 3. 重写了executeElse的规则，因为即使条件不满足也需要执行executeElse；
+ * 4. 重写了evaluate的规则，因为规则不一定使用condition判断。
+ * 候选规则仍然会完整的执行evaluate，索引只负责排除不可能满足的规则。
+ * 规则快照为每个factId对应的规则和不指定关注fact的规则分别建立一个alpha网络
+ */
+final class AlphaNetwork {
+
+    /**
+     * 按优先级排序的全部规则
+     */
+    private final Rule[] rules;
+
+    /**
+     * 无法通过索引排除的规则下标，已排序
+     */
+    private final int[] alwaysCandidates;
+
+    private final Map<String, FieldIndex> fieldIndexes;
+
+    AlphaNetwork(Rule[] rules) {
+        this.rules = rules;
+        List<Integer> always = new ArrayList<>();
+        Map<String, FieldIndexBuilder> builders = new HashMap<>();
+        for (int i = 0; i < rules.length; i++) {
+            FieldCondition test = alphaTest(rules[i]);
+            if (test == null) {
+                always.add(i);
+            } else {
+                builders.computeIfAbsent(test.getField(), k -> new FieldIndexBuilder()).add(test, i);
+            }
+        }
+        this.alwaysCandidates = always.stream().mapToInt(Integer::intValue).toArray();
+        this.fieldIndexes = new HashMap<>();
+        builders.forEach((field, builder) -> fieldIndexes.put(field, builder.build()));
+    }
+
+    /**
+     * fact的候选规则，按优先级排序
+     */
+    Rule[] candidates(Fact fact) {
+        if (fieldIndexes.isEmpty()) {
+            return rules;
+        }
+        IntList matched = new IntList();
+        fieldIndexes.forEach((field, index) -> index.match(fact.getValue(field), matched));
+        int[] indexed = matched.sorted();
+        //和总是候选的规则归并，保持优先级顺序
+        Rule[] result = new Rule[indexed.length + alwaysCandidates.length];
+        int i = 0, j = 0, n = 0;
+        while (i < indexed.length || j < alwaysCandidates.length) {
+            if (j == alwaysCandidates.length || (i < indexed.length && indexed[i] < alwaysCandidates[j])) {
+                result[n++] = rules[indexed[i++]];
+            } else {
+                result[n++] = rules[alwaysCandidates[j++]];
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 选出可以用于建立索引的字段条件，等值条件的选择性通常更好，优先使用
+     */
+    private static FieldCondition alphaTest(Rule rule) {
+        if (!(rule instanceof BaseRule baseRule) || overrides(rule, "preEvaluate") || overrides(rule, "executeElse")
+                || overrides(rule, "evaluate")) {
+            return null;
+        }
+        Condition condition = baseRule.getCondition();
+        if (condition instanceof FieldCondition fieldCondition) {
+            return fieldCondition;
+        }
+        if (condition != null && condition.getClass() == AndCondition.class && ((AndCondition) condition).getConditions() != null) {
+            FieldCondition best = null;
+            for (Condition c : ((AndCondition) condition).getConditions()) {
+                if (c instanceof FieldCondition fc && (best == null
+                        || (best.getOperator() == FieldCondition.Operator.RANGE && fc.getOperator() != FieldCondition.Operator.RANGE))) {
+                    best = fc;
+                }
+            }
+            return best;
+        }
+        return null;
+    }
+
+    private static boolean overrides(Rule rule, String method) {
+        try {
+            return rule.getClass().getMethod(method, Fact.class).getDeclaringClass() != BaseRule.class;
+        } catch (NoSuchMethodException e) {
+            return true;
+        }
+    }
+
+    private static final class FieldIndex {
+
+        final Map<Object, int[]> equals;
+
+        /**
+         * 只有下界的区间，按下界升序
+         */
+        final Range[] lowerOnly;
+
+        /**
+         * 只有上界的区间，按上界降序
+         */
+        final Range[] upperOnly;
+
+        /**
+         * 同时有上下界的区间组成的区间树，没有这类区间时为null
+         */
+        final IntervalNode bounded;
+
+        FieldIndex(Map<Object, int[]> equals, Range[] lowerOnly, Range[] upperOnly, IntervalNode bounded) {
+            this.equals = equals;
+            this.lowerOnly = lowerOnly;
+            this.upperOnly = upperOnly;
+            this.bounded = bounded;
+        }
+
+        void match(Object value, IntList matched) {
+            if (value == null) {
+                return;
+            }
+            if (!equals.isEmpty()) {
+                int[] rules = equals.get(FieldCondition.normalize(value));
+                if (rules != null) {
+                    matched.addAll(rules);
+                }
+            }
+            if (!(value instanceof Number number)) {
+                return;
+            }
+            double v = number.doubleValue();
+            for (Range r : lowerOnly) {
+                if (r.lower > v) {
+                    break;
+                }
+                if (r.condition.inRange(v)) {
+                    matched.add(r.rule);
+                }
+            }
+            for (Range r : upperOnly) {
+                if (r.upper < v) {
+                    break;
+                }
+                if (r.condition.inRange(v)) {
+                    matched.add(r.rule);
+                }
+            }
+            if (bounded != null) {
+                bounded.match(v, matched);
+            }
+        }
+
+    }
+
+    /**
+     * 同时有上下界的区间组成的静态中心区间树：每个节点保存包含中心点的区间，完全在中心点左侧或右侧的区间放到左右子树，
+     * 中心点取所有端点的中位数，树的高度为O(log n)；查询时只沿一条路径访问节点，每个节点只扫描可能包含该值的区间
+     */
+    private static final class IntervalNode {
+
+        final double center;
+
+        /**
+         * 包含中心点的区间，按下界升序
+         */
+        final Range[] byLower;
+
+        /**
+         * 包含中心点的区间，按上界降序
+         */
+        final Range[] byUpper;
+
+        final IntervalNode left;
+
+        final IntervalNode right;
+
+        IntervalNode(double center, Range[] byLower, Range[] byUpper, IntervalNode left, IntervalNode right) {
+            this.center = center;
+            this.byLower = byLower;
+            this.byUpper = byUpper;
+            this.left = left;
+            this.right = right;
+        }
+
+        static IntervalNode build(List<Range> ranges) {
+            if (ranges.isEmpty()) {
+                return null;
+            }
+            double[] endpoints = new double[ranges.size() * 2];
+            int n = 0;
+            for (Range r : ranges) {
+                endpoints[n++] = r.lower;
+                endpoints[n++] = r.upper;
+            }
+            Arrays.sort(endpoints);
+            double center = endpoints[endpoints.length / 2];
+            List<Range> left = new ArrayList<>();
+            List<Range> right = new ArrayList<>();
+            List<Range> overlapping = new ArrayList<>();
+            for (Range r : ranges) {
+                if (r.upper < center) {
+                    left.add(r);
+                } else if (r.lower > center) {
+                    right.add(r);
+                } else {
+                    overlapping.add(r);
+                }
+            }
+            Range[] byLower = overlapping.toArray(new Range[0]);
+            Arrays.sort(byLower, Comparator.comparingDouble(Range::lower));
+            Range[] byUpper = overlapping.toArray(new Range[0]);
+            Arrays.sort(byUpper, Comparator.comparingDouble(Range::upper).reversed());
+            return new IntervalNode(center, byLower, byUpper, build(left), build(right));
+        }
+
+        void match(double v, IntList matched) {
+            IntervalNode node = this;
+            while (node != null) {
+                if (v < node.center) {
+                    //节点中的区间都包含中心点，只需要检查下界不大于v的区间
+                    for (Range r : node.byLower) {
+                        if (r.lower > v) {
+                            break;
+                        }
+                        if (r.condition.inRange(v)) {
+                            matched.add(r.rule);
+                        }
+                    }
+                    node = node.left;
+                } else if (v > node.center) {
+                    for (Range r : node.byUpper) {
+                        if (r.upper < v) {
+                            break;
+                        }
+                        if (r.condition.inRange(v)) {
+                            matched.add(r.rule);
+                        }
+                    }
+                    node = node.right;
+                } else {
+                    for (Range r : node.byLower) {
+                        if (r.condition.inRange(v)) {
+                            matched.add(r.rule);
+                        }
+                    }
+                    return;
+                }
+            }
+        }
+
+    }
+
+    private record Range(double lower, double upper, FieldCondition condition, int rule) {
+    }
+
+    private static final class FieldIndexBuilder {
+
+        final Map<Object, IntList> equals = new HashMap<>();
+
+        final List<Range> lowerOnly = new ArrayList<>();
+
+        final List<Range> upperOnly = new ArrayList<>();
+
+        final List<Range> bounded = new ArrayList<>();
+
+        void add(FieldCondition condition, int rule) {
+            if (condition.getOperator() != FieldCondition.Operator.RANGE) {
+                for (Object value : condition.getValues()) {
+                    equals.computeIfAbsent(value, k -> new IntList()).add(rule);
+                }
+                return;
+            }
+            Double lower = condition.getLower();
+            Double upper = condition.getUpper();
+            Range range = new Range(lower == null ? Double.NEGATIVE_INFINITY : lower,
+                    upper == null ? Double.POSITIVE_INFINITY : upper, condition, rule);
+            if (lower != null && upper != null) {
+                //下界大于上界的区间不会被任何值满足，不需要加入区间树
+                if (range.lower <= range.upper) {
+                    bounded.add(range);
+                }
+            } else if (lower != null) {
+                lowerOnly.add(range);
+            } else if (upper != null) {
+                upperOnly.add(range);
+            } else {
+                //没有任何限制的区间，等价于只要求字段是数值
+                lowerOnly.add(range);
+            }
+        }
+
+        FieldIndex build() {
+            Map<Object, int[]> eq = new HashMap<>(equals.size() * 2);
+            equals.forEach((value, rules) -> eq.put(value, rules.toArray()));
+            lowerOnly.sort(Comparator.comparingDouble(Range::lower));
+            upperOnly.sort(Comparator.comparingDouble(Range::upper).reversed());
+            return new FieldIndex(eq, lowerOnly.toArray(new Range[0]), upperOnly.toArray(new Range[0]), IntervalNode.build(bounded));
+        }
+
+    }
+
+    private static final class IntList {
+
+        private int[] data = new int[8];
+
+        private int size;
+
+        void add(int v) {
+            if (size == data.length) {
+                data = Arrays.copyOf(data, size * 2);
+            }
+            data[size++] = v;
+        }
+
+        void addAll(int[] values) {
+            for (int v : values) {
+                add(v);
+            }
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(data, size);
+        }
+
+        /**
+         * 排序并去重，同一个规则只可能出现在一个字段索引中，但IN条件可能包含规范化后相同的值
+         */
+        int[] sorted() {
+            if (size == 0) {
+                return new int[0];
+            }
+            int[] result = toArray();
+            Arrays.sort(result);
+            int n = 1;
+            for (int i = 1; i < result.length; i++) {
+                if (result[i] != result[n - 1]) {
+                    result[n++] = result[i];
+                }
+            }
+            return n == result.length ? result : Arrays.copyOf(result, n);
+        }
+
+    }
+
+}
@@ -5,10 +5,14 @@ import com.github.davidfantasy.fastrule.condition.Condition;
 import com.github.davidfantasy.fastrule.fact.Fact;
 import lombok.extern.slf4j.Slf4j;
 
+import java.util.BitSet;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Objects;
 import java.util.Set;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
 
 @Slf4j
 public abstract class BaseRule implements Rule {
@@ -23,10 +27,25 @@ public abstract class BaseRule implements Rule {
 
     protected String description;
 
-    private Set<String> concernedFacts;
+    private volatile Set<String> concernedFacts;
 
     private final AtomicBoolean enabled = new AtomicBoolean(false);
 
+    /**
+     * 规则被禁用后是否已经输出过告警，每次禁用只告警一次
+     */
+    private final AtomicBoolean disabledWarned = new AtomicBoolean(false);
+
+    /**
+     * 所属规则管理器的索引刷新回调，关注的fact发生变化时需要通知其刷新索引
+     */
+    private volatile Consumer<Rule> reindexer;
+
+    /**
+     * 子类重写了evaluate时，批量匹配不能直接交给condition，需要逐个调用evaluate
+     */
+    private final boolean evaluateOverridden;
+
     public BaseRule(String id, String name, Integer priority, String description, Condition condition) {
         Assert.notNull(condition, "condition must not be null");
         Assert.notNull(id, "id must not be null");
@@ -35,20 +54,47 @@ public abstract class BaseRule implements Rule {
         this.condition = condition;
         this.priority = Objects.requireNonNullElse(priority, DEFAULT_PRIORITY);
         this.description = description;
+        this.evaluateOverridden = overrides("evaluate", Fact.class);
     }
 
     /**
      * 添加规则关注的factId
      */
     public void addConcernedFact(String factId) {
-        if (this.concernedFacts == null) {
-            this.concernedFacts = new HashSet<>();
+        synchronized (this) {
+            //写时复制，避免并发执行preEvaluate时读到不完整的集合
+            Set<String> facts = this.concernedFacts == null ? new HashSet<>() : new HashSet<>(this.concernedFacts);
+            facts.add(factId);
+            this.concernedFacts = Collections.unmodifiableSet(facts);
         }
-        this.concernedFacts.add(factId);
+        notifyConcernedFactsChanged();
     }
 
     public void clearConcernedFacts() {
         this.concernedFacts = null;
+        notifyConcernedFactsChanged();
+    }
+
+    @Override
+    public Set<String> getConcernedFacts() {
+        return concernedFacts;
+    }
+
+    void bindRuleManager(Consumer<Rule> reindexer) {
+        this.reindexer = reindexer;
+    }
+
+    void unbindRuleManager(Consumer<Rule> reindexer) {
+        if (this.reindexer == reindexer) {
+            this.reindexer = null;
+        }
+    }
+
+    private void notifyConcernedFactsChanged() {
+        Consumer<Rule> current = this.reindexer;
+        if (current != null) {
+            current.accept(this);
+        }
     }
 
     @Override
@@ -71,20 +117,50 @@ public abstract class BaseRule implements Rule {
         return description;
     }
 
+    public Condition getCondition() {
+        return condition;
+    }
+
     @Override
     public boolean preEvaluate(Fact fact) {
-        return concernedFacts == null || concernedFacts.contains(fact.getId());
+        Set<String> facts = this.concernedFacts;
+        return facts == null || facts.contains(fact.getId());
     }
 
     @Override
     public boolean evaluate(Fact fact) {
         if (!this.isEnabled()) {
-            log.warn("try to evaluate a disabled rule：{}，{}", this.name, this.id);
+            if (disabledWarned.compareAndSet(false, true)) {
+                log.warn("try to evaluate a disabled rule：{}，{}", this.name, this.id);
+            }
             return false;
         }
         return this.condition.evaluate(fact);
     }
 
+    @Override
+    public void evaluateBatch(List<? extends Fact> facts, BitSet out) {
+        if (evaluateOverridden) {
+            Rule.super.evaluateBatch(facts, out);
+            return;
+        }
+        if (!this.isEnabled()) {
+            if (disabledWarned.compareAndSet(false, true)) {
+                log.warn("try to evaluate a disabled rule：{}，{}", this.name, this.id);
+            }
+            return;
+        }
+        this.condition.evaluateBatch(facts, out);
+    }
+
+    private boolean overrides(String method, Class<?>... parameterTypes) {
+        try {
+            return getClass().getMethod(method, parameterTypes).getDeclaringClass() != BaseRule.class;
+        } catch (NoSuchMethodException e) {
+            return false;
+        }
+    }
+
     @Override
     public void executeElse(Fact fact) {
         //do nothing
@@ -103,6 +179,7 @@ public abstract class BaseRule implements Rule {
     @Override
     public void disable() {
         enabled.set(false);
+        disabledWarned.set(false);
     }
 
     @Override
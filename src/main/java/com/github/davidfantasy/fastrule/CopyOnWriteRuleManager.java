@@ -0,0 +1,263 @@
+package com.github.davidfantasy.fastrule;
+
+import com.github.davidfantasy.fastrule.fact.Fact;
+import com.github.davidfantasy.fastrule.state.RuleStateStore;
+
+import java.util.*;
+import java.util.function.Consumer;
+
+/**
+ * 基于写时复制的规则管理器，适用于读多写少的场景。
+ * 每次变更都会重新构建一份按优先级排序的不可变规则快照，并通过volatile引用整体发布，
+ * 读取规则时不需要加任何锁，规则执行的耗时也不会阻塞规则的增删；
+ * 批量变更（addAll/removeAll/apply）只会构建和发布一次快照，每个快照就是一个版本的RuleSet。
+ * 规则关注的fact变化（addConcernedFact等）只标记当前快照已过期，下一次读取规则或变更时才重新构建，
+ * 连续多次修改关注的fact只会构建一次快照。
+ * 可选的开启alpha网络，对由FieldCondition声明的规则按字段值建立索引，匹配fact时直接排除条件不可能满足的规则
+ */
+public class CopyOnWriteRuleManager implements RuleManager {
+
+    private final Object writeLock = new Object();
+
+    private final Consumer<Rule> reindexer = this::reindex;
+
+    /**
+     * 只在持有写锁时修改
+     */
+    private volatile boolean alphaNetworkEnabled;
+
+    private volatile RuleSetSnapshot snapshot;
+
+    /**
+     * 有规则关注的fact发生了变化，snapshot中的索引需要重新构建，只在持有写锁时设置为true
+     */
+    private volatile boolean stale;
+
+    private volatile RuleStateStore stateStore;
+
+    public CopyOnWriteRuleManager() {
+        this(false);
+    }
+
+    /**
+     * @param alphaNetworkEnabled 是否为FieldCondition声明的规则建立alpha网络索引，会增加规则变更时构建快照的开销
+     */
+    public CopyOnWriteRuleManager(boolean alphaNetworkEnabled) {
+        this.alphaNetworkEnabled = alphaNetworkEnabled;
+        this.snapshot = RuleSetSnapshot.build(0, Collections.emptyMap(), alphaNetworkEnabled);
+    }
+
+    /**
+     * 每次添加都会复制全部规则并重新构建快照，耗时与规则总数成正比，逐条添加大量规则的总耗时是平方级的；
+     * 初始化或批量加载规则时应使用addAll，只构建一次快照
+     */
+    @Override
+    public void add(Rule rule) {
+        addAll(List.of(rule));
+    }
+
+    @Override
+    public void addAll(Collection<? extends Rule> rules) {
+        synchronized (writeLock) {
+            Map<String, Rule> next = new HashMap<>(snapshot.ruleMap);
+            for (Rule rule : rules) {
+                if (next.putIfAbsent(rule.getId(), rule) != null) {
+                    throw new IllegalArgumentException("rule id already exists:" + rule.getId());
+                }
+            }
+            rules.forEach(this::bindState);
+            publish(next);
+        }
+        for (Rule rule : rules) {
+            if (rule instanceof BaseRule baseRule) {
+                baseRule.bindRuleManager(reindexer);
+            }
+        }
+    }
+
+    @Override
+    public Rule remove(String ruleId) {
+        Rule removed;
+        synchronized (writeLock) {
+            if (!snapshot.ruleMap.containsKey(ruleId)) {
+                return null;
+            }
+            Map<String, Rule> next = new HashMap<>(snapshot.ruleMap);
+            removed = next.remove(ruleId);
+            publish(next);
+        }
+        if (removed instanceof BaseRule baseRule) {
+            baseRule.unbindRuleManager(reindexer);
+        }
+        return removed;
+    }
+
+    @Override
+    public void removeAll(Collection<String> ruleIds) {
+        List<Rule> removed = new ArrayList<>();
+        synchronized (writeLock) {
+            Map<String, Rule> next = new HashMap<>(snapshot.ruleMap);
+            for (String ruleId : ruleIds) {
+                Rule rule = next.remove(ruleId);
+                if (rule != null) {
+                    removed.add(rule);
+                }
+            }
+            if (removed.isEmpty()) {
+                return;
+            }
+            publish(next);
+        }
+        for (Rule rule : removed) {
+            if (rule instanceof BaseRule baseRule) {
+                baseRule.unbindRuleManager(reindexer);
+            }
+        }
+    }
+
+    /**
+     * 规则在锁外并行创建，之后只持有写锁构建一次新的快照
+     */
+    @Override
+    public long apply(RuleSetDiff diff) {
+        List<Rule> rules = diff.createRules();
+        List<Rule> detached;
+        long version;
+        synchronized (writeLock) {
+            Map<String, Rule> next = new HashMap<>(snapshot.ruleMap);
+            detached = diff.applyTo(next, rules);
+            rules.forEach(this::bindState);
+            version = publish(next);
+        }
+        for (Rule rule : detached) {
+            if (rule instanceof BaseRule baseRule) {
+                baseRule.unbindRuleManager(reindexer);
+            }
+        }
+        for (Rule rule : rules) {
+            if (rule instanceof BaseRule baseRule) {
+                baseRule.bindRuleManager(reindexer);
+            }
+        }
+        return version;
+    }
+
+    @Override
+    public RuleSet getRuleSet() {
+        return current();
+    }
+
+    @Override
+    public long getVersion() {
+        return current().getVersion();
+    }
+
+    @Override
+    public int size() {
+        return snapshot.size();
+    }
+
+    @Override
+    public Rule get(String ruleId) {
+        return snapshot.get(ruleId);
+    }
+
+    @Override
+    public void forEach(RuleConsumer consumer) {
+        snapshot.forEach(consumer);
+    }
+
+    @Override
+    public void forEach(String factId, RuleConsumer consumer) {
+        current().forEach(factId, consumer);
+    }
+
+    @Override
+    public void forEach(Fact fact, RuleConsumer consumer) {
+        current().forEach(fact, consumer);
+    }
+
+    /**
+     * 规则关注的fact发生变化后，只将快照标记为过期，由下一次读取或变更重新构建索引
+     */
+    void reindex(Rule rule) {
+        synchronized (writeLock) {
+            if (snapshot.ruleMap.get(rule.getId()) == rule) {
+                stale = true;
+            }
+        }
+    }
+
+    /**
+     * 返回最新的快照，快照已过期时先重新构建
+     */
+    private RuleSetSnapshot current() {
+        if (stale) {
+            synchronized (writeLock) {
+                if (stale) {
+                    publish(new HashMap<>(snapshot.ruleMap));
+                }
+            }
+        }
+        return snapshot;
+    }
+
+    @Override
+    public void clear() {
+        RuleSetSnapshot old;
+        synchronized (writeLock) {
+            old = snapshot;
+            publish(Collections.emptyMap());
+        }
+        for (Rule rule : old.rules) {
+            if (rule instanceof BaseRule baseRule) {
+                baseRule.unbindRuleManager(reindexer);
+            }
+        }
+    }
+
+    /**
+     * 记录状态存储，当前和之后新增的有状态规则都会在生效前绑定
+     */
+    @Override
+    public void bindStateStore(RuleStateStore stateStore) {
+        synchronized (writeLock) {
+            this.stateStore = stateStore;
+            snapshot.ruleMap.values().forEach(this::bindState);
+        }
+    }
+
+    /**
+     * 在规则生效前绑定状态存储，调用时必须持有写锁
+     */
+    private void bindState(Rule rule) {
+        RuleStateStore store = this.stateStore;
+        if (store != null && rule instanceof DelayStatefulTriggerRule statefulRule) {
+            statefulRule.bindStateStoreIfAbsent(store);
+        }
+    }
+
+    /**
+     * 之后的快照开启alpha网络，当前快照在下一次读取规则时重新构建
+     */
+    @Override
+    public void enableAlphaNetwork() {
+        synchronized (writeLock) {
+            if (!alphaNetworkEnabled) {
+                alphaNetworkEnabled = true;
+                stale = true;
+            }
+        }
+    }
+
+    /**
+     * 以递增的版本号发布新的快照，调用时必须持有写锁
+     */
+    private long publish(Map<String, Rule> ruleMap) {
+        RuleSetSnapshot next = RuleSetSnapshot.build(snapshot.getVersion() + 1, ruleMap, alphaNetworkEnabled);
+        snapshot = next;
+        stale = false;
+        return next.getVersion();
+    }
+
+}
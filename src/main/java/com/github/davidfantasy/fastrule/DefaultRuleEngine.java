@@ -1,15 +1,19 @@
 package com.github.davidfantasy.fastrule;
 
 import cn.hutool.core.lang.Assert;
+import com.github.davidfantasy.fastrule.executor.FactDispatcher;
 import com.github.davidfantasy.fastrule.executor.RuleTaskExecutor;
 import com.github.davidfantasy.fastrule.fact.Fact;
 import com.github.davidfantasy.fastrule.fact.FactCollector;
+import com.github.davidfantasy.fastrule.state.RuleStateStore;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.extern.slf4j.Slf4j;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -22,12 +26,16 @@ public class DefaultRuleEngine implements RuleEngine {
 
     private final RuleTaskExecutor ruleTaskExecutor;
 
+    private final FactDispatcher factDispatcher;
+
     private final RulesEngineConfig rulesEngineConfig;
 
     private final ScheduledExecutorService collectorExecutor;
 
     private List<FactCollectorInfo> factCollectors = new ArrayList<>();
 
+    private final Map<String, FactSubscriber> subscribers = new ConcurrentHashMap<>();
+
     private AtomicBoolean started = new AtomicBoolean(false);
 
     public DefaultRuleEngine(RuleManager ruleManager, RulesEngineConfig rulesEngineConfig) {
@@ -38,8 +46,11 @@ public class DefaultRuleEngine implements RuleEngine {
             this.rulesEngineConfig = RulesEngineConfig.builder().build();
         }
         Assert.notNull(ruleManager, "ruleManager must not be null");
-        int corePoolSize = Runtime.getRuntime().availableProcessors();
-        ruleTaskExecutor = new RuleTaskExecutor(4096, corePoolSize * 2);
+        if (this.rulesEngineConfig.isAlphaNetworkEnabled()) {
+            ruleManager.enableAlphaNetwork();
+        }
+        ruleTaskExecutor = new RuleTaskExecutor(this.rulesEngineConfig);
+        factDispatcher = new FactDispatcher(ruleTaskExecutor, ruleManager, this.rulesEngineConfig);
         collectorExecutor = Executors.newScheduledThreadPool(this.rulesEngineConfig.getCollectorScheduledThreadPoolSize(),
                 new ThreadFactory() {
                     private final AtomicInteger index = new AtomicInteger(1);
@@ -68,6 +79,9 @@ public class DefaultRuleEngine implements RuleEngine {
     public void start() {
         if (started.compareAndSet(false, true)) {
             ruleTaskExecutor.start();
+            restoreRuleStates();
+            rulesEngineConfig.getMetrics().bindRemainingCapacity(ruleTaskExecutor::remainingCapacity);
+            factDispatcher.start();
             startCollectors();
         } else {
             log.warn("rule engine already started");
@@ -77,31 +91,53 @@ public class DefaultRuleEngine implements RuleEngine {
     @Override
     public void shutdown() {
         if (started.compareAndSet(true, false)) {
-            ruleTaskExecutor.shutdown();
             stopCollectors();
+            subscribers.values().forEach(FactSubscriber::cancel);
+            subscribers.clear();
+            factDispatcher.shutdown();
+            ruleTaskExecutor.shutdown();
+            if (rulesEngineConfig.getRuleStateStore() != null) {
+                rulesEngineConfig.getRuleStateStore().close();
+            }
+        }
+    }
+
+    /**
+     * 加载已保存的状态并绑定到有状态规则，引擎启动后新增的规则由规则管理器在添加时绑定
+     */
+    private void restoreRuleStates() {
+        RuleStateStore stateStore = rulesEngineConfig.getRuleStateStore();
+        if (stateStore == null) {
+            return;
         }
+        stateStore.open();
+        ruleManager.bindStateStore(stateStore);
     }
 
     /**
-     * 如果无需保障规则顺序，默认会将fact和rule分散到不同的事件队列中去异步执行，这样性能更高。
+     * 如果无需保障规则顺序，默认会将fact和rule分散到不同的事件队列中去异步执行，这样性能更高，
+     * 分发时只会选取关注该fact的规则，避免大量无效的事件占用队列。
      * 如果firedByPriority为true，则单个fact会确保会按照优先级顺序同步的比对所有的规则，并根据RulesEngineConfig
      * 中的设置进行规则跳过。
+     * 事件队列已满时的行为取决于RulesEngineConfig中的overloadPolicy，默认会阻塞调用方。
      */
     @Override
-    public void fire(Fact fact, boolean firedByPriority) {
+    public FireResult fire(Fact fact, boolean firedByPriority) {
         if (!started.get()) {
             throw new IllegalStateException("rule engine not started");
         }
-        if (firedByPriority) {
-            ruleTaskExecutor.submit(fact, ruleManager, this.rulesEngineConfig);
-        } else {
-            ruleManager.forEach(rule -> {
-                if (rule.isEnabled()) {
-                    ruleTaskExecutor.submit(fact, rule, null);
-                }
-                return true;
-            });
+        return factDispatcher.dispatch(fact, firedByPriority);
+    }
+
+    @Override
+    public FireResult fireAll(Collection<? extends Fact> facts, boolean firedByPriority) {
+        if (!started.get()) {
+            throw new IllegalStateException("rule engine not started");
+        }
+        if (facts.isEmpty()) {
+            return FireResult.ACCEPTED;
         }
+        return factDispatcher.dispatch(facts, firedByPriority);
     }
 
     @Override
@@ -116,9 +152,7 @@ public class DefaultRuleEngine implements RuleEngine {
         collector.startup();
         ScheduledFuture<?> future = collectorExecutor.scheduleWithFixedDelay(() -> {
             try {
-                collector.collect().forEach(fact -> {
-                    fire(fact, firedByPriority);
-                });
+                collectAndFire(collector, firedByPriority);
             } catch (Exception e) {
                 log.warn("rule fact collect error: {},{}", collector.getName(), e.getMessage());
             }
@@ -141,6 +175,56 @@ public class DefaultRuleEngine implements RuleEngine {
         }).collect(Collectors.toList());
     }
 
+    @Override
+    public void subscribe(String name, Flow.Publisher<? extends Fact> source, int batchSize, long maxLatencyMs, boolean firedByPriority) {
+        if (!started.get()) {
+            throw new IllegalStateException("rule engine not started");
+        }
+        if (maxLatencyMs <= 0) {
+            throw new IllegalArgumentException("maxLatencyMs must be greater than 0");
+        }
+        FactSubscriber subscriber = new FactSubscriber(name, batchSize, facts -> {
+            rulesEngineConfig.getMetrics().recordCollectorBatch(name, facts.size());
+            fireAll(facts, firedByPriority);
+        });
+        //已经结束的数据源可以用同样的名称重新订阅
+        FactSubscriber existing = subscribers.merge(name, subscriber, (old, current) -> old.isDone() ? current : old);
+        if (existing != subscriber) {
+            throw new IllegalArgumentException("重复订阅fact数据源：" + name);
+        }
+        subscriber.setLingerFuture(collectorExecutor.scheduleWithFixedDelay(() -> {
+            try {
+                subscriber.flushIfLingering();
+            } catch (Exception e) {
+                log.warn("fire lingering facts error: {},{}", name, e.getMessage());
+            }
+        }, maxLatencyMs, maxLatencyMs, TimeUnit.MILLISECONDS));
+        source.subscribe(subscriber);
+    }
+
+    @Override
+    public void unsubscribe(String name) {
+        FactSubscriber subscriber = subscribers.remove(name);
+        if (subscriber != null) {
+            subscriber.cancel();
+        }
+    }
+
+    @Override
+    public long getRejectedFactCount() {
+        return factDispatcher.getRejectedFactCount();
+    }
+
+    @Override
+    public long getDroppedFactCount() {
+        return factDispatcher.getDroppedFactCount();
+    }
+
+    private void collectAndFire(FactCollector collector, boolean firedByPriority) {
+        List<Fact> facts = collector.collect();
+        rulesEngineConfig.getMetrics().recordCollectorBatch(collector.getName(), facts.size());
+        fireAll(facts, firedByPriority);
+    }
 
     private void stopCollectors() {
         for (FactCollectorInfo f : factCollectors) {
@@ -160,10 +244,7 @@ public class DefaultRuleEngine implements RuleEngine {
             collector.startup();
             ScheduledFuture<?> newFuture = collectorExecutor.scheduleWithFixedDelay(() -> {
                 try {
-                    List<Fact> facts = collector.collect();
-                    for (Fact fact : facts) {
-                        fire(fact, f.isFiredByPriority());
-                    }
+                    collectAndFire(collector, f.isFiredByPriority());
                 } catch (Exception e) {
                     log.warn("rule fact collect error: {}", e.getMessage());
                 }
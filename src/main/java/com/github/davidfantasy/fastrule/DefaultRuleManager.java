@@ -1,14 +1,25 @@
 package com.github.davidfantasy.fastrule;
 
+import com.github.davidfantasy.fastrule.fact.Fact;
+import com.github.davidfantasy.fastrule.state.RuleStateStore;
+
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.TreeSet;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
 
 /**
- * 默认的规则管理器，支持规则按优先级遍历，规则的维护都是线程安全的
+ * 默认的规则管理器，支持规则按优先级遍历，规则的维护都是线程安全的。
+ * 内部维护了factId到规则的索引，没有指定关注fact的规则放在通配索引中，
+ * 这样按factId遍历时只需要访问真正关心该fact的规则。
+ * 每次变更后版本递增，getRuleSet返回的快照在该版本第一次被读取时构建；
+ * 开启alpha网络后，快照会为FieldCondition声明的规则建立字段索引
  */
 public class DefaultRuleManager implements RuleManager {
 
@@ -16,12 +27,57 @@ public class DefaultRuleManager implements RuleManager {
 
     protected final Map<String, Rule> ruleMap = new HashMap<>();
 
+    /**
+     * factId -> 关注该fact的规则
+     */
+    protected final Map<String, TreeSet<Rule>> factIndex = new HashMap<>();
+
+    /**
+     * 没有指定关注fact的规则，对所有fact生效
+     */
+    protected final TreeSet<Rule> wildcardRules = new TreeSet<>();
+
+    /**
+     * ruleId -> 建立索引时使用的关注fact集合，用于在关注fact变化后准确的清理旧索引
+     */
+    protected final Map<String, Set<String>> indexedFacts = new HashMap<>();
+
     protected final ReadWriteLock readWriteLock = new ReentrantReadWriteLock();
 
     protected final Lock readLock = readWriteLock.readLock();
 
     protected final Lock writeLock = readWriteLock.writeLock();
 
+    private final Consumer<Rule> reindexer = this::reindex;
+
+    /**
+     * 只在持有写锁时修改
+     */
+    private volatile long version;
+
+    /**
+     * 最近一次构建的规则快照，版本落后时重新构建
+     */
+    private volatile RuleSetSnapshot ruleSet;
+
+    private volatile RuleStateStore stateStore;
+
+    /**
+     * 只在持有写锁时修改
+     */
+    private volatile boolean alphaNetworkEnabled;
+
+    public DefaultRuleManager() {
+        this(false);
+    }
+
+    /**
+     * @param alphaNetworkEnabled 是否为FieldCondition声明的规则建立alpha网络索引，会增加构建规则快照的开销
+     */
+    public DefaultRuleManager(boolean alphaNetworkEnabled) {
+        this.alphaNetworkEnabled = alphaNetworkEnabled;
+    }
+
     @Override
     public void add(Rule rule) {
         writeLock.lock();
@@ -29,25 +85,38 @@ public class DefaultRuleManager implements RuleManager {
             if (ruleMap.containsKey(rule.getId())) {
                 throw new IllegalArgumentException("rule id already exists:" + rule.getId());
             }
+            bindState(rule);
             ruleMap.put(rule.getId(), rule);
             rules.add(rule);
+            index(rule);
+            version++;
         } finally {
             writeLock.unlock();
         }
+        if (rule instanceof BaseRule baseRule) {
+            baseRule.bindRuleManager(reindexer);
+        }
     }
 
     @Override
     public Rule remove(String ruleId) {
+        Rule removed;
         writeLock.lock();
         try {
             if (!ruleMap.containsKey(ruleId)) {
                 return null;
             }
             rules.removeIf(r -> r.getId().equals(ruleId));
-            return ruleMap.remove(ruleId);
+            removed = ruleMap.remove(ruleId);
+            unindex(removed);
+            version++;
         } finally {
             writeLock.unlock();
         }
+        if (removed instanceof BaseRule baseRule) {
+            baseRule.unbindRuleManager(reindexer);
+        }
+        return removed;
     }
 
 
@@ -73,16 +142,235 @@ public class DefaultRuleManager implements RuleManager {
         }
     }
 
+    @Override
+    public void forEach(String factId, RuleConsumer consumer) {
+        readLock.lock();
+        try {
+            TreeSet<Rule> concerned = factIndex.get(factId);
+            if (concerned == null) {
+                for (Rule rule : wildcardRules) {
+                    if (!consumer.accept(rule)) {
+                        break;
+                    }
+                }
+                return;
+            }
+            //两个集合都已按优先级排序，归并遍历以保持整体的优先级顺序
+            Iterator<Rule> a = concerned.iterator();
+            Iterator<Rule> b = wildcardRules.iterator();
+            Rule x = a.hasNext() ? a.next() : null;
+            Rule y = b.hasNext() ? b.next() : null;
+            while (x != null || y != null) {
+                Rule rule;
+                if (y == null || (x != null && x.compareTo(y) <= 0)) {
+                    rule = x;
+                    x = a.hasNext() ? a.next() : null;
+                } else {
+                    rule = y;
+                    y = b.hasNext() ? b.next() : null;
+                }
+                if (!consumer.accept(rule)) {
+                    break;
+                }
+            }
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    /**
+     * 开启alpha网络时通过当前版本的快照按字段值排除规则，否则只按factId筛选
+     */
+    @Override
+    public void forEach(Fact fact, RuleConsumer consumer) {
+        if (alphaNetworkEnabled) {
+            getRuleSet().forEach(fact, consumer);
+        } else {
+            forEach(fact.getId(), consumer);
+        }
+    }
+
+    /**
+     * 规则关注的fact发生变化后，刷新该规则在索引中的位置
+     */
+    void reindex(Rule rule) {
+        writeLock.lock();
+        try {
+            //规则可能已经被移除或被同ID的其它规则替换
+            if (ruleMap.get(rule.getId()) != rule) {
+                return;
+            }
+            unindex(rule);
+            index(rule);
+            version++;
+        } finally {
+            writeLock.unlock();
+        }
+    }
 
     @Override
     public void clear() {
         writeLock.lock();
         try {
+            for (Rule rule : ruleMap.values()) {
+                if (rule instanceof BaseRule baseRule) {
+                    baseRule.unbindRuleManager(reindexer);
+                }
+            }
             rules.clear();
             ruleMap.clear();
+            factIndex.clear();
+            wildcardRules.clear();
+            indexedFacts.clear();
+            version++;
         } finally {
             writeLock.unlock();
         }
     }
 
+    /**
+     * 规则在锁外并行创建，之后在一次写锁中完成全部变更并重建索引
+     */
+    @Override
+    public long apply(RuleSetDiff diff) {
+        List<Rule> created = diff.createRules();
+        List<Rule> detached;
+        long applied;
+        writeLock.lock();
+        try {
+            Map<String, Rule> next = new HashMap<>(ruleMap);
+            detached = diff.applyTo(next, created);
+            created.forEach(this::bindState);
+            ruleMap.clear();
+            rules.clear();
+            factIndex.clear();
+            wildcardRules.clear();
+            indexedFacts.clear();
+            ruleMap.putAll(next);
+            for (Rule rule : next.values()) {
+                rules.add(rule);
+                index(rule);
+            }
+            applied = ++version;
+        } finally {
+            writeLock.unlock();
+        }
+        for (Rule rule : detached) {
+            if (rule instanceof BaseRule baseRule) {
+                baseRule.unbindRuleManager(reindexer);
+            }
+        }
+        for (Rule rule : created) {
+            if (rule instanceof BaseRule baseRule) {
+                baseRule.bindRuleManager(reindexer);
+            }
+        }
+        return applied;
+    }
+
+    @Override
+    public RuleSet getRuleSet() {
+        RuleSetSnapshot current = this.ruleSet;
+        if (current != null && current.getVersion() == version) {
+            return current;
+        }
+        readLock.lock();
+        try {
+            current = RuleSetSnapshot.build(version, new HashMap<>(ruleMap), alphaNetworkEnabled);
+        } finally {
+            readLock.unlock();
+        }
+        this.ruleSet = current;
+        return current;
+    }
+
+    @Override
+    public long getVersion() {
+        return version;
+    }
+
+    @Override
+    public int size() {
+        readLock.lock();
+        try {
+            return ruleMap.size();
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    /**
+     * 之后的快照开启alpha网络，作为一次变更递增版本
+     */
+    @Override
+    public void enableAlphaNetwork() {
+        writeLock.lock();
+        try {
+            if (!alphaNetworkEnabled) {
+                alphaNetworkEnabled = true;
+                version++;
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * 记录状态存储，当前和之后新增的有状态规则都会在生效前绑定
+     */
+    @Override
+    public void bindStateStore(RuleStateStore stateStore) {
+        writeLock.lock();
+        try {
+            this.stateStore = stateStore;
+            ruleMap.values().forEach(this::bindState);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * 在规则生效前绑定状态存储，调用时必须持有写锁
+     */
+    private void bindState(Rule rule) {
+        RuleStateStore store = this.stateStore;
+        if (store != null && rule instanceof DelayStatefulTriggerRule statefulRule) {
+            statefulRule.bindStateStoreIfAbsent(store);
+        }
+    }
+
+    private void index(Rule rule) {
+        Set<String> facts = rule.getConcernedFacts();
+        if (facts == null) {
+            wildcardRules.add(rule);
+            indexedFacts.put(rule.getId(), null);
+            return;
+        }
+        facts = Set.copyOf(facts);
+        for (String factId : facts) {
+            factIndex.computeIfAbsent(factId, k -> new TreeSet<>()).add(rule);
+        }
+        indexedFacts.put(rule.getId(), facts);
+    }
+
+    private void unindex(Rule rule) {
+        if (!indexedFacts.containsKey(rule.getId())) {
+            return;
+        }
+        Set<String> facts = indexedFacts.remove(rule.getId());
+        if (facts == null) {
+            wildcardRules.remove(rule);
+            return;
+        }
+        for (String factId : facts) {
+            TreeSet<Rule> concerned = factIndex.get(factId);
+            if (concerned != null) {
+                concerned.remove(rule);
+                if (concerned.isEmpty()) {
+                    factIndex.remove(factId);
+                }
+            }
+        }
+    }
+
 }
@@ -1,15 +1,18 @@
 package com.github.davidfantasy.fastrule;
 
-import cn.hutool.core.collection.CollUtil;
 import com.github.davidfantasy.fastrule.condition.Condition;
+import com.github.davidfantasy.fastrule.executor.DelayScheduler;
 import com.github.davidfantasy.fastrule.fact.Fact;
+import com.github.davidfantasy.fastrule.state.RuleState;
+import com.github.davidfantasy.fastrule.state.RuleStateStore;
+import com.github.davidfantasy.fastrule.timer.Timeout;
 import lombok.extern.slf4j.Slf4j;
 
 import java.util.Map;
-import java.util.concurrent.*;
-import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * 有状态的规则，会保存规则的触发状态，触发中的规则不会被再次触发，直到某个fact不再满足规则条件重置规则的触发状态；
@@ -31,34 +34,45 @@ import java.util.concurrent.locks.ReentrantLock;
  * 等待5000ms后，以a=6触发rule1的执行
  * 如果在5000ms内：
  * a=4 不满足，删除等待队列中a的值，到期后不会再执行
+ * 延迟通过引擎的时间轮调度（见RulesEngineConfig.delayTimerTickMs），到期后在引擎的执行线程上执行。
+ * 触发状态按stateKey（默认为factId）分别保存，一个规则可以同时服务大量的设备，设备A的触发不会影响设备B；
+ * 只有已触发或等待延迟触发的key才会保存状态，超过stateTtlMs没有再收到满足条件的fact的状态会被清理。
+ * 需要整个规则共享一个触发状态时，可以重写stateKey返回固定的值。
+ * 绑定RuleStateStore后（见RulesEngineConfig.ruleStateStore），状态的每次变化都会被保存，重启后恢复：
+ * 已触发的key不会被重复触发；等待中的延迟触发只保存到期时间，重启后收到该key满足条件的fact时按剩余的时间继续等待
  **/
 @Slf4j
 public abstract class DelayStatefulTriggerRule extends BaseRule {
 
-    protected AtomicBoolean triggered;
+    public static final long DEFAULT_STATE_TTL_MS = TimeUnit.HOURS.toMillis(24);
 
-    protected Map<String, ScheduledFuture<?>> delayedFacts;
+    /**
+     * 按stateKey保存的触发状态，条件不满足且没有等待中的延迟触发时会被立即移除；
+     * mergeState时会替换为原规则状态的副本，因此使用volatile保证执行线程读到最新的引用
+     */
+    private volatile Map<String, TriggerState> states = new ConcurrentHashMap<>();
+
+    /**
+     * 处于已触发状态的key数量，hasTriggered不需要遍历所有的状态
+     */
+    private final AtomicInteger triggeredKeys = new AtomicInteger();
+
+    /**
+     * 通过setTriggeredStatus(true)设置的整个规则的触发状态，设置后所有的key都不会再触发，
+     * 直到调用setTriggeredStatus(false)或者有fact不满足条件并成功执行了doExecuteElse
+     */
+    private volatile boolean ruleTriggered;
 
     protected Long triggerDelayMS;
 
-    protected final ReentrantLock lock = new ReentrantLock();
+    private volatile long stateTtlMs = DEFAULT_STATE_TTL_MS;
 
-    private static final ScheduledExecutorService delayTriggerExecutor = Executors.newScheduledThreadPool(1,
-            new ThreadFactory() {
-                private final AtomicInteger index = new AtomicInteger(1);
+    private final AtomicLong lastEvictTime = new AtomicLong(System.currentTimeMillis());
 
-                @Override
-                public Thread newThread(Runnable r) {
-                    Thread t = new Thread(r);
-                    t.setName("fast-rule-scheduled-delay-trigger-" + index.getAndIncrement());
-                    t.setDaemon(true);
-                    return t;
-                }
-            });
+    private volatile RuleStateStore stateStore;
 
     public DelayStatefulTriggerRule(String id, String name, Integer priority, String description, Condition condition, Long triggerDelayMS) {
         super(id, name, priority, description, condition);
-        triggered = new AtomicBoolean(false);
         assignTriggerDelayMS(triggerDelayMS);
     }
 
@@ -67,88 +81,318 @@ public abstract class DelayStatefulTriggerRule extends BaseRule {
             if (triggerDelayMS < 1000) {
                 throw new IllegalArgumentException("triggerDelayMS must be greater than 1000");
             }
-            this.delayedFacts = new ConcurrentHashMap<>();
             this.triggerDelayMS = triggerDelayMS;
         } else {
             this.triggerDelayMS = null;
         }
     }
 
+    /**
+     * 设置空闲状态的过期时间，已触发的状态超过该时间没有再收到满足条件的fact时会被清理，之后再满足条件会重新触发
+     */
+    public void setStateTtlMs(long stateTtlMs) {
+        if (stateTtlMs <= 0) {
+            throw new IllegalArgumentException("stateTtlMs must be greater than 0");
+        }
+        this.stateTtlMs = stateTtlMs;
+    }
+
+    /**
+     * 计算fact对应的状态key，默认按factId区分
+     */
+    protected String stateKey(Fact fact) {
+        return fact.getId();
+    }
+
+    /**
+     * 设置整个规则的触发状态，设置为true时之后所有的key都不会再触发，设置为false时相当于重置整个规则
+     */
     public void setTriggeredStatus(boolean triggered) {
-        this.triggered.set(triggered);
+        this.ruleTriggered = triggered;
+        if (triggered) {
+            return;
+        }
+        states.forEach((key, state) -> {
+            synchronized (state) {
+                markTriggered(state, false);
+                commit(key, state);
+            }
+        });
     }
 
+    public void setTriggeredStatus(String stateKey, boolean triggered) {
+        TriggerState state = acquire(stateKey, System.currentTimeMillis());
+        synchronized (state) {
+            markTriggered(state, triggered);
+            commit(stateKey, state);
+        }
+    }
+
+    /**
+     * 整个规则或任意一个key是否处于已触发状态
+     */
     public boolean hasTriggered() {
-        return this.triggered.get();
+        return ruleTriggered || triggeredKeys.get() > 0;
+    }
+
+    public boolean hasTriggered(String stateKey) {
+        TriggerState state = states.get(stateKey);
+        return state != null && state.triggered;
     }
 
+    /**
+     * 当前保存的状态数量
+     */
+    public int getStateSize() {
+        return states.size();
+    }
+
+    /**
+     * 继承被替换的规则的状态，复制其状态表，等待中的延迟触发改由当前规则按原到期时间调度，
+     * 之后被替换的规则不再修改这些状态
+     */
     public void mergeState(DelayStatefulTriggerRule other) {
-        setTriggeredStatus(other.triggered.get());
-        this.delayedFacts = other.delayedFacts;
+        Map<String, TriggerState> merged = new ConcurrentHashMap<>();
+        int triggered = 0;
+        long now = System.currentTimeMillis();
+        for (Map.Entry<String, TriggerState> entry : other.states.entrySet()) {
+            TriggerState source = entry.getValue();
+            synchronized (source) {
+                if (source.released) {
+                    continue;
+                }
+                TriggerState state = source.copy();
+                if (source.delayed != null) {
+                    //先调度新的任务再取消原任务，保证fact的引用不会在中途被释放
+                    state.delayed = DelayScheduler.schedule(source.delayed.getFact(), this::executeDelayed,
+                            Math.max(0, source.delayDeadline - now));
+                    source.delayed.cancel();
+                    source.delayed = null;
+                }
+                if (state.triggered) {
+                    triggered++;
+                }
+                merged.put(entry.getKey(), state);
+            }
+        }
+        this.triggeredKeys.set(triggered);
+        this.states = merged;
+        this.stateStore = other.stateStore;
+        this.ruleTriggered = other.ruleTriggered;
     }
 
-    public void clearDelayedFacts() {
-        if (!CollUtil.isEmpty(delayedFacts)) {
-            this.delayedFacts.forEach((k, v) -> v.cancel(true));
-            this.delayedFacts.clear();
+    /**
+     * 绑定状态存储并恢复已保存的状态，之后状态的变化都会写入该存储
+     */
+    public void bindStateStore(RuleStateStore stateStore) {
+        long now = System.currentTimeMillis();
+        stateStore.load(getId(), (key, saved) -> {
+            TriggerState state = new TriggerState();
+            state.triggered = saved.triggered();
+            state.delayDeadline = saved.delayDeadline();
+            state.lastAccessTime = now;
+            state.savedTriggered = saved.triggered();
+            state.savedDeadline = saved.delayDeadline();
+            state.saved = true;
+            if (states.putIfAbsent(key, state) == null && state.triggered) {
+                triggeredKeys.incrementAndGet();
+            }
+        });
+        this.stateStore = stateStore;
+    }
+
+    /**
+     * 还没有绑定状态存储时才绑定，通过mergeState继承了原规则状态的新规则不会重复加载
+     */
+    void bindStateStoreIfAbsent(RuleStateStore stateStore) {
+        if (this.stateStore == null) {
+            bindStateStore(stateStore);
         }
     }
 
+    public void clearDelayedFacts() {
+        states.forEach((key, state) -> {
+            synchronized (state) {
+                cancelDelayed(state);
+                commit(key, state);
+            }
+        });
+    }
+
+    /**
+     * 清除所有的触发状态和等待中的延迟触发
+     */
+    public void clearState() {
+        ruleTriggered = false;
+        states.forEach((key, state) -> {
+            synchronized (state) {
+                cancelDelayed(state);
+                markTriggered(state, false);
+                commit(key, state);
+            }
+        });
+    }
+
     @Override
     public void executeThen(Fact fact) {
-        lock.lock();
-        try {
-            if (hasTriggered()) {
+        if (ruleTriggered) {
+            log.debug("rule {} is already triggered, ignore current fact:{}", this.getName(), fact.getId());
+            return;
+        }
+        long now = System.currentTimeMillis();
+        evictIdleStates(now);
+        String key = stateKey(fact);
+        TriggerState state = acquire(key, now);
+        synchronized (state) {
+            if (state.triggered) {
                 log.debug("rule {} is already triggered, ignore current fact:{}", this.getName(), fact.getId());
                 return;
             }
             if (this.triggerDelayMS != null) {
                 //如果延迟队列里面已经有该fact了，则忽略
-                if (delayedFacts.containsKey(fact.getId())) {
+                if (state.delayed != null) {
                     log.debug("fact {} is already add to delayed queue:{}，ignored", fact.getId(), this.getName());
                     return;
                 }
                 log.debug("current rule {} enabled  delayed triggering, the fact {} has been added to the delay queue.", fact.getId(), this.getName());
-                ScheduledFuture<?> future = delayTriggerExecutor.schedule(() -> {
-                    if (hasTriggered()) {
-                        log.debug("rule {} is already triggered, ignore delay fact:{}", this.getName(), fact.getId());
-                        return;
-                    }
-                    if (doExecuteThen(fact)) {
-                        setTriggeredStatus(true);
-                    }
-                    delayedFacts.remove(fact.getId());
-                }, triggerDelayMS, TimeUnit.MILLISECONDS);
-                delayedFacts.put(fact.getId(), future);
+                //从存储中恢复的等待中的延迟触发，按剩余的时间继续等待
+                if (state.delayDeadline == 0) {
+                    state.delayDeadline = now + triggerDelayMS;
+                }
+                state.delayed = DelayScheduler.schedule(fact, this::executeDelayed, Math.max(0, state.delayDeadline - now));
+                commit(key, state);
             } else {
+                state.delayDeadline = 0;
                 if (doExecuteThen(fact)) {
-                    setTriggeredStatus(true);
+                    markTriggered(state, true);
                 }
+                commit(key, state);
             }
-        } finally {
-            lock.unlock();
         }
     }
 
     @Override
     public void executeElse(Fact fact) {
-        lock.lock();
-        try {
-            if (this.delayedFacts != null) {
-                ScheduledFuture<?> future = delayedFacts.get(fact.getId());
-                if (future != null) {
-                    future.cancel(true);
-                    delayedFacts.remove(fact.getId());
-                }
+        String key = stateKey(fact);
+        TriggerState state = states.get(key);
+        if (state == null) {
+            if (doExecuteElse(fact)) {
+                ruleTriggered = false;
             }
+            return;
+        }
+        synchronized (state) {
+            cancelDelayed(state);
             if (doExecuteElse(fact)) {
-                this.triggered.set(false);
+                markTriggered(state, false);
+                ruleTriggered = false;
             }
-        } finally {
-            lock.unlock();
+            commit(key, state);
+        }
+    }
+
+    private void executeDelayed(Timeout timeout) {
+        Fact fact = timeout.getFact();
+        String key = stateKey(fact);
+        TriggerState state = states.get(key);
+        if (state == null) {
+            return;
+        }
+        synchronized (state) {
+            //任务到期后才被取消（已经进入事件队列）时，等待记录已经被移除，不再执行
+            if (state.delayed != timeout) {
+                return;
+            }
+            state.delayed = null;
+            state.delayDeadline = 0;
+            if (state.triggered || ruleTriggered) {
+                log.debug("rule {} is already triggered, ignore delay fact:{}", this.getName(), fact.getId());
+            } else if (doExecuteThen(fact)) {
+                markTriggered(state, true);
+            }
+            commit(key, state);
         }
     }
 
+    /**
+     * 获取key对应的状态并刷新访问时间，状态刚好被清理时会重新创建
+     */
+    private TriggerState acquire(String key, long now) {
+        while (true) {
+            TriggerState state = states.computeIfAbsent(key, k -> new TriggerState());
+            synchronized (state) {
+                if (!state.released) {
+                    state.lastAccessTime = now;
+                    return state;
+                }
+            }
+        }
+    }
+
+    /**
+     * 修改key的触发状态并维护已触发的key数量，调用时必须持有state的锁
+     */
+    private void markTriggered(TriggerState state, boolean triggered) {
+        if (state.triggered != triggered) {
+            state.triggered = triggered;
+            triggeredKeys.addAndGet(triggered ? 1 : -1);
+        }
+    }
+
+    private void cancelDelayed(TriggerState state) {
+        if (state.delayed != null) {
+            state.delayed.cancel();
+            state.delayed = null;
+        }
+        state.delayDeadline = 0;
+    }
+
+    /**
+     * 状态变化后调用，未触发且没有等待中的延迟触发的状态不需要保存；绑定了状态存储时同步写入变化，
+     * 调用时必须持有state的锁
+     */
+    private void commit(String key, TriggerState state) {
+        if (!state.triggered && state.delayed == null && state.delayDeadline == 0) {
+            release(key, state);
+            return;
+        }
+        RuleStateStore store = this.stateStore;
+        if (store != null && (!state.saved || state.savedTriggered != state.triggered || state.savedDeadline != state.delayDeadline)) {
+            store.save(getId(), key, new RuleState(state.triggered, state.delayDeadline));
+            state.saved = true;
+            state.savedTriggered = state.triggered;
+            state.savedDeadline = state.delayDeadline;
+        }
+    }
+
+    private void release(String key, TriggerState state) {
+        state.released = true;
+        markTriggered(state, false);
+        states.remove(key, state);
+        RuleStateStore store = this.stateStore;
+        if (store != null && state.saved) {
+            store.remove(getId(), key);
+        }
+    }
+
+    /**
+     * 周期性的清理过期的状态，由执行规则的线程顺带完成，同一时间只有一个线程执行清理
+     */
+    private void evictIdleStates(long now) {
+        long ttl = this.stateTtlMs;
+        long last = lastEvictTime.get();
+        if (now - last < Math.max(1000, ttl / 4) || !lastEvictTime.compareAndSet(last, now)) {
+            return;
+        }
+        states.forEach((key, state) -> {
+            synchronized (state) {
+                if (state.delayed == null && now - state.lastAccessTime > ttl) {
+                    release(key, state);
+                }
+            }
+        });
+    }
+
     /**
      * 处理触发逻辑，返回值表示是否需要更新规则的触发状态
      */
@@ -159,4 +403,50 @@ public abstract class DelayStatefulTriggerRule extends BaseRule {
      */
     protected abstract boolean doExecuteElse(Fact fact);
 
+    /**
+     * 单个key的触发状态，所有字段都在持有该对象的锁时访问
+     */
+    private static final class TriggerState {
+
+        boolean triggered;
+
+        Timeout delayed;
+
+        /**
+         * 等待中的延迟触发的到期时间，从存储中恢复时delayed为空，收到满足条件的fact后才重新调度
+         */
+        long delayDeadline;
+
+        long lastAccessTime;
+
+        /**
+         * 已经从状态表中移除，持有该对象的线程需要重新获取
+         */
+        boolean released;
+
+        /**
+         * 最后一次写入存储的状态，避免重复写入相同的状态
+         */
+        boolean saved;
+
+        boolean savedTriggered;
+
+        long savedDeadline;
+
+        /**
+         * 复制状态，不包含等待中的延迟任务，调用时必须持有该对象的锁
+         */
+        TriggerState copy() {
+            TriggerState copy = new TriggerState();
+            copy.triggered = triggered;
+            copy.delayDeadline = delayDeadline;
+            copy.lastAccessTime = lastAccessTime;
+            copy.saved = saved;
+            copy.savedTriggered = savedTriggered;
+            copy.savedDeadline = savedDeadline;
+            return copy;
+        }
+
+    }
+
 }
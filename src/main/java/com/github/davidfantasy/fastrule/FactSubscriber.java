@@ -0,0 +1,181 @@
+package com.github.davidfantasy.fastrule;
+
+import com.github.davidfantasy.fastrule.fact.Fact;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+/**
+ * 订阅推送式fact数据源的订阅者，在数据源的发布线程中攒批后直接提交给引擎，不需要中间队列和轮询线程。
+ * 向数据源请求的数据量不超过batchSize，每批fact被引擎接收后才会请求下一批，
+ * 引擎的事件队列已满时（OverloadPolicy.BLOCK）发布线程会被阻塞，背压由此传递到数据源。
+ * 未攒满一批的fact在maxLatencyMs后由引擎的调度线程提交，已有批次正在提交时调度线程直接跳过，不会被背压阻塞。
+ * 对象锁只在攒批和换出批次时持有，提交给引擎和请求下一批都在对象锁之外进行；
+ * 批次由flushLock保证按顺序提交，对Subscription的调用都在持有subscriptionLock时进行，保证串行
+ */
+@Slf4j
+final class FactSubscriber implements Flow.Subscriber<Fact> {
+
+    @Getter
+    private final String name;
+
+    private final int batchSize;
+
+    private final Consumer<List<Fact>> sink;
+
+    private List<Fact> batch;
+
+    private Flow.Subscription subscription;
+
+    private boolean done;
+
+    private ScheduledFuture<?> lingerFuture;
+
+    private final ReentrantLock flushLock = new ReentrantLock();
+
+    private final Object subscriptionLock = new Object();
+
+    FactSubscriber(String name, int batchSize, Consumer<List<Fact>> sink) {
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("batchSize must be greater than 0");
+        }
+        this.name = name;
+        this.batchSize = batchSize;
+        this.sink = sink;
+        this.batch = new ArrayList<>(batchSize);
+    }
+
+    synchronized void setLingerFuture(ScheduledFuture<?> lingerFuture) {
+        this.lingerFuture = lingerFuture;
+    }
+
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+        synchronized (subscriptionLock) {
+            synchronized (this) {
+                if (done || this.subscription != null) {
+                    subscription.cancel();
+                    return;
+                }
+                this.subscription = subscription;
+            }
+            subscription.request(batchSize);
+        }
+    }
+
+    @Override
+    public void onNext(Fact fact) {
+        boolean full;
+        synchronized (this) {
+            if (done) {
+                return;
+            }
+            batch.add(fact);
+            full = batch.size() >= batchSize;
+        }
+        if (full) {
+            flush(true);
+        }
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+        log.warn("fact source {} terminated with error: {}", name, throwable.toString());
+        terminate();
+    }
+
+    @Override
+    public void onComplete() {
+        log.info("fact source {} completed", name);
+        terminate();
+    }
+
+    /**
+     * 提交等待超时的未满批次
+     */
+    void flushIfLingering() {
+        flush(false);
+    }
+
+    /**
+     * 取消订阅，已缓存的fact会被丢弃
+     */
+    void cancel() {
+        Flow.Subscription current;
+        synchronized (this) {
+            done = true;
+            batch.clear();
+            current = subscription;
+            stopLinger();
+        }
+        if (current != null) {
+            synchronized (subscriptionLock) {
+                current.cancel();
+            }
+        }
+    }
+
+    synchronized boolean isDone() {
+        return done;
+    }
+
+    private void terminate() {
+        flush(true);
+        synchronized (this) {
+            done = true;
+            stopLinger();
+        }
+    }
+
+    private void stopLinger() {
+        if (lingerFuture != null) {
+            lingerFuture.cancel(false);
+        }
+    }
+
+    /**
+     * 换出当前批次并提交给引擎，之后请求同样数量的fact
+     *
+     * @param wait 已有批次正在提交时是否等待，为false时直接返回
+     */
+    private void flush(boolean wait) {
+        if (wait) {
+            flushLock.lock();
+        } else if (!flushLock.tryLock()) {
+            return;
+        }
+        List<Fact> facts;
+        Flow.Subscription current;
+        try {
+            synchronized (this) {
+                if (batch.isEmpty()) {
+                    return;
+                }
+                facts = batch;
+                batch = new ArrayList<>(batchSize);
+            }
+            try {
+                sink.accept(facts);
+            } catch (Exception e) {
+                log.warn("fire facts from source {} failed: {}", name, e.getMessage());
+            }
+        } finally {
+            flushLock.unlock();
+        }
+        synchronized (this) {
+            current = done ? null : subscription;
+        }
+        if (current != null) {
+            synchronized (subscriptionLock) {
+                current.request(facts.size());
+            }
+        }
+    }
+
+}
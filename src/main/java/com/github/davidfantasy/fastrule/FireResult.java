@@ -0,0 +1,21 @@
+package com.github.davidfantasy.fastrule;
+
+/**
+ * 提交fact后的结果
+ */
+public enum FireResult {
+
+    /**
+     * fact已进入规则事件队列
+     */
+    ACCEPTED,
+    /**
+     * 事件队列已满，fact已暂存在等待区或溢出队列中，稍后会被执行
+     */
+    QUEUED,
+    /**
+     * 事件队列已满，fact被拒绝，不会被执行
+     */
+    REJECTED
+
+}
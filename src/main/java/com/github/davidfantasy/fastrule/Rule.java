@@ -2,6 +2,12 @@ package com.github.davidfantasy.fastrule;
 
 import com.github.davidfantasy.fastrule.fact.Fact;
 
+import java.util.BitSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+
 /**
  * 业务规则
  */
@@ -17,6 +23,11 @@ public interface Rule extends Comparable<Rule> {
      */
     int DEFAULT_PRIORITY = Integer.MAX_VALUE - 1;
 
+    /**
+     * 已成功完成的动作，executeThenAsync同步执行完成时返回该值，引擎据此跳过异步结果的处理
+     */
+    CompletionStage<Boolean> COMPLETED_ACTION = CompletableFuture.completedStage(Boolean.TRUE);
+
 
     /**
      * 规则的唯一ID
@@ -59,6 +70,13 @@ public interface Rule extends Comparable<Rule> {
      */
     void disable();
 
+    /**
+     * 规则关注的factId集合，返回null表示关注所有的fact，规则管理器会据此建立factId到规则的索引
+     */
+    default Set<String> getConcernedFacts() {
+        return null;
+    }
+
     /**
      * 在evaluate之前执行，可以根据fact类型或id初步判断是否匹配当前的规则，
      * 当规则依赖于其它业务数据时，也可以在此处对fact的值进行完善和补充，让evaluate能够顺利的执行
@@ -70,11 +88,33 @@ public interface Rule extends Comparable<Rule> {
      */
     boolean evaluate(Fact fact);
 
+    /**
+     * 批量执行条件判断，第i个fact满足条件时设置out的第i位，调用前facts都已经通过了preEvaluate；
+     * 开启批量匹配（见RulesEngineConfig.batchEvaluation）时引擎会把同一批采集到的fact按规则分组后调用该方法，默认逐个调用evaluate
+     */
+    default void evaluateBatch(List<? extends Fact> facts, BitSet out) {
+        for (int i = 0; i < facts.size(); i++) {
+            if (evaluate(facts.get(i))) {
+                out.set(i);
+            }
+        }
+    }
+
     /**
      * 当满足规则条件时触发，即evaluate方法返回true
      */
     void executeThen(Fact fact);
 
+    /**
+     * executeThen的异步版本，引擎总是通过该方法执行动作，默认同步调用executeThen。
+     * 动作包含网络、数据库等IO时可以重写该方法，返回的结果为false或异常完成表示动作执行失败；
+     * 按优先级匹配时，后续规则会在该动作完成后才继续匹配，并根据结果处理skipOnFirstFailedRule，等待期间不占用规则执行线程
+     */
+    default CompletionStage<Boolean> executeThenAsync(Fact fact) {
+        executeThen(fact);
+        return COMPLETED_ACTION;
+    }
+
     /**
      * 当不满足规则条件时触发，即evaluate方法返回false，用于处理某些状态恢复的情况，比如告警恢复
      */
@@ -3,6 +3,9 @@ package com.github.davidfantasy.fastrule;
 import com.github.davidfantasy.fastrule.fact.Fact;
 import com.github.davidfantasy.fastrule.fact.FactCollector;
 
+import java.util.Collection;
+import java.util.concurrent.Flow;
+
 public interface RuleEngine {
 
     /**
@@ -24,8 +27,18 @@ public interface RuleEngine {
      *
      * @param fact            事实数据
      * @param firedByPriority 是否要确保按优先级顺序执行规则，确保匹配顺序会消耗额外的性能，请根据需要选择是否开启
+     * @return 事件队列已满时的处理结果，取决于RulesEngineConfig中的overloadPolicy
+     */
+    FireResult fire(Fact fact, boolean firedByPriority);
+
+    /**
+     * 批量传入事实数据进行规则匹配，整批数据只需要申请一次事件队列空间，适合批量采集的场景
+     *
+     * @param facts           事实数据
+     * @param firedByPriority 是否要确保按优先级顺序执行规则，和fire()中的含义一致
+     * @return 这批fact中最差的处理结果，有fact被拒绝时返回REJECTED，有fact进入等待区时返回QUEUED
      */
-    void fire(Fact fact, boolean firedByPriority);
+    FireResult fireAll(Collection<? extends Fact> facts, boolean firedByPriority);
 
     /**
      * 注册fact采集器进行周期的事实数据采集，采集后的数据再和规则进行匹配执行，通过批量处理提升执行效率
@@ -42,4 +55,31 @@ public interface RuleEngine {
      */
     void removeFactCollector(String name);
 
+    /**
+     * 订阅推送式的fact数据源，数据源发布的fact在发布线程中攒批后直接提交给引擎，
+     * 不需要像FactCollector一样占用调度线程轮询；数据源可以使用JDK的SubmissionPublisher
+     *
+     * @param name            数据源的名称，不能和已订阅的数据源重复
+     * @param source          数据源
+     * @param batchSize       单批提交的最大fact数量，同时也是向数据源请求的最大未处理数量
+     * @param maxLatencyMs    未攒满一批时最长的等待时间，单位毫秒
+     * @param firedByPriority 是否要确保按优先级顺序执行规则，和fire()中的含义一致
+     */
+    void subscribe(String name, Flow.Publisher<? extends Fact> source, int batchSize, long maxLatencyMs, boolean firedByPriority);
+
+    /**
+     * 取消对某个数据源的订阅，尚未提交的fact会被丢弃
+     */
+    void unsubscribe(String name);
+
+    /**
+     * 因事件队列已满而被拒绝的fact数量
+     */
+    long getRejectedFactCount();
+
+    /**
+     * 在等待区中被同一factId的新fact替换而丢弃的fact数量，以及关闭引擎时未能执行的等待中的fact数量
+     */
+    long getDroppedFactCount();
+
 }
@@ -1,15 +1,105 @@
 package com.github.davidfantasy.fastrule;
 
-public interface RuleManager {
+import com.github.davidfantasy.fastrule.state.RuleStateStore;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 规则管理器，本身也是一个读取最新规则的RuleSet
+ */
+public interface RuleManager extends RuleSet {
 
     void add(Rule rule);
 
+    /**
+     * 批量添加规则，实现类可以将多条规则的变更合并为一次更新
+     */
+    default void addAll(Collection<? extends Rule> rules) {
+        rules.forEach(this::add);
+    }
+
     Rule remove(String ruleId);
 
-    Rule get(String ruleId);
+    /**
+     * 批量移除规则，实现类可以将多条规则的变更合并为一次更新
+     */
+    default void removeAll(Collection<String> ruleIds) {
+        ruleIds.forEach(this::remove);
+    }
+
+    /**
+     * 应用一组规则变更：通过工厂创建的规则先在锁外并行创建（Janino规则的编译在此完成），
+     * 然后移除、添加和替换作为一个新版本整体生效；被同ID规则替换的DelayStatefulTriggerRule的触发状态会自动转移到新规则。
+     * 默认实现逐个执行变更，不保证原子性，DefaultRuleManager和CopyOnWriteRuleManager都提供了原子的实现
+     *
+     * @return 变更生效后的版本
+     */
+    default long apply(RuleSetDiff diff) {
+        List<Rule> rules = diff.createRules();
+        Map<String, Rule> removed = new HashMap<>();
+        for (String ruleId : diff.getRemovals()) {
+            Rule rule = remove(ruleId);
+            if (rule != null) {
+                removed.put(ruleId, rule);
+            }
+        }
+        for (Rule rule : rules) {
+            Rule replaced = remove(rule.getId());
+            RuleSetDiff.mergeState(replaced != null ? replaced : removed.get(rule.getId()), rule);
+        }
+        addAll(rules);
+        return getVersion();
+    }
 
-    void forEach(RuleConsumer consumer);
+    /**
+     * 当前版本的只读规则集合，之后的变更不会影响返回的集合；默认返回管理器本身，即总是读取最新的规则
+     */
+    default RuleSet getRuleSet() {
+        return this;
+    }
+
+    /**
+     * 不支持版本的实现返回0
+     */
+    @Override
+    default long getVersion() {
+        return 0;
+    }
+
+    @Override
+    default int size() {
+        int[] count = new int[1];
+        forEach(rule -> {
+            count[0]++;
+            return true;
+        });
+        return count[0];
+    }
 
     void clear();
 
+    /**
+     * 为FieldCondition声明的规则建立alpha网络索引，由RulesEngineConfig.alphaNetworkEnabled开启；
+     * DefaultRuleManager和CopyOnWriteRuleManager支持该索引，默认实现不支持
+     */
+    default void enableAlphaNetwork() {
+        throw new IllegalStateException("alpha network is not supported by " + getClass().getName());
+    }
+
+    /**
+     * 为DelayStatefulTriggerRule绑定状态存储并恢复已保存的状态。
+     * 默认实现只绑定当前已有的规则，DefaultRuleManager和CopyOnWriteRuleManager会在规则生效前为之后新增的规则自动绑定
+     */
+    default void bindStateStore(RuleStateStore stateStore) {
+        forEach(rule -> {
+            if (rule instanceof DelayStatefulTriggerRule statefulRule) {
+                statefulRule.bindStateStoreIfAbsent(stateStore);
+            }
+            return true;
+        });
+    }
+
 }
@@ -0,0 +1,44 @@
+package com.github.davidfantasy.fastrule;
+
+import com.github.davidfantasy.fastrule.fact.Fact;
+
+import java.util.Set;
+
+/**
+ * 某一版本的只读规则集合。
+ * 引擎在发布fact时获取规则管理器当前版本的规则集合（见RuleManager.getRuleSet），该fact的事件都按这个版本匹配，
+ * 匹配过程中发生的规则变更只对之后发布的fact生效，不会出现一个fact看到只更新了一半的规则
+ */
+public interface RuleSet {
+
+    /**
+     * 规则集合的版本，每次变更后递增
+     */
+    long getVersion();
+
+    Rule get(String ruleId);
+
+    int size();
+
+    void forEach(RuleConsumer consumer);
+
+    /**
+     * 按优先级顺序遍历关注该factId的规则，包括没有指定关注fact的规则；
+     * 默认遍历全部规则并按关注的fact过滤，实现类可以通过索引只访问相关的规则
+     */
+    default void forEach(String factId, RuleConsumer consumer) {
+        forEach(rule -> {
+            Set<String> facts = rule.getConcernedFacts();
+            return (facts != null && !facts.contains(factId)) || consumer.accept(rule);
+        });
+    }
+
+    /**
+     * 按优先级顺序遍历fact的候选规则，实现类可以根据fact的值通过索引排除条件不可能满足的规则，
+     * 默认只根据factId进行筛选
+     */
+    default void forEach(Fact fact, RuleConsumer consumer) {
+        forEach(fact.getId(), consumer);
+    }
+
+}
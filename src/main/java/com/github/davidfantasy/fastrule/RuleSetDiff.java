@@ -0,0 +1,132 @@
+package com.github.davidfantasy.fastrule;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Supplier;
+
+/**
+ * 一组规则变更，通过RuleManager.apply作为一个新版本整体生效。
+ * put的规则ID已经存在时替换原规则，不存在时添加；remove不存在的规则ID会被忽略。
+ * 通过工厂添加的规则（例如JaninoRule）在apply时才并行创建，规则的编译不会阻塞规则的读取和其它变更，
+ * 任意一个工厂创建失败时整组变更都不会生效
+ */
+public final class RuleSetDiff {
+
+    private final List<Supplier<? extends Rule>> puts;
+
+    private final Set<String> removals;
+
+    private RuleSetDiff(List<Supplier<? extends Rule>> puts, Set<String> removals) {
+        this.puts = puts;
+        this.removals = removals;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public Set<String> getRemovals() {
+        return removals;
+    }
+
+    /**
+     * 并行创建所有要添加或替换的规则，同一组变更中不能出现重复的规则ID
+     */
+    public List<Rule> createRules() {
+        List<Rule> rules = puts.parallelStream().<Rule>map(Supplier::get).toList();
+        Set<String> ids = new HashSet<>();
+        for (Rule rule : rules) {
+            if (rule == null) {
+                throw new IllegalArgumentException("rule factory returned null");
+            }
+            if (!ids.add(rule.getId())) {
+                throw new IllegalArgumentException("duplicate rule id in diff:" + rule.getId());
+            }
+        }
+        return rules;
+    }
+
+    /**
+     * 将变更应用到规则表中，返回被移除或被替换的规则，调用方需要持有规则表的写锁
+     */
+    List<Rule> applyTo(Map<String, Rule> ruleMap, List<Rule> rules) {
+        List<Rule> detached = new ArrayList<>();
+        Map<String, Rule> removed = new HashMap<>();
+        for (String ruleId : removals) {
+            Rule rule = ruleMap.remove(ruleId);
+            if (rule != null) {
+                removed.put(ruleId, rule);
+                detached.add(rule);
+            }
+        }
+        for (Rule rule : rules) {
+            Rule replaced = ruleMap.put(rule.getId(), rule);
+            if (replaced == null) {
+                //同一组变更中先移除再添加同ID的规则，同样视为替换
+                mergeState(removed.get(rule.getId()), rule);
+            } else if (replaced != rule) {
+                mergeState(replaced, rule);
+                detached.add(replaced);
+            }
+        }
+        return detached;
+    }
+
+    /**
+     * 新旧规则都是DelayStatefulTriggerRule时，新规则继续使用旧规则的触发状态
+     */
+    static void mergeState(Rule replaced, Rule rule) {
+        if (replaced instanceof DelayStatefulTriggerRule old && rule instanceof DelayStatefulTriggerRule current && old != current) {
+            current.mergeState(old);
+        }
+    }
+
+    public static final class Builder {
+
+        private final List<Supplier<? extends Rule>> puts = new ArrayList<>();
+
+        private final Set<String> removals = new LinkedHashSet<>();
+
+        private Builder() {
+        }
+
+        /**
+         * 添加规则，已存在同ID的规则时替换
+         */
+        public Builder put(Rule rule) {
+            if (rule == null) {
+                throw new IllegalArgumentException("rule must not be null");
+            }
+            puts.add(() -> rule);
+            return this;
+        }
+
+        /**
+         * 通过工厂添加规则，工厂在apply时并行执行，适合需要编译的规则
+         */
+        public Builder put(Supplier<? extends Rule> factory) {
+            if (factory == null) {
+                throw new IllegalArgumentException("factory must not be null");
+            }
+            puts.add(factory);
+            return this;
+        }
+
+        public Builder remove(String ruleId) {
+            removals.add(ruleId);
+            return this;
+        }
+
+        public RuleSetDiff build() {
+            return new RuleSetDiff(List.copyOf(puts), Collections.unmodifiableSet(new LinkedHashSet<>(removals)));
+        }
+
+    }
+
+}
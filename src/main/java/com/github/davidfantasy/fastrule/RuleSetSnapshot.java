@@ -0,0 +1,149 @@
+package com.github.davidfantasy.fastrule;
+
+import com.github.davidfantasy.fastrule.fact.Fact;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 某一版本的不可变规则集合，发布后不会再被修改，读取时不需要加锁
+ */
+final class RuleSetSnapshot implements RuleSet {
+
+    private final long version;
+
+    final Map<String, Rule> ruleMap;
+
+    /**
+     * 按优先级排序的全部规则
+     */
+    final Rule[] rules;
+
+    private final Map<String, Rule[]> factIndex;
+
+    private final Rule[] wildcardRules;
+
+    /**
+     * factId对应规则的alpha网络，未开启alpha网络时为null
+     */
+    private final Map<String, AlphaNetwork> factNetworks;
+
+    /**
+     * 不指定关注fact的规则的alpha网络，未开启alpha网络时为null
+     */
+    private final AlphaNetwork wildcardNetwork;
+
+    private RuleSetSnapshot(long version, Map<String, Rule> ruleMap, Rule[] rules, Map<String, Rule[]> factIndex,
+                            Rule[] wildcardRules, boolean alphaNetworkEnabled) {
+        this.version = version;
+        this.ruleMap = ruleMap;
+        this.rules = rules;
+        this.factIndex = factIndex;
+        this.wildcardRules = wildcardRules;
+        if (alphaNetworkEnabled) {
+            this.factNetworks = new HashMap<>(factIndex.size() * 2);
+            factIndex.forEach((factId, concerned) -> factNetworks.put(factId, new AlphaNetwork(concerned)));
+            this.wildcardNetwork = new AlphaNetwork(wildcardRules);
+        } else {
+            this.factNetworks = null;
+            this.wildcardNetwork = null;
+        }
+    }
+
+    /**
+     * 构建快照，ruleMap的所有权转移给快照，调用方之后不能再修改
+     */
+    static RuleSetSnapshot build(long version, Map<String, Rule> ruleMap, boolean alphaNetworkEnabled) {
+        Rule[] sorted = ruleMap.values().toArray(new Rule[0]);
+        Arrays.sort(sorted);
+        Map<String, List<Rule>> index = new HashMap<>();
+        List<Rule> wildcard = new ArrayList<>();
+        for (Rule rule : sorted) {
+            Set<String> facts = rule.getConcernedFacts();
+            if (facts == null) {
+                wildcard.add(rule);
+            } else {
+                for (String factId : facts) {
+                    index.computeIfAbsent(factId, k -> new ArrayList<>()).add(rule);
+                }
+            }
+        }
+        Map<String, Rule[]> factIndex = new HashMap<>(index.size() * 2);
+        index.forEach((factId, concerned) -> factIndex.put(factId, concerned.toArray(new Rule[0])));
+        return new RuleSetSnapshot(version, ruleMap, sorted, factIndex, wildcard.toArray(new Rule[0]), alphaNetworkEnabled);
+    }
+
+    @Override
+    public long getVersion() {
+        return version;
+    }
+
+    @Override
+    public Rule get(String ruleId) {
+        return ruleMap.get(ruleId);
+    }
+
+    @Override
+    public int size() {
+        return rules.length;
+    }
+
+    @Override
+    public void forEach(RuleConsumer consumer) {
+        for (Rule rule : rules) {
+            if (!consumer.accept(rule)) {
+                break;
+            }
+        }
+    }
+
+    @Override
+    public void forEach(String factId, RuleConsumer consumer) {
+        Rule[] concerned = factIndex.get(factId);
+        forEach(concerned, wildcardRules, consumer);
+    }
+
+    /**
+     * 开启alpha网络时，先按factId选出关注该fact的规则和不指定关注fact的规则，再分别通过各自的alpha网络排除条件不可能满足的规则
+     */
+    @Override
+    public void forEach(Fact fact, RuleConsumer consumer) {
+        if (wildcardNetwork == null) {
+            forEach(fact.getId(), consumer);
+            return;
+        }
+        AlphaNetwork concerned = factNetworks.get(fact.getId());
+        forEach(concerned == null ? null : concerned.candidates(fact), wildcardNetwork.candidates(fact), consumer);
+    }
+
+    /**
+     * 两个数组都已按优先级排序，归并遍历以保持整体的优先级顺序
+     */
+    private static void forEach(Rule[] concerned, Rule[] wildcard, RuleConsumer consumer) {
+        if (concerned == null) {
+            for (Rule rule : wildcard) {
+                if (!consumer.accept(rule)) {
+                    break;
+                }
+            }
+            return;
+        }
+        int i = 0, j = 0;
+        while (i < concerned.length || j < wildcard.length) {
+            Rule rule;
+            if (j == wildcard.length || (i < concerned.length && concerned[i].compareTo(wildcard[j]) <= 0)) {
+                rule = concerned[i++];
+            } else {
+                rule = wildcard[j++];
+            }
+            if (!consumer.accept(rule)) {
+                break;
+            }
+        }
+    }
+
+}
@@ -1,6 +1,13 @@
 
 package com.github.davidfantasy.fastrule;
 
+import com.github.davidfantasy.fastrule.executor.OverloadPolicy;
+import com.github.davidfantasy.fastrule.executor.RuleTaskExecutor;
+import com.github.davidfantasy.fastrule.executor.WaitStrategyType;
+import com.github.davidfantasy.fastrule.metrics.RuleEngineMetrics;
+import com.github.davidfantasy.fastrule.state.RuleStateStore;
+import com.github.davidfantasy.fastrule.trace.RuleTracer;
+import com.lmax.disruptor.dsl.ProducerType;
 import lombok.Builder;
 import lombok.Getter;
 
@@ -24,5 +31,116 @@ public class RulesEngineConfig {
      */
     @Builder.Default
     private int collectorScheduledThreadPoolSize = Runtime.getRuntime().availableProcessors() * 2;
+    /**
+     * 规则事件队列的容量，必须是2的幂
+     */
+    @Builder.Default
+    private int ringBufferSize = 4096;
+    /**
+     * 执行规则的线程数
+     */
+    @Builder.Default
+    private int executorThreadPoolSize = Runtime.getRuntime().availableProcessors() * 2;
+    /**
+     * 规则执行线程等待事件的策略，对延迟要求较高时可选择YIELDING或BUSY_SPIN等策略，
+     * 可通过fast-rule-benchmarks中的WaitStrategyBenchmark比较不同策略在当前机器上的延迟
+     */
+    @Builder.Default
+    private WaitStrategyType waitStrategy = WaitStrategyType.BLOCKING;
+    /**
+     * 事件队列的生产者模式，只有确定仅有一个线程会调用fire时才能设置为SINGLE（注意采集器也会调用fire）
+     */
+    @Builder.Default
+    private ProducerType producerType = ProducerType.MULTI;
+    /**
+     * 是否按factId分区执行，开启后同一个factId的事件总是由同一个执行线程按提交顺序处理，
+     * 不同factId之间仍然并行执行，适合依赖fact先后顺序的有状态规则
+     */
+    private boolean partitionedByFactId;
+    /**
+     * 不按优先级匹配时，是否每个fact只发布一个事件，由执行线程匹配该fact的全部候选规则；
+     * 默认每个候选规则发布一个事件，规则数量很多时单个fact就会占满事件队列，开启后队列的占用只和fact的数量有关
+     */
+    private boolean singleEventPerFact;
+    /**
+     * 单事件模式下，候选规则超过该数量时按该数量分段，由fork-join线程池中空闲的线程并行匹配
+     */
+    @Builder.Default
+    private int ruleEvaluationChunkSize = RuleTaskExecutor.DEFAULT_RULE_EVALUATION_CHUNK_SIZE;
+    /**
+     * 不按优先级匹配时，是否对批量提交的fact（fireAll、采集器、订阅的数据源）按规则分组批量匹配：
+     * 每条规则和这批fact中的候选fact只发布一个事件，通过Rule.evaluateBatch一次完成匹配，
+     * JaninoCondition会按列读取参数后在一个循环中计算表达式
+     */
+    private boolean batchEvaluation;
+    /**
+     * 批量匹配时单个事件包含的最大fact数量，超过时拆分为多个事件
+     */
+    @Builder.Default
+    private int evaluationBatchSize = 1024;
+    /**
+     * 是否让规则管理器为FieldCondition声明的规则建立alpha网络索引，触发时按fact的字段值直接排除条件不可能满足的规则；
+     * 会增加规则变更后构建快照的开销，也可以通过new DefaultRuleManager(true)或new CopyOnWriteRuleManager(true)开启
+     */
+    private boolean alphaNetworkEnabled;
+    /**
+     * 事件队列已满时对新fact的处理策略，默认阻塞调用方
+     */
+    @Builder.Default
+    private OverloadPolicy overloadPolicy = OverloadPolicy.BLOCK;
+    /**
+     * SPILL策略下溢出队列的容量，DROP_OLDEST策略下等待区最多保存的factId数量
+     */
+    @Builder.Default
+    private int overflowQueueCapacity = 10000;
+    /**
+     * 规则引擎的运行指标，默认不记录，可以使用InMemoryRuleEngineMetrics查看各规则的命中次数和执行耗时
+     */
+    @Builder.Default
+    private RuleEngineMetrics metrics = RuleEngineMetrics.NOOP;
+    /**
+     * 规则执行的跟踪器，默认不跟踪任何规则，可以在运行时通过getTracer().enable(ruleId, samplingRate)开启单个规则的跟踪
+     */
+    @Builder.Default
+    private RuleTracer tracer = new RuleTracer();
+    /**
+     * 延迟任务时间轮的刻度（毫秒），延迟任务的实际执行时间精度为一个刻度
+     */
+    @Builder.Default
+    private long delayTimerTickMs = 10;
+    /**
+     * 延迟任务时间轮的槽位数，延迟超过 刻度*槽位数 的任务需要时间轮转动多圈
+     */
+    @Builder.Default
+    private int delayTimerWheelSize = 1024;
+
+    /**
+     * 有状态规则的状态存储，默认不保存；设置后引擎启动时会恢复已保存的触发状态，避免重启后重复触发，
+     * 可以使用MappedJournalStateStore
+     */
+    private RuleStateStore ruleStateStore;
+
+    /**
+     * 是否异步执行规则的动作（executeThen/executeElse），开启后条件匹配仍由规则执行线程完成，动作交给独立的执行器，
+     * JDK21及以上使用虚拟线程，适合动作中包含HTTP、数据库等阻塞调用的场景；
+     * 开启后同一规则的动作之间不再保证顺序；按优先级匹配时，后续规则仍会等待前一个动作完成后再匹配。
+     * DelayStatefulTriggerRule的动作会修改触发状态，始终在规则执行线程中执行
+     */
+    private boolean asyncActions;
+    /**
+     * 异步执行动作时，单个规则同时执行的动作数量上限
+     */
+    @Builder.Default
+    private int actionConcurrencyPerRule = 64;
+    /**
+     * 异步执行动作时，单个规则等待执行的动作数量上限，超过后动作在规则执行线程中同步执行
+     */
+    @Builder.Default
+    private int actionQueueCapacityPerRule = 10000;
+    /**
+     * 异步执行动作时，JDK21以下没有虚拟线程，动作由该数量的平台线程执行，超过的动作在线程池中排队
+     */
+    @Builder.Default
+    private int actionPlatformThreads = 64;
 
 }
@@ -2,8 +2,23 @@ package com.github.davidfantasy.fastrule.condition;
 
 import com.github.davidfantasy.fastrule.fact.Fact;
 
+import java.util.BitSet;
+import java.util.List;
+
 public interface Condition {
 
     boolean evaluate(Fact fact);
 
+    /**
+     * 批量匹配一组fact，第i个fact满足条件时设置out的第i位，调用方保证out在调用前已清空；
+     * 默认逐个调用evaluate，实现类可以按列读取参数后在一个紧凑的循环中完成比较，提升缓存命中率并便于JIT优化
+     */
+    default void evaluateBatch(List<? extends Fact> facts, BitSet out) {
+        for (int i = 0; i < facts.size(); i++) {
+            if (evaluate(facts.get(i))) {
+                out.set(i);
+            }
+        }
+    }
+
 }
@@ -0,0 +1,84 @@
+package com.github.davidfantasy.fastrule.condition;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 条件结果的备忘录，用于在同一个fact的一次触发过程中复用相同条件的计算结果。
+ * 每个可共享的条件会分配一个全局唯一的槽位，规则执行线程在处理某个fact前进入以该次触发为标识的作用域，
+ * 作用域内同一个槽位的条件只会计算一次；作用域之外（例如非规则执行线程）不会缓存任何结果。
+ * 备忘录只被所属线程访问，不需要同步
+ */
+public final class ConditionMemo {
+
+    private static final AtomicInteger SLOTS = new AtomicInteger();
+
+    private static final int UNKNOWN = -1;
+
+    /**
+     * 当前作用域的标识，0表示不在作用域中
+     */
+    private long scope;
+
+    private long[] stamps = new long[64];
+
+    private boolean[] values = new boolean[64];
+
+    /**
+     * 分配一个新的槽位
+     */
+    public static int allocateSlot() {
+        return SLOTS.getAndIncrement();
+    }
+
+    /**
+     * 获取当前线程的备忘录，只有规则执行线程才持有备忘录，其它线程返回null
+     */
+    public static ConditionMemo current() {
+        return Thread.currentThread() instanceof Holder holder ? holder.conditionMemo() : null;
+    }
+
+    /**
+     * 进入一次fact触发的作用域，scope必须大于0，且不同的触发之间不能重复
+     */
+    public void enter(long scope) {
+        this.scope = scope;
+    }
+
+    public void exit() {
+        this.scope = 0;
+    }
+
+    /**
+     * 查询槽位在当前作用域中的结果，1表示true，0表示false，-1表示还没有计算过
+     */
+    public int get(int slot) {
+        if (scope == 0 || slot >= stamps.length || stamps[slot] != scope) {
+            return UNKNOWN;
+        }
+        return values[slot] ? 1 : 0;
+    }
+
+    public void put(int slot, boolean value) {
+        if (scope == 0) {
+            return;
+        }
+        if (slot >= stamps.length) {
+            int length = Math.max(slot + 1, stamps.length * 2);
+            stamps = Arrays.copyOf(stamps, length);
+            values = Arrays.copyOf(values, length);
+        }
+        stamps[slot] = scope;
+        values[slot] = value;
+    }
+
+    /**
+     * 由规则执行线程实现，持有该线程专属的备忘录
+     */
+    public interface Holder {
+
+        ConditionMemo conditionMemo();
+
+    }
+
+}
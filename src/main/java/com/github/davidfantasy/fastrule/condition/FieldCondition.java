@@ -0,0 +1,133 @@
+package com.github.davidfantasy.fastrule.condition;
+
+import com.github.davidfantasy.fastrule.fact.Fact;
+import lombok.Getter;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * 对fact中某个字段的简单比较，包括等值（EQ/IN）和数值区间（RANGE）两类；
+ * 由这类条件声明的规则可以被规则管理器建立索引，匹配fact时不需要逐个规则的比对
+ */
+@Getter
+public class FieldCondition implements Condition {
+
+    public enum Operator {
+        /**
+         * 字段值等于给定的值
+         */
+        EQ,
+        /**
+         * 字段值属于给定的值集合
+         */
+        IN,
+        /**
+         * 字段是数值且位于给定的区间内，上下界为null表示不限制
+         */
+        RANGE
+    }
+
+    private final String field;
+
+    private final Operator operator;
+
+    /**
+     * EQ和IN的取值，已规范化
+     */
+    private final Set<Object> values;
+
+    private final Double lower;
+
+    private final boolean lowerInclusive;
+
+    private final Double upper;
+
+    private final boolean upperInclusive;
+
+    private FieldCondition(String field, Operator operator, Set<Object> values,
+                           Double lower, boolean lowerInclusive, Double upper, boolean upperInclusive) {
+        if (field == null) {
+            throw new IllegalArgumentException("field must not be null");
+        }
+        this.field = field;
+        this.operator = operator;
+        this.values = values;
+        this.lower = lower;
+        this.lowerInclusive = lowerInclusive;
+        this.upper = upper;
+        this.upperInclusive = upperInclusive;
+    }
+
+    public static FieldCondition eq(String field, Object value) {
+        return new FieldCondition(field, Operator.EQ, Collections.singleton(normalize(value)), null, false, null, false);
+    }
+
+    public static FieldCondition in(String field, Object... values) {
+        Set<Object> normalized = new HashSet<>();
+        Arrays.stream(values).forEach(v -> normalized.add(normalize(v)));
+        return new FieldCondition(field, Operator.IN, Collections.unmodifiableSet(normalized), null, false, null, false);
+    }
+
+    public static FieldCondition gt(String field, Number value) {
+        return new FieldCondition(field, Operator.RANGE, null, value.doubleValue(), false, null, false);
+    }
+
+    public static FieldCondition ge(String field, Number value) {
+        return new FieldCondition(field, Operator.RANGE, null, value.doubleValue(), true, null, false);
+    }
+
+    public static FieldCondition lt(String field, Number value) {
+        return new FieldCondition(field, Operator.RANGE, null, null, false, value.doubleValue(), false);
+    }
+
+    public static FieldCondition le(String field, Number value) {
+        return new FieldCondition(field, Operator.RANGE, null, null, false, value.doubleValue(), true);
+    }
+
+    /**
+     * 闭区间[lower, upper]
+     */
+    public static FieldCondition between(String field, Number lower, Number upper) {
+        return new FieldCondition(field, Operator.RANGE, null, lower.doubleValue(), true, upper.doubleValue(), true);
+    }
+
+    @Override
+    public boolean evaluate(Fact fact) {
+        Object value = fact.getValue(field);
+        if (value == null) {
+            return false;
+        }
+        if (operator == Operator.RANGE) {
+            return value instanceof Number number && inRange(number.doubleValue());
+        }
+        return values.contains(normalize(value));
+    }
+
+    public boolean inRange(double v) {
+        if (lower != null && (lowerInclusive ? v < lower : v <= lower)) {
+            return false;
+        }
+        return upper == null || (upperInclusive ? v <= upper : v < upper);
+    }
+
+    /**
+     * 规范化比较的值，使不同类型但数值相等的数字（如5、5L、5.0）能够相等
+     */
+    public static Object normalize(Object value) {
+        if (value instanceof Integer || value instanceof Long || value instanceof Short || value instanceof Byte) {
+            return ((Number) value).longValue();
+        }
+        if (value instanceof Number number) {
+            double d = number.doubleValue();
+            if (d == Math.rint(d) && d >= Long.MIN_VALUE && d <= Long.MAX_VALUE) {
+                return (long) d;
+            }
+            return d;
+        }
+        return value;
+    }
+
+}
@@ -0,0 +1,207 @@
+package com.github.davidfantasy.fastrule.executor;
+
+import com.github.davidfantasy.fastrule.Rule;
+import lombok.extern.slf4j.Slf4j;
+
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 规则动作（executeThen/executeElse）的异步执行器，条件匹配仍然在规则执行线程中进行，
+ * 匹配后的动作交给该执行器，避免调用HTTP、数据库等阻塞动作时占满规则执行线程。
+ * 运行在JDK21及以上时每个动作使用一个虚拟线程执行，否则退化为固定上限的平台线程池，超过上限的动作在线程池中排队。
+ * 每个规则有独立的并发上限，超过上限的动作在该规则的等待队列中排队，等待队列也满时返回false，由调用方同步执行，
+ * 从而将压力反馈到规则执行线程，而不是无限制的堆积。
+ * 规则的动作全部执行完成后其等待队列随即被回收，已被移除的规则不会在lanes中残留
+ */
+@Slf4j
+public class ActionExecutor {
+
+    /**
+     * 退化为平台线程池的日志只输出一次
+     */
+    private static final AtomicBoolean FALLBACK_LOGGED = new AtomicBoolean();
+
+    private final ExecutorService executor;
+
+    private final int concurrencyPerRule;
+
+    private final int queueCapacityPerRule;
+
+    /**
+     * ruleId -> 该规则的动作队列，只保存有动作在排队或执行中的规则
+     */
+    private final Map<String, Lane> lanes = new ConcurrentHashMap<>();
+
+    public ActionExecutor(int concurrencyPerRule, int queueCapacityPerRule) {
+        this(concurrencyPerRule, queueCapacityPerRule, concurrencyPerRule);
+    }
+
+    /**
+     * @param platformThreads 没有虚拟线程时平台线程池的线程数上限
+     */
+    public ActionExecutor(int concurrencyPerRule, int queueCapacityPerRule, int platformThreads) {
+        if (concurrencyPerRule <= 0) {
+            throw new IllegalArgumentException("concurrencyPerRule must be greater than 0");
+        }
+        if (queueCapacityPerRule < 0) {
+            throw new IllegalArgumentException("queueCapacityPerRule must not be negative");
+        }
+        if (platformThreads <= 0) {
+            throw new IllegalArgumentException("platformThreads must be greater than 0");
+        }
+        this.concurrencyPerRule = concurrencyPerRule;
+        this.queueCapacityPerRule = queueCapacityPerRule;
+        this.executor = newActionThreadExecutor(platformThreads);
+    }
+
+    /**
+     * 提交规则的动作，返回false表示该规则的并发和等待队列都已满，需要调用方同步执行
+     */
+    public boolean submit(Rule rule, Runnable action) {
+        while (true) {
+            Lane lane = lanes.computeIfAbsent(rule.getId(), Lane::new);
+            int count = lane.pendingCount.get();
+            if (count < 0) {
+                //该队列正在被回收，协助移除后使用新的队列
+                lanes.remove(lane.ruleId, lane);
+                continue;
+            }
+            if (count >= queueCapacityPerRule + concurrencyPerRule) {
+                return false;
+            }
+            if (lane.pendingCount.compareAndSet(count, count + 1)) {
+                lane.pending.offer(action);
+                lane.drain();
+                return true;
+            }
+        }
+    }
+
+    /**
+     * 当前保存了动作队列的规则数量
+     */
+    public int getLaneSize() {
+        return lanes.size();
+    }
+
+    /**
+     * 规则当前正在执行的动作数量
+     */
+    public int getInFlight(String ruleId) {
+        Lane lane = lanes.get(ruleId);
+        return lane == null ? 0 : lane.inFlight.get();
+    }
+
+    /**
+     * 停止接收新的动作，并等待已提交的动作执行完成
+     */
+    public void shutdown(long timeout, TimeUnit unit) {
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(timeout, unit)) {
+                log.warn("rule actions are still running after shutdown timeout");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static ExecutorService newActionThreadExecutor(int platformThreads) {
+        try {
+            //项目以JDK17编译，通过反射使用JDK21的虚拟线程
+            Method method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) method.invoke(null);
+        } catch (NoSuchMethodException e) {
+            if (FALLBACK_LOGGED.compareAndSet(false, true)) {
+                log.info("virtual threads are not available, rule actions run on a thread pool of {} threads", platformThreads);
+            }
+        } catch (ReflectiveOperationException e) {
+            if (FALLBACK_LOGGED.compareAndSet(false, true)) {
+                log.warn("create virtual thread executor failed, rule actions run on a thread pool of {} threads", platformThreads, e);
+            }
+        }
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(platformThreads, platformThreads, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), new ThreadFactory() {
+            private final AtomicInteger index = new AtomicInteger(1);
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "fast-rule-action-" + index.getAndIncrement());
+                t.setDaemon(true);
+                return t;
+            }
+        });
+        //空闲的线程超时后回收
+        pool.allowCoreThreadTimeOut(true);
+        return pool;
+    }
+
+    /**
+     * 单个规则的动作队列，pendingCount包括排队中和执行中的动作，为-1表示队列已空闲并正在被回收
+     */
+    private final class Lane {
+
+        private final String ruleId;
+
+        private final Queue<Runnable> pending = new ConcurrentLinkedQueue<>();
+
+        private final AtomicInteger pendingCount = new AtomicInteger();
+
+        private final AtomicInteger inFlight = new AtomicInteger();
+
+        Lane(String ruleId) {
+            this.ruleId = ruleId;
+        }
+
+        /**
+         * 在并发上限内启动排队中的动作，提交动作和动作执行完成后都会调用
+         */
+        void drain() {
+            while (!pending.isEmpty()) {
+                int running = inFlight.get();
+                if (running >= concurrencyPerRule) {
+                    return;
+                }
+                if (!inFlight.compareAndSet(running, running + 1)) {
+                    continue;
+                }
+                Runnable action = pending.poll();
+                if (action == null) {
+                    inFlight.decrementAndGet();
+                    continue;
+                }
+                try {
+                    executor.execute(() -> {
+                        try {
+                            action.run();
+                        } finally {
+                            inFlight.decrementAndGet();
+                            complete();
+                            drain();
+                        }
+                    });
+                } catch (RejectedExecutionException e) {
+                    inFlight.decrementAndGet();
+                    complete();
+                    log.warn("action executor is shutdown, rule action is discarded");
+                }
+            }
+        }
+
+        /**
+         * 一个动作结束，队列空闲时将其标记为回收并从lanes中移除，之后提交的动作会使用新的队列
+         */
+        private void complete() {
+            if (pendingCount.decrementAndGet() == 0 && pendingCount.compareAndSet(0, -1)) {
+                lanes.remove(ruleId, this);
+            }
+        }
+
+    }
+
+}
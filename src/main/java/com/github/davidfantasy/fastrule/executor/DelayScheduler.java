@@ -0,0 +1,30 @@
+package com.github.davidfantasy.fastrule.executor;
+
+import com.github.davidfantasy.fastrule.fact.Fact;
+import com.github.davidfantasy.fastrule.timer.HashedWheelTimer;
+import com.github.davidfantasy.fastrule.timer.Timeout;
+import com.github.davidfantasy.fastrule.timer.TimerTask;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 供规则调度延迟任务使用。在规则执行线程中调用时，任务由该线程所属引擎的时间轮调度，到期后在引擎的执行线程上执行；
+ * 在其它线程中调用时（例如直接调用规则的executeThen），使用全局共享的时间轮，到期后由时间轮线程直接执行
+ */
+public final class DelayScheduler {
+
+    private static final HashedWheelTimer SHARED_TIMER = new HashedWheelTimer("fast-rule-shared-delay-timer",
+            10, TimeUnit.MILLISECONDS, 1024);
+
+    private DelayScheduler() {
+    }
+
+    public static Timeout schedule(Fact fact, TimerTask task, long delayMs) {
+        RuleTaskExecutor executor = RuleTaskExecutor.current();
+        if (executor != null) {
+            return executor.schedule(fact, task, delayMs);
+        }
+        return SHARED_TIMER.newTimeout(fact, task, delayMs, TimeUnit.MILLISECONDS);
+    }
+
+}
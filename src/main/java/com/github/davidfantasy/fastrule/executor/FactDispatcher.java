@@ -0,0 +1,477 @@
+package com.github.davidfantasy.fastrule.executor;
+
+import com.github.davidfantasy.fastrule.FireResult;
+import com.github.davidfantasy.fastrule.Rule;
+import com.github.davidfantasy.fastrule.RuleConsumer;
+import com.github.davidfantasy.fastrule.RuleManager;
+import com.github.davidfantasy.fastrule.RuleSet;
+import com.github.davidfantasy.fastrule.RulesEngineConfig;
+import com.github.davidfantasy.fastrule.fact.Fact;
+import com.github.davidfantasy.fastrule.fact.RecyclableFact;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 负责将fact展开为规则事件并发布到RuleTaskExecutor，同时根据OverloadPolicy处理事件队列已满的情况
+ */
+@Slf4j
+public class FactDispatcher {
+
+    private static final int DRAIN_BATCH_SIZE = 256;
+
+    private final RuleTaskExecutor executor;
+
+    private final RuleManager ruleManager;
+
+    private final RulesEngineConfig config;
+
+    private final OverloadPolicy policy;
+
+    private final LongAdder rejectedFacts = new LongAdder();
+
+    private final LongAdder droppedFacts = new LongAdder();
+
+    /**
+     * SPILL策略下的溢出队列
+     */
+    private final ArrayBlockingQueue<PendingFact> overflowQueue;
+
+    /**
+     * DROP_OLDEST策略下的等待区，每个factId只保留最新的一条
+     */
+    private final ConcurrentHashMap<String, PendingFact> latestPending;
+
+    /**
+     * DROP_OLDEST策略下等待区中factId的先后顺序
+     */
+    private final Queue<String> pendingOrder;
+
+    private final AtomicInteger pendingCount = new AtomicInteger();
+
+    private volatile Thread drainer;
+
+    /**
+     * 单个fact无序匹配时收集候选规则的缓冲区，每个发布线程复用自己的实例
+     */
+    private final ThreadLocal<Candidates> candidates = ThreadLocal.withInitial(Candidates::new);
+
+    public FactDispatcher(RuleTaskExecutor executor, RuleManager ruleManager, RulesEngineConfig config) {
+        this.executor = executor;
+        this.ruleManager = ruleManager;
+        this.config = config;
+        this.policy = config.getOverloadPolicy();
+        if (policy == OverloadPolicy.SPILL || policy == OverloadPolicy.DROP_OLDEST) {
+            if (config.getOverflowQueueCapacity() <= 0) {
+                throw new IllegalArgumentException("overflowQueueCapacity must be greater than 0");
+            }
+        }
+        this.overflowQueue = policy == OverloadPolicy.SPILL ? new ArrayBlockingQueue<>(config.getOverflowQueueCapacity()) : null;
+        this.latestPending = policy == OverloadPolicy.DROP_OLDEST ? new ConcurrentHashMap<>() : null;
+        this.pendingOrder = policy == OverloadPolicy.DROP_OLDEST ? new ConcurrentLinkedQueue<>() : null;
+    }
+
+    public void start() {
+        if (overflowQueue == null && latestPending == null) {
+            return;
+        }
+        Thread t = new Thread(this::drainLoop, "fast-rule-overflow-drainer");
+        t.setDaemon(true);
+        drainer = t;
+        t.start();
+    }
+
+    public void shutdown() {
+        Thread t = drainer;
+        drainer = null;
+        if (t != null) {
+            LockSupport.unpark(t);
+            try {
+                t.join(TimeUnit.SECONDS.toMillis(1));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        int discarded = pendingCount.getAndSet(0);
+        if (discarded > 0) {
+            droppedFacts.add(discarded);
+            log.warn("rule engine shutdown, {} pending facts are discarded", discarded);
+        }
+        if (overflowQueue != null) {
+            PendingFact pending;
+            while ((pending = overflowQueue.poll()) != null) {
+                RecyclableFact.release(pending.fact);
+            }
+        }
+        if (latestPending != null) {
+            latestPending.values().forEach(pending -> RecyclableFact.release(pending.fact));
+            latestPending.clear();
+            pendingOrder.clear();
+        }
+    }
+
+    /**
+     * 展开并发布一批fact，返回结果中最差的一种：有fact被拒绝时返回REJECTED，有fact进入等待区时返回QUEUED；
+     * 调用方持有的RecyclableFact引用在发布完成后释放，之后由事件和等待区各自持有的引用决定何时回收
+     */
+    public FireResult dispatch(Collection<? extends Fact> facts, boolean firedByPriority) {
+        try {
+            return doDispatch(facts, firedByPriority);
+        } finally {
+            for (Fact fact : facts) {
+                RecyclableFact.release(fact);
+            }
+        }
+    }
+
+    /**
+     * 发布单个fact，和只包含一个fact的dispatch结果相同，但不需要为展开过程分配集合
+     */
+    public FireResult dispatch(Fact fact, boolean firedByPriority) {
+        try {
+            if (policy == OverloadPolicy.BLOCK) {
+                publish(fact, firedByPriority);
+                return FireResult.ACCEPTED;
+            }
+            if (pendingCount.get() == 0 && tryPublish(fact, firedByPriority)) {
+                return FireResult.ACCEPTED;
+            }
+            return overflow(fact, firedByPriority);
+        } finally {
+            RecyclableFact.release(fact);
+        }
+    }
+
+    private void publish(Fact fact, boolean firedByPriority) {
+        RuleSet ruleSet = ruleManager.getRuleSet();
+        if (firedByPriority || config.isSingleEventPerFact()) {
+            executor.publish(fact, null, 1, ruleSet, config, !firedByPriority);
+            return;
+        }
+        Candidates current = candidates.get();
+        try {
+            ruleSet.forEach(fact, current);
+            executor.publish(fact, current.rules, current.size, null, null, false);
+        } finally {
+            current.clear();
+        }
+    }
+
+    private boolean tryPublish(Fact fact, boolean firedByPriority) {
+        RuleSet ruleSet = ruleManager.getRuleSet();
+        if (firedByPriority || config.isSingleEventPerFact()) {
+            return executor.tryPublish(fact, null, 1, ruleSet, config, !firedByPriority);
+        }
+        Candidates current = candidates.get();
+        try {
+            ruleSet.forEach(fact, current);
+            return executor.tryPublish(fact, current.rules, current.size, null, null, false);
+        } finally {
+            current.clear();
+        }
+    }
+
+    private FireResult doDispatch(Collection<? extends Fact> facts, boolean firedByPriority) {
+        if (!firedByPriority && config.isBatchEvaluation() && facts.size() > 1) {
+            Batches batches = group(facts);
+            if (policy == OverloadPolicy.BLOCK) {
+                executor.publishBatches(batches.rules, batches.facts);
+                return FireResult.ACCEPTED;
+            }
+            if (pendingCount.get() == 0 && executor.tryPublishBatches(batches.rules, batches.facts)) {
+                return FireResult.ACCEPTED;
+            }
+            //队列空间不足时按单个fact的方式处理，由过载策略决定每个fact的去向
+        }
+        Expansion expansion = expand(facts, firedByPriority);
+        if (policy == OverloadPolicy.BLOCK) {
+            publish(expansion);
+            return FireResult.ACCEPTED;
+        }
+        //等待区不为空时新的fact也要排队，避免后到的fact先于等待中的fact执行
+        if (pendingCount.get() == 0 && tryPublish(expansion, 0, expansion.size())) {
+            return FireResult.ACCEPTED;
+        }
+        //整批发布失败后逐个fact尝试，尽量让更多的fact进入队列
+        FireResult result = FireResult.ACCEPTED;
+        for (int i = 0; i < expansion.size(); i++) {
+            FireResult current;
+            if (pendingCount.get() == 0 && tryPublish(expansion, i, i + 1)) {
+                current = FireResult.ACCEPTED;
+            } else {
+                current = overflow(expansion.facts.get(i), firedByPriority);
+            }
+            if (current.compareTo(result) > 0) {
+                result = current;
+            }
+        }
+        return result;
+    }
+
+    public long getRejectedFactCount() {
+        return rejectedFacts.sum();
+    }
+
+    public long getDroppedFactCount() {
+        return droppedFacts.sum();
+    }
+
+    public int getPendingFactCount() {
+        return pendingCount.get();
+    }
+
+    private FireResult overflow(Fact fact, boolean firedByPriority) {
+        if (policy == OverloadPolicy.SPILL) {
+            RecyclableFact.retain(fact, 1);
+            if (overflowQueue.offer(new PendingFact(fact, firedByPriority))) {
+                pendingCount.incrementAndGet();
+                return FireResult.QUEUED;
+            }
+            RecyclableFact.release(fact);
+        } else if (policy == OverloadPolicy.DROP_OLDEST) {
+            if (latestPending.containsKey(fact.getId()) || latestPending.size() < config.getOverflowQueueCapacity()) {
+                RecyclableFact.retain(fact, 1);
+                latestPending.compute(fact.getId(), (factId, old) -> {
+                    if (old != null) {
+                        RecyclableFact.release(old.fact);
+                        droppedFacts.increment();
+                        log.debug("pending fact is replaced by a newer one:{}", factId);
+                    } else {
+                        pendingCount.incrementAndGet();
+                        pendingOrder.add(factId);
+                    }
+                    return new PendingFact(fact, firedByPriority);
+                });
+                return FireResult.QUEUED;
+            }
+        }
+        rejectedFacts.increment();
+        log.debug("rule event queue is full, fact is rejected:{}", fact.getId());
+        return FireResult.REJECTED;
+    }
+
+    private void drainLoop() {
+        List<PendingFact> drained = new ArrayList<>(DRAIN_BATCH_SIZE);
+        while (drainer != null) {
+            try {
+                if (overflowQueue != null) {
+                    PendingFact first = overflowQueue.poll(100, TimeUnit.MILLISECONDS);
+                    if (first == null) {
+                        continue;
+                    }
+                    drained.add(first);
+                    overflowQueue.drainTo(drained, DRAIN_BATCH_SIZE - 1);
+                } else {
+                    String factId;
+                    while (drained.size() < DRAIN_BATCH_SIZE && (factId = pendingOrder.poll()) != null) {
+                        PendingFact pending = latestPending.remove(factId);
+                        if (pending != null) {
+                            drained.add(pending);
+                        }
+                    }
+                    if (drained.isEmpty()) {
+                        LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+                        continue;
+                    }
+                }
+                //在独立线程中阻塞发布，按原始顺序进入事件队列
+                for (PendingFact pending : drained) {
+                    try {
+                        publish(pending.fact, pending.firedByPriority);
+                    } finally {
+                        RecyclableFact.release(pending.fact);
+                    }
+                }
+                pendingCount.addAndGet(-drained.size());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                log.warn("drain pending facts error", e);
+            } finally {
+                drained.clear();
+            }
+        }
+    }
+
+    private Expansion expand(Collection<? extends Fact> facts, boolean firedByPriority) {
+        Expansion expansion = new Expansion(ruleManager.getRuleSet(), firedByPriority,
+                firedByPriority || config.isSingleEventPerFact(), facts.size());
+        if (expansion.eventPerFact) {
+            for (Fact fact : facts) {
+                expansion.facts.add(fact);
+                expansion.eventFacts.add(fact);
+                expansion.ends[expansion.facts.size() - 1] = expansion.eventFacts.size();
+            }
+            return expansion;
+        }
+        for (Fact fact : facts) {
+            expansion.ruleSet.forEach(fact, rule -> {
+                if (rule.isEnabled()) {
+                    expansion.eventFacts.add(fact);
+                    expansion.eventRules.add(rule);
+                }
+                return true;
+            });
+            expansion.facts.add(fact);
+            expansion.ends[expansion.facts.size() - 1] = expansion.eventFacts.size();
+        }
+        return expansion;
+    }
+
+    /**
+     * 将一批fact按候选规则分组，按factId分区执行时同一组中的fact还需要属于同一个分区；
+     * 组内的fact保持提交的顺序，超过evaluationBatchSize时拆分为多组
+     */
+    private Batches group(Collection<? extends Fact> facts) {
+        int partitions = config.isPartitionedByFactId() ? config.getExecutorThreadPoolSize() : 1;
+        int batchSize = config.getEvaluationBatchSize();
+        RuleSet ruleSet = ruleManager.getRuleSet();
+        Map<BatchKey, List<Fact>> open = new HashMap<>();
+        Batches batches = new Batches();
+        for (Fact fact : facts) {
+            int partition = partitions > 1 ? RuleTaskEventHandler.partitionOf(fact.getId(), partitions) : 0;
+            ruleSet.forEach(fact, rule -> {
+                if (rule.isEnabled()) {
+                    List<Fact> batch = open.computeIfAbsent(new BatchKey(rule, partition), k -> {
+                        List<Fact> created = new ArrayList<>();
+                        batches.rules.add(rule);
+                        batches.facts.add(created);
+                        return created;
+                    });
+                    batch.add(fact);
+                    if (batch.size() >= batchSize) {
+                        open.remove(new BatchKey(rule, partition));
+                    }
+                }
+                return true;
+            });
+        }
+        return batches;
+    }
+
+    private void publish(Expansion expansion) {
+        executor.publish(expansion.eventFacts, expansion.eventRules, 0, expansion.eventFacts.size(),
+                expansion.ruleSet(), expansion.config(), expansion.unordered());
+    }
+
+    private boolean tryPublish(Expansion expansion, int fromFact, int toFact) {
+        int from = fromFact == 0 ? 0 : expansion.ends[fromFact - 1];
+        int to = expansion.ends[toFact - 1];
+        return executor.tryPublish(expansion.eventFacts, expansion.eventRules, from, to,
+                expansion.ruleSet(), expansion.config(), expansion.unordered());
+    }
+
+    /**
+     * 一批fact展开后的规则事件，ends[i]表示第i个fact对应事件的结束下标
+     */
+    private class Expansion {
+
+        /**
+         * 展开时的规则集快照，事件处理时匹配的也是这个版本的规则
+         */
+        final RuleSet ruleSet;
+
+        final boolean firedByPriority;
+
+        /**
+         * 每个fact只对应一个事件，按优先级匹配或开启了singleEventPerFact时为true
+         */
+        final boolean eventPerFact;
+
+        final List<Fact> facts;
+
+        final List<Fact> eventFacts = new ArrayList<>();
+
+        final List<Rule> eventRules;
+
+        final int[] ends;
+
+        Expansion(RuleSet ruleSet, boolean firedByPriority, boolean eventPerFact, int size) {
+            this.ruleSet = ruleSet;
+            this.firedByPriority = firedByPriority;
+            this.eventPerFact = eventPerFact;
+            this.facts = new ArrayList<>(size);
+            this.eventRules = eventPerFact ? null : new ArrayList<>();
+            this.ends = new int[size];
+        }
+
+        int size() {
+            return facts.size();
+        }
+
+        RuleSet ruleSet() {
+            return eventPerFact ? ruleSet : null;
+        }
+
+        RulesEngineConfig config() {
+            return eventPerFact ? config : null;
+        }
+
+        boolean unordered() {
+            return eventPerFact && !firedByPriority;
+        }
+
+    }
+
+    /**
+     * 已启用的候选规则
+     */
+    private static final class Candidates implements RuleConsumer {
+
+        Rule[] rules = new Rule[16];
+
+        int size;
+
+        @Override
+        public boolean accept(Rule rule) {
+            if (rule.isEnabled()) {
+                if (size == rules.length) {
+                    rules = Arrays.copyOf(rules, size * 2);
+                }
+                rules[size++] = rule;
+            }
+            return true;
+        }
+
+        /**
+         * 发布完成后清除对规则的引用
+         */
+        void clear() {
+            Arrays.fill(rules, 0, size, null);
+            size = 0;
+        }
+
+    }
+
+    private record PendingFact(Fact fact, boolean firedByPriority) {
+    }
+
+    private record BatchKey(Rule rule, int partition) {
+    }
+
+    /**
+     * 分组后的批量匹配事件，rules和facts按下标一一对应
+     */
+    private static class Batches {
+
+        final List<Rule> rules = new ArrayList<>();
+
+        final List<List<Fact>> facts = new ArrayList<>();
+
+    }
+
+}
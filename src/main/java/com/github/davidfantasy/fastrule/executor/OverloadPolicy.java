@@ -0,0 +1,26 @@
+package com.github.davidfantasy.fastrule.executor;
+
+/**
+ * 规则事件队列已满时对新fact的处理策略
+ */
+public enum OverloadPolicy {
+
+    /**
+     * 阻塞调用方直到队列有足够的空间，不会丢失fact，但会拖慢采集线程和调用fire的业务线程
+     */
+    BLOCK,
+    /**
+     * 尝试发布，队列空间不足时立即拒绝该fact，并通过FireResult.REJECTED告知调用方
+     */
+    REJECT,
+    /**
+     * 队列空间不足时将fact暂存在等待区，每个factId只保留最新的一条，较旧的fact会被丢弃，
+     * 适合只关心设备最新状态的场景；等待区的factId数量超过overflowQueueCapacity时会拒绝新的fact
+     */
+    DROP_OLDEST,
+    /**
+     * 队列空间不足时将fact按顺序放入容量为overflowQueueCapacity的溢出队列，溢出队列也满时拒绝新的fact
+     */
+    SPILL
+
+}
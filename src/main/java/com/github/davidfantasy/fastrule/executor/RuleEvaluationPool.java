@@ -0,0 +1,172 @@
+package com.github.davidfantasy.fastrule.executor;
+
+import com.github.davidfantasy.fastrule.condition.ConditionMemo;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 单事件无序模式下用于并行匹配大量候选规则的fork-join线程池。
+ * 候选规则按chunkSize分段，调用线程（规则执行线程）匹配第一段，其余的段二分拆分为子任务，由池中空闲的线程窃取执行；
+ * 调用线程等待所有子任务完成后才返回，因此一个fact的匹配仍然在其事件的处理过程内完成，按factId分区执行时也不会乱序。
+ * 线程池在第一次需要拆分时才创建，池中的线程同样持有条件备忘录和所属的RuleTaskExecutor
+ */
+final class RuleEvaluationPool {
+
+    private final int parallelism;
+
+    private final int chunkSize;
+
+    private final RuleTaskExecutor executor;
+
+    private volatile ForkJoinPool pool;
+
+    private volatile boolean shutdown;
+
+    RuleEvaluationPool(int parallelism, int chunkSize, RuleTaskExecutor executor) {
+        if (parallelism <= 0) {
+            throw new IllegalArgumentException("parallelism must be greater than 0");
+        }
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("chunkSize must be greater than 0");
+        }
+        this.parallelism = parallelism;
+        this.chunkSize = chunkSize;
+        this.executor = executor;
+    }
+
+    /**
+     * 匹配[0, size)区间内的候选规则，不超过一段时直接在调用线程中执行
+     */
+    void invoke(int size, RangeTask task) {
+        ForkJoinPool current = size > chunkSize ? pool() : null;
+        if (current == null) {
+            task.run(0, size);
+            return;
+        }
+        RecursiveAction rest = new Chunk(chunkSize, size, task);
+        try {
+            current.execute(rest);
+        } catch (RejectedExecutionException e) {
+            //线程池已经关闭
+            task.run(0, size);
+            return;
+        }
+        try {
+            task.run(0, chunkSize);
+        } finally {
+            rest.join();
+        }
+    }
+
+    void shutdown() {
+        ForkJoinPool current;
+        synchronized (this) {
+            shutdown = true;
+            current = pool;
+        }
+        if (current != null) {
+            current.shutdown();
+            try {
+                current.awaitTermination(1, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * 已关闭时返回null，由调用线程执行全部的规则
+     */
+    private ForkJoinPool pool() {
+        ForkJoinPool current = this.pool;
+        if (current != null) {
+            return current;
+        }
+        synchronized (this) {
+            if (shutdown) {
+                return null;
+            }
+            if (pool == null) {
+                AtomicInteger index = new AtomicInteger(1);
+                pool = new ForkJoinPool(parallelism, p -> {
+                    ForkJoinWorkerThread t = new EvaluationThread(p, executor);
+                    t.setName("fast-rule-evaluator-" + index.getAndIncrement());
+                    t.setDaemon(true);
+                    return t;
+                }, null, false);
+            }
+            return pool;
+        }
+    }
+
+    /**
+     * 匹配一段候选规则，[from, to)为候选规则的下标区间
+     */
+    @FunctionalInterface
+    interface RangeTask {
+
+        void run(int from, int to);
+
+    }
+
+    /**
+     * 超过一段时按段对齐二分拆分
+     */
+    private final class Chunk extends RecursiveAction {
+
+        private final int from;
+
+        private final int to;
+
+        private final RangeTask task;
+
+        Chunk(int from, int to, RangeTask task) {
+            this.from = from;
+            this.to = to;
+            this.task = task;
+        }
+
+        @Override
+        protected void compute() {
+            int chunks = (to - from + chunkSize - 1) / chunkSize;
+            if (chunks <= 1) {
+                task.run(from, to);
+                return;
+            }
+            int mid = from + chunks / 2 * chunkSize;
+            invokeAll(new Chunk(from, mid, task), new Chunk(mid, to, task));
+        }
+
+    }
+
+    /**
+     * 池中的线程，和RuleTaskThread一样持有专属的条件备忘录，延迟任务也由所属的RuleTaskExecutor调度
+     */
+    static final class EvaluationThread extends ForkJoinWorkerThread implements ConditionMemo.Holder {
+
+        private final ConditionMemo conditionMemo = new ConditionMemo();
+
+        private final RuleTaskExecutor executor;
+
+        EvaluationThread(ForkJoinPool pool, RuleTaskExecutor executor) {
+            super(pool);
+            this.executor = executor;
+        }
+
+        RuleTaskExecutor executor() {
+            return executor;
+        }
+
+        @Override
+        public ConditionMemo conditionMemo() {
+            return conditionMemo;
+        }
+
+    }
+
+}
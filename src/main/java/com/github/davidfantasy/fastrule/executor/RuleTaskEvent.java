@@ -1,11 +1,13 @@
 package com.github.davidfantasy.fastrule.executor;
 
 import com.github.davidfantasy.fastrule.Rule;
-import com.github.davidfantasy.fastrule.RuleManager;
+import com.github.davidfantasy.fastrule.RuleSet;
 import com.github.davidfantasy.fastrule.RulesEngineConfig;
 import com.github.davidfantasy.fastrule.fact.Fact;
 import lombok.Data;
 
+import java.util.List;
+
 @Data
 public class RuleTaskEvent {
 
@@ -13,8 +15,65 @@ public class RuleTaskEvent {
 
     private Rule rule;
 
+    /**
+     * 批量匹配事件中同一条规则的一组fact，不为null时fact为其中的第一个（用于分区），rule为要匹配的规则
+     */
+    private List<Fact> facts;
+
     private RulesEngineConfig rulesEngineConfig;
 
-    private RuleManager ruleManager;
+    /**
+     * 分发fact时规则集的快照，同一次触发中的fact都只匹配这个版本的规则，不受之后的规则变更影响
+     */
+    private RuleSet ruleSet;
+
+    /**
+     * rule为null时，是否不按优先级顺序、而是并行匹配ruleSet中该fact的所有候选规则（单事件无序模式）
+     */
+    private boolean unordered;
+
+    /**
+     * 触发标识，同一个fact在一次触发中展开的所有事件具有相同的标识
+     */
+    private long fireId;
+
+    /**
+     * 事件发布的时间（System.nanoTime），只有开启了指标统计时才会记录
+     */
+    private long publishNanos;
+
+    /**
+     * 到期的延迟任务，不为null时该事件只执行这个任务，fact为任务关联的fact（用于分区），rule和ruleSet为null
+     */
+    private Runnable task;
+
+    /**
+     * 复制事件的内容，用于在槽位被覆盖前暂存事件，复制后的事件继承原事件持有的fact引用
+     */
+    public RuleTaskEvent copy() {
+        RuleTaskEvent copy = new RuleTaskEvent();
+        copy.fact = fact;
+        copy.rule = rule;
+        copy.facts = facts;
+        copy.rulesEngineConfig = rulesEngineConfig;
+        copy.ruleSet = ruleSet;
+        copy.unordered = unordered;
+        copy.fireId = fireId;
+        copy.publishNanos = publishNanos;
+        copy.task = task;
+        return copy;
+    }
+
+    /**
+     * 事件处理完成后清除对fact、规则等对象的引用，避免事件队列的槽位在被覆盖前一直持有这些对象
+     */
+    public void clear() {
+        fact = null;
+        facts = null;
+        rule = null;
+        rulesEngineConfig = null;
+        ruleSet = null;
+        task = null;
+    }
 
 }
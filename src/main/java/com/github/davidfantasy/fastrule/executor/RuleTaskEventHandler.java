@@ -1,73 +1,659 @@
 package com.github.davidfantasy.fastrule.executor;
 
+import com.github.davidfantasy.fastrule.DelayStatefulTriggerRule;
 import com.github.davidfantasy.fastrule.Rule;
-import com.github.davidfantasy.fastrule.RuleManager;
+import com.github.davidfantasy.fastrule.RuleConsumer;
+import com.github.davidfantasy.fastrule.RuleSet;
 import com.github.davidfantasy.fastrule.RulesEngineConfig;
+import com.github.davidfantasy.fastrule.condition.ConditionMemo;
 import com.github.davidfantasy.fastrule.fact.Fact;
+import com.github.davidfantasy.fastrule.fact.RecyclableFact;
+import com.github.davidfantasy.fastrule.metrics.RuleEngineMetrics;
+import com.github.davidfantasy.fastrule.trace.RuleTracer;
+import com.github.davidfantasy.fastrule.trace.TraceEvent;
+import com.lmax.disruptor.EventHandler;
 import com.lmax.disruptor.WorkHandler;
 import lombok.extern.slf4j.Slf4j;
 
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+
+/**
+ * 规则事件处理器，作为WorkHandler使用时由多个线程竞争处理事件；
+ * 作为EventHandler使用时每个处理器会看到所有事件，但只处理factId分区属于自己的事件，
+ * 从而保证同一个factId的事件按顺序串行执行；某个fact的优先级匹配因异步动作暂停时，
+ * 之后到达的同一个factId的事件会被暂存，直到该匹配在本分区继续并完成后再按顺序处理
+ */
 @Slf4j
-public class RuleTaskEventHandler implements WorkHandler<RuleTaskEvent> {
+public class RuleTaskEventHandler implements WorkHandler<RuleTaskEvent>, EventHandler<RuleTaskEvent> {
+
+    private final int partition;
+
+    private final int partitions;
+
+    private final RuleEngineMetrics metrics;
+
+    private final RuleTracer tracer;
+
+    /**
+     * 规则动作的异步执行器，为空时动作在当前线程同步执行
+     */
+    private final ActionExecutor actionExecutor;
+
+    /**
+     * 单事件无序模式下并行匹配候选规则的线程池，为空时在当前线程匹配全部候选规则
+     */
+    private final RuleEvaluationPool evaluationPool;
+
+    /**
+     * 单事件无序模式下收集候选规则的缓冲区，只由当前处理器的线程写入，匹配完成后清空
+     */
+    private final List<Rule> candidates = new ArrayList<>();
+
+    /**
+     * 批量匹配的结果，只由当前处理器的线程使用
+     */
+    private final BitSet batchResults = new BitSet();
+
+    /**
+     * 作为EventHandler使用时，优先级匹配暂停中的factId -> 之后到达、暂存的同一个factId的事件，只由当前处理器的线程访问
+     */
+    private final Map<String, ArrayDeque<RuleTaskEvent>> held = new HashMap<>();
+
+    public RuleTaskEventHandler() {
+        this(0, 1, RuleEngineMetrics.NOOP, new RuleTracer(), null, null);
+    }
+
+    /**
+     * 由RuleTaskExecutor根据RulesEngineConfig创建
+     */
+    RuleTaskEventHandler(int partition, int partitions, RuleEngineMetrics metrics, RuleTracer tracer,
+                         ActionExecutor actionExecutor, RuleEvaluationPool evaluationPool) {
+        this.partition = partition;
+        this.partitions = partitions;
+        this.metrics = metrics;
+        this.tracer = tracer;
+        this.actionExecutor = actionExecutor;
+        this.evaluationPool = evaluationPool;
+    }
+
+    /**
+     * 计算factId所属的分区
+     */
+    public static int partitionOf(String factId, int partitions) {
+        int h = factId.hashCode();
+        return ((h ^ (h >>> 16)) & 0x7fffffff) % partitions;
+    }
 
+    @Override
+    public void onEvent(RuleTaskEvent event, long sequence, boolean endOfBatch) {
+        //没有关联fact的延迟任务固定由第一个分区执行
+        Fact fact = event.getFact();
+        if (partitions > 1 && (fact == null ? 0 : partitionOf(fact.getId(), partitions)) != partition) {
+            return;
+        }
+        //继续暂停中的匹配的任务不能被暂存
+        if (!held.isEmpty() && fact != null && !(event.getTask() instanceof PriorityChain)) {
+            ArrayDeque<RuleTaskEvent> queue = held.get(fact.getId());
+            if (queue != null) {
+                queue.add(event.copy());
+                return;
+            }
+        }
+        handle(event, true);
+    }
+
+    /**
+     * 作为WorkHandler时每个事件只由一个线程处理，处理完成后直接清除事件中的引用
+     */
     @Override
     public void onEvent(RuleTaskEvent event) {
-        Rule rule = event.getRule();
-        if (rule != null) {
-            executeWithSingleRule(rule, event.getFact());
-        } else {
-            executeWithPriorityRules(event.getRuleManager(), event.getFact(), event.getRulesEngineConfig());
+        try {
+            handle(event, false);
+        } finally {
+            event.clear();
+        }
+    }
+
+    /**
+     * @param ordered 是否需要保证同一个factId的事件顺序，为true时暂停中的优先级匹配会暂存该factId之后的事件
+     */
+    private void handle(RuleTaskEvent event, boolean ordered) {
+        if (event.getPublishNanos() != 0) {
+            metrics.recordQueueDelay(System.nanoTime() - event.getPublishNanos());
+        }
+        if (event.getTask() != null) {
+            runTask(event.getTask());
+            return;
+        }
+        if (event.getFacts() != null) {
+            //批量事件中是多个不同的fact，不能进入同一个备忘录作用域
+            try {
+                executeBatch(event.getRule(), event.getFacts());
+            } finally {
+                for (Fact fact : event.getFacts()) {
+                    RecyclableFact.release(fact);
+                }
+            }
+            return;
+        }
+        ConditionMemo memo = ConditionMemo.current();
+        if (memo != null) {
+            memo.enter(event.getFireId());
+        }
+        try {
+            Rule rule = event.getRule();
+            if (rule != null) {
+                executeWithSingleRule(rule, event.getFact());
+            } else if (event.isUnordered()) {
+                executeWithCandidateRules(event.getRuleSet(), event.getFact(), event.getFireId());
+            } else {
+                executeWithPriorityRules(event.getRuleSet(), event.getFact(), event.getFireId(), event.getRulesEngineConfig(), ordered);
+            }
+        } finally {
+            if (memo != null) {
+                memo.exit();
+            }
+            //释放该事件持有的fact引用
+            RecyclableFact.release(event.getFact());
         }
     }
 
     private void executeWithSingleRule(Rule rule, Fact fact) {
-        if (!rule.preEvaluate(fact)) {
-            log.debug("drop rule:{},{}", rule.getName(), fact.getId());
+        try {
+            if (!rule.preEvaluate(fact)) {
+                trace(rule, fact, TraceEvent.DROP, null);
+                metrics.onRuleDropped(rule);
+                return;
+            }
+            if (rule.evaluate(fact)) {
+                trace(rule, fact, TraceEvent.HIT, null);
+                metrics.onRuleHit(rule);
+                executeThen(rule, fact);
+            } else {
+                trace(rule, fact, TraceEvent.MISS, null);
+                metrics.onRuleMissed(rule);
+                executeElse(rule, fact);
+            }
+        } catch (RuntimeException e) {
+            //异常仍然交给RuleTaskExceptionHandler处理
+            metrics.onRuleFailed(rule, e);
+            trace(rule, fact, TraceEvent.FAIL, e.toString());
+            throw e;
+        }
+    }
+
+    /**
+     * 批量匹配一条规则和一组fact：先逐个执行preEvaluate，再对通过的fact调用一次evaluateBatch，最后逐个执行动作；
+     * evaluateBatch失败时退回逐个匹配，单个fact的失败不影响其它fact
+     */
+    private void executeBatch(Rule rule, List<Fact> facts) {
+        List<Fact> passed = facts;
+        for (int i = 0; i < facts.size(); i++) {
+            Fact fact = facts.get(i);
+            boolean accepted;
+            try {
+                accepted = rule.preEvaluate(fact);
+                if (!accepted) {
+                    trace(rule, fact, TraceEvent.DROP, null);
+                    metrics.onRuleDropped(rule);
+                }
+            } catch (RuntimeException e) {
+                accepted = false;
+                log.error("evaluate rule failed: " + rule.getName(), e);
+                metrics.onRuleFailed(rule, e);
+                trace(rule, fact, TraceEvent.FAIL, e.toString());
+            }
+            if (!accepted && passed == facts) {
+                passed = new ArrayList<>(facts.subList(0, i));
+            } else if (accepted && passed != facts) {
+                passed.add(fact);
+            }
+        }
+        if (passed.isEmpty()) {
             return;
         }
-        if (rule.evaluate(fact)) {
-            log.debug("hit rule:{},{}", rule.getName(), fact.getId());
-            rule.executeThen(fact);
-        } else {
-            log.debug("miss rule:{},{}", rule.getName(), fact.getId());
-            rule.executeElse(fact);
+        BitSet applied = batchResults;
+        applied.clear();
+        try {
+            rule.evaluateBatch(passed, applied);
+        } catch (RuntimeException e) {
+            log.debug("evaluate batch failed, fall back to evaluate facts one by one: {}", rule.getName(), e);
+            evaluateOneByOne(rule, passed);
+            return;
+        }
+        for (int i = 0; i < passed.size(); i++) {
+            Fact fact = passed.get(i);
+            try {
+                if (applied.get(i)) {
+                    trace(rule, fact, TraceEvent.HIT, null);
+                    metrics.onRuleHit(rule);
+                    executeThen(rule, fact);
+                } else {
+                    trace(rule, fact, TraceEvent.MISS, null);
+                    metrics.onRuleMissed(rule);
+                    executeElse(rule, fact);
+                }
+            } catch (RuntimeException e) {
+                reportFailure(rule, fact, e);
+            }
         }
     }
 
-    private void executeWithPriorityRules(RuleManager ruleManager, Fact fact, RulesEngineConfig config) {
-        ruleManager.forEach(rule -> {
+    private void evaluateOneByOne(Rule rule, List<Fact> facts) {
+        for (Fact fact : facts) {
+            try {
+                if (rule.evaluate(fact)) {
+                    trace(rule, fact, TraceEvent.HIT, null);
+                    metrics.onRuleHit(rule);
+                    executeThen(rule, fact);
+                } else {
+                    trace(rule, fact, TraceEvent.MISS, null);
+                    metrics.onRuleMissed(rule);
+                    executeElse(rule, fact);
+                }
+            } catch (RuntimeException e) {
+                log.error("evaluate rule failed: " + rule.getName(), e);
+                metrics.onRuleFailed(rule, e);
+                trace(rule, fact, TraceEvent.FAIL, e.toString());
+            }
+        }
+    }
+
+    /**
+     * 单事件无序模式：收集fact的全部候选规则后分段匹配，单个规则的异常不影响其它规则
+     */
+    private void executeWithCandidateRules(RuleSet ruleSet, Fact fact, long fireId) {
+        ruleSet.forEach(fact, rule -> {
             if (rule.isEnabled()) {
+                candidates.add(rule);
+            }
+            return true;
+        });
+        try {
+            if (evaluationPool == null) {
+                evaluateCandidates(fact, 0, candidates.size());
+                return;
+            }
+            evaluationPool.invoke(candidates.size(), (from, to) -> {
+                //fork-join线程没有处于当前fact的作用域中，需要按同一个触发标识进入
+                ConditionMemo memo = Thread.currentThread() instanceof RuleEvaluationPool.EvaluationThread
+                        ? ConditionMemo.current() : null;
+                if (memo != null) {
+                    memo.enter(fireId);
+                }
                 try {
-                    if (!rule.preEvaluate(fact)) {
-                        log.debug("drop rule:{},{}", rule.getName(), fact.getId());
-                        return true;
+                    evaluateCandidates(fact, from, to);
+                } finally {
+                    if (memo != null) {
+                        memo.exit();
                     }
-                    boolean applied = rule.evaluate(fact);
-                    if (applied) {
-                        log.debug("hit rule:{},{}", rule.getName(), fact.getId());
-                        rule.executeThen(fact);
+                }
+            });
+        } finally {
+            candidates.clear();
+        }
+    }
+
+    private void evaluateCandidates(Fact fact, int from, int to) {
+        for (int i = from; i < to; i++) {
+            Rule rule = candidates.get(i);
+            try {
+                executeWithSingleRule(rule, fact);
+            } catch (RuntimeException e) {
+                log.error("evaluate rule failed: " + rule.getName(), e);
+            }
+        }
+    }
+
+    private void runTask(Runnable task) {
+        try {
+            task.run();
+        } catch (Exception e) {
+            log.error("rule task execute failed", e);
+        }
+    }
+
+    private void trace(Rule rule, Fact fact, TraceEvent event, String detail) {
+        if (tracer.isActive()) {
+            tracer.trace(rule, fact, event, detail);
+        }
+    }
+
+    /**
+     * 开启异步动作时提交给ActionExecutor，否则在当前线程调用executeThenAsync；
+     * 异步完成的动作在完成时检查结果，失败只记录日志和指标
+     */
+    private void executeThen(Rule rule, Fact fact) {
+        if (!submitAction(rule, fact, () -> runAction(rule, fact, true))) {
+            CompletableFuture<Boolean> future = invokeThen(rule, fact);
+            if (future != null) {
+                future.whenComplete((result, e) -> checkAction(rule, fact, result, e));
+            }
+        }
+    }
+
+    private void executeElse(Rule rule, Fact fact) {
+        if (!submitAction(rule, fact, () -> runAction(rule, fact, false))) {
+            rule.executeElse(fact);
+        }
+    }
+
+    /**
+     * 提交到ActionExecutor异步执行，动作执行期间持有fact的引用；没有开启异步动作或队列已满时返回false。
+     * DelayStatefulTriggerRule的动作会读写按fact保存的触发状态，总是留在规则执行线程中执行，
+     * 状态变化的顺序和未开启异步动作时一致
+     */
+    private boolean submitAction(Rule rule, Fact fact, Runnable action) {
+        if (actionExecutor == null || rule instanceof DelayStatefulTriggerRule) {
+            return false;
+        }
+        RecyclableFact.retain(fact, 1);
+        boolean submitted = actionExecutor.submit(rule, () -> {
+            try {
+                action.run();
+            } finally {
+                RecyclableFact.release(fact);
+            }
+        });
+        if (!submitted) {
+            RecyclableFact.release(fact);
+        }
+        return submitted;
+    }
+
+    private void runAction(Rule rule, Fact fact, boolean then) {
+        try {
+            if (then) {
+                CompletableFuture<Boolean> future = invokeThen(rule, fact);
+                if (future != null) {
+                    future.whenComplete((result, e) -> checkAction(rule, fact, result, e));
+                }
+            } else {
+                rule.executeElse(fact);
+            }
+        } catch (Exception e) {
+            reportFailure(rule, fact, e);
+        }
+    }
+
+    /**
+     * 调用规则的executeThenAsync，同步完成时返回null，否则返回动作的结果，执行耗时在动作完成时记录
+     */
+    private CompletableFuture<Boolean> invokeThen(Rule rule, Fact fact) {
+        long start = metrics.isEnabled() ? System.nanoTime() : 0;
+        CompletionStage<Boolean> stage = rule.executeThenAsync(fact);
+        if (stage == Rule.COMPLETED_ACTION) {
+            if (start != 0) {
+                metrics.recordExecuteThenLatency(rule, System.nanoTime() - start);
+            }
+            return null;
+        }
+        CompletableFuture<Boolean> future = stage.toCompletableFuture();
+        if (start != 0) {
+            future.whenComplete((result, e) -> metrics.recordExecuteThenLatency(rule, System.nanoTime() - start));
+        }
+        if (!future.isDone()) {
+            //异步动作完成前fact不能被回收
+            RecyclableFact.retain(fact, 1);
+            future.whenComplete((result, e) -> RecyclableFact.release(fact));
+        }
+        return future;
+    }
+
+    /**
+     * 检查异步动作的结果，返回false表示动作失败
+     */
+    private boolean checkAction(Rule rule, Fact fact, Boolean result, Throwable e) {
+        if (e != null) {
+            reportFailure(rule, fact, e instanceof CompletionException && e.getCause() != null ? e.getCause() : e);
+            return false;
+        }
+        if (!Boolean.TRUE.equals(result)) {
+            reportFailure(rule, fact, new IllegalStateException("rule action completed with failure"));
+            return false;
+        }
+        return true;
+    }
+
+    private void reportFailure(Rule rule, Fact fact, Throwable e) {
+        log.error("execute rule action failed: " + rule.getName(), e);
+        metrics.onRuleFailed(rule, e);
+        trace(rule, fact, TraceEvent.FAIL, e.toString());
+    }
+
+    private void executeWithPriorityRules(RuleSet ruleSet, Fact fact, long fireId, RulesEngineConfig config, boolean ordered) {
+        PriorityChain chain = new PriorityChain(fact, fireId, config, ordered);
+        //遇到第一个不满足的规则就停止时，条件不满足的规则也会影响执行结果，不能通过索引排除
+        if (config.isSkipOnFirstNonAppliedRule()) {
+            ruleSet.forEach(fact.getId(), chain);
+        } else {
+            ruleSet.forEach(fact, chain);
+        }
+        chain.suspendIfPending();
+    }
+
+    /**
+     * 暂停中的优先级匹配已经完成，按到达顺序处理暂存的事件；其中的事件再次暂停匹配时，剩余的事件继续暂存
+     */
+    private void releaseHeld(String factId) {
+        ArrayDeque<RuleTaskEvent> queue = held.remove(factId);
+        while (queue != null && !queue.isEmpty()) {
+            try {
+                handle(queue.poll(), true);
+            } catch (RuntimeException e) {
+                log.error("handle held rule event failed, factId: " + factId, e);
+            }
+            ArrayDeque<RuleTaskEvent> resuspended = held.get(factId);
+            if (resuspended != null) {
+                resuspended.addAll(queue);
+                return;
+            }
+        }
+    }
+
+    /**
+     * 按优先级顺序匹配单个fact的所有规则。规则的动作异步执行时，在动作完成前暂停匹配并记录剩余的规则，
+     * 动作完成后作为任务重新发布到事件队列，由规则执行线程继续匹配，从而在不占用执行线程的情况下保证动作按优先级顺序执行，
+     * 并根据动作的结果处理skipOnFirstFailedRule。作为任务执行时即为继续匹配
+     */
+    private final class PriorityChain implements RuleConsumer, Runnable {
+
+        private final Fact fact;
+
+        private final long fireId;
+
+        private final RulesEngineConfig config;
+
+        private final boolean ordered;
+
+        private CompletableFuture<Boolean> pending;
+
+        private Rule pendingRule;
+
+        private List<Rule> remaining;
+
+        PriorityChain(Fact fact, long fireId, RulesEngineConfig config, boolean ordered) {
+            this.fact = fact;
+            this.fireId = fireId;
+            this.config = config;
+            this.ordered = ordered;
+        }
+
+        @Override
+        public boolean accept(Rule rule) {
+            if (pending != null) {
+                remaining.add(rule);
+                return true;
+            }
+            if (!rule.isEnabled()) {
+                return true;
+            }
+            try {
+                if (!rule.preEvaluate(fact)) {
+                    trace(rule, fact, TraceEvent.DROP, null);
+                    metrics.onRuleDropped(rule);
+                    return true;
+                }
+                boolean applied = rule.evaluate(fact);
+                if (applied) {
+                    trace(rule, fact, TraceEvent.HIT, null);
+                    metrics.onRuleHit(rule);
+                    CompletableFuture<Boolean> future = executeThenInChain(rule);
+                    if (future != null) {
                         if (config.isSkipOnFirstAppliedRule()) {
-                            log.debug("next rules will be skipped since parameter skipOnFirstAppliedRule is set:{}", fact.getId());
-                            return false;
-                        }
-                    } else {
-                        log.debug("miss rule:{},{}", rule.getName(), fact.getId());
-                        rule.executeElse(fact);
-                        if (config.isSkipOnFirstNonAppliedRule()) {
-                            log.debug("next rules will be skipped since parameter skipOnFirstNonAppliedRule is set:{}", fact.getId());
-                            return false;
+                            //后续规则已经确定被跳过，不需要等待动作完成
+                            future.whenComplete((result, e) -> checkAction(rule, fact, result, e));
+                        } else if (!future.isDone()) {
+                            pending = future;
+                            pendingRule = rule;
+                            remaining = new ArrayList<>();
+                            return true;
+                        } else if (!future.handle((result, e) -> checkAction(rule, fact, result, e)).join()) {
+                            return !skipOnFailed(rule);
                         }
                     }
-                } catch (Exception e) {
-                    log.error("evaluate rule failed: " + rule.getName(), e);
-                    if (config.isSkipOnFirstFailedRule()) {
-                        log.debug("next rules will be skipped since parameter skipOnFirstFailedRule is set:{}", fact.getId());
+                    if (config.isSkipOnFirstAppliedRule()) {
+                        trace(rule, fact, TraceEvent.SKIP, "skipOnFirstAppliedRule");
+                        return false;
+                    }
+                } else {
+                    trace(rule, fact, TraceEvent.MISS, null);
+                    metrics.onRuleMissed(rule);
+                    executeElse(rule, fact);
+                    if (config.isSkipOnFirstNonAppliedRule()) {
+                        trace(rule, fact, TraceEvent.SKIP, "skipOnFirstNonAppliedRule");
                         return false;
                     }
                 }
+            } catch (Exception e) {
+                log.error("evaluate rule failed: " + rule.getName(), e);
+                metrics.onRuleFailed(rule, e);
+                trace(rule, fact, TraceEvent.FAIL, e.toString());
+                return !skipOnFailed(rule);
             }
             return true;
-        });
+        }
+
+        private boolean skipOnFailed(Rule rule) {
+            if (config.isSkipOnFirstFailedRule()) {
+                trace(rule, fact, TraceEvent.SKIP, "skipOnFirstFailedRule");
+                return true;
+            }
+            return false;
+        }
+
+        /**
+         * 执行规则的动作，同步完成时返回null；开启异步动作时交给ActionExecutor，其结果同样参与链式匹配
+         */
+        private CompletableFuture<Boolean> executeThenInChain(Rule rule) {
+            if (actionExecutor != null) {
+                CompletableFuture<Boolean> result = new CompletableFuture<>();
+                boolean submitted = submitAction(rule, fact, () -> {
+                    try {
+                        CompletableFuture<Boolean> future = invokeThen(rule, fact);
+                        if (future == null) {
+                            result.complete(Boolean.TRUE);
+                        } else {
+                            future.whenComplete((r, e) -> {
+                                if (e != null) {
+                                    result.completeExceptionally(e);
+                                } else {
+                                    result.complete(r);
+                                }
+                            });
+                        }
+                    } catch (Throwable e) {
+                        result.completeExceptionally(e);
+                    }
+                });
+                if (submitted) {
+                    return result;
+                }
+            }
+            return invokeThen(rule, fact);
+        }
+
+        /**
+         * 有未完成的动作时，在动作完成后将剩余规则的匹配作为任务重新发布到当前执行线程所属的事件队列，
+         * 总是由规则执行线程（分区模式下为fact所属分区的线程）继续匹配，队列已满时由执行器的发布线程阻塞等待后发布。
+         * 只有处理器没有运行在RuleTaskExecutor中时（例如单独使用处理器），才会在完成动作的线程中继续匹配
+         */
+        void suspendIfPending() {
+            if (pending == null) {
+                return;
+            }
+            RuleTaskExecutor executor = RuleTaskExecutor.current();
+            //暂停期间持有fact的引用，继续匹配完成后释放
+            RecyclableFact.retain(fact, 1);
+            if (executor == null) {
+                pending.whenComplete((result, e) -> run());
+                return;
+            }
+            if (ordered) {
+                held.putIfAbsent(fact.getId(), new ArrayDeque<>());
+            }
+            pending.whenComplete((result, e) -> executor.submitTask(fact, this, this::discard));
+        }
+
+        /**
+         * 继续暂停的匹配，匹配完成后处理暂存的同一个factId的事件
+         */
+        @Override
+        public void run() {
+            try {
+                resumeMatching();
+            } finally {
+                RecyclableFact.release(fact);
+                if (ordered && pending == null) {
+                    releaseHeld(fact.getId());
+                }
+            }
+        }
+
+        /**
+         * 执行器已关闭，剩余的规则不再匹配
+         */
+        private void discard() {
+            log.warn("rule task executor is shutdown, remaining rules are not evaluated for fact: {}", fact.getId());
+            RecyclableFact.release(fact);
+        }
+
+        private void resumeMatching() {
+            Rule rule = pendingRule;
+            List<Rule> rest = remaining;
+            boolean succeeded = pending.handle((result, e) -> checkAction(rule, fact, result, e)).join();
+            pending = null;
+            pendingRule = null;
+            remaining = null;
+            if (!succeeded && skipOnFailed(rule)) {
+                return;
+            }
+            ConditionMemo memo = ConditionMemo.current();
+            if (memo != null) {
+                memo.enter(fireId);
+            }
+            try {
+                for (Rule next : rest) {
+                    if (!accept(next)) {
+                        break;
+                    }
+                }
+            } finally {
+                if (memo != null) {
+                    memo.exit();
+                }
+            }
+            suspendIfPending();
+        }
+
     }
 
 }
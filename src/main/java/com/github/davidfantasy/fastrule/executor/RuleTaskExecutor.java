@@ -1,25 +1,85 @@
 package com.github.davidfantasy.fastrule.executor;
 
 import com.github.davidfantasy.fastrule.Rule;
-import com.github.davidfantasy.fastrule.RuleManager;
+import com.github.davidfantasy.fastrule.RuleSet;
 import com.github.davidfantasy.fastrule.RulesEngineConfig;
 import com.github.davidfantasy.fastrule.fact.Fact;
+import com.github.davidfantasy.fastrule.fact.RecyclableFact;
+import com.github.davidfantasy.fastrule.metrics.RuleEngineMetrics;
+import com.github.davidfantasy.fastrule.timer.HashedWheelTimer;
+import com.github.davidfantasy.fastrule.timer.Timeout;
+import com.github.davidfantasy.fastrule.timer.TimerTask;
+import com.github.davidfantasy.fastrule.trace.RuleTracer;
+import com.lmax.disruptor.InsufficientCapacityException;
 import com.lmax.disruptor.RingBuffer;
 import com.lmax.disruptor.WorkHandler;
 import com.lmax.disruptor.dsl.Disruptor;
 import lombok.extern.slf4j.Slf4j;
 
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
 @Slf4j
 public class RuleTaskExecutor {
 
+    public static final int DEFAULT_RULE_EVALUATION_CHUNK_SIZE = 256;
+
     private final Disruptor<RuleTaskEvent> disruptor;
 
     private RingBuffer<RuleTaskEvent> ringBuffer;
 
+    private final RuleEngineMetrics metrics;
+
+    private final long delayTimerTickMs;
+
+    private final int delayTimerWheelSize;
+
+    /**
+     * 延迟任务的时间轮，第一次调度延迟任务时才创建
+     */
+    private volatile HashedWheelTimer delayTimer;
+
+    /**
+     * 事件队列已满时代为阻塞发布任务的线程，第一次需要时才创建
+     */
+    private volatile ExecutorService taskPublisher;
+
+    private volatile boolean shutdown;
+
+    private final ActionExecutor actionExecutor;
+
+    private final RuleEvaluationPool evaluationPool;
+
     public RuleTaskExecutor(int bufferSize, int numberOfConsumers) {
+        this(RulesEngineConfig.builder().ringBufferSize(bufferSize).executorThreadPoolSize(numberOfConsumers).build());
+    }
+
+    /**
+     * 事件队列、执行线程、等待策略、分区、指标、跟踪、异步动作和延迟任务时间轮等参数都从config中读取
+     */
+    public RuleTaskExecutor(RulesEngineConfig config) {
+        int bufferSize = config.getRingBufferSize();
+        int numberOfConsumers = config.getExecutorThreadPoolSize();
+        if (Integer.bitCount(bufferSize) != 1) {
+            throw new IllegalArgumentException("bufferSize must be a power of 2");
+        }
+        if (numberOfConsumers <= 0) {
+            throw new IllegalArgumentException("numberOfConsumers must be greater than 0");
+        }
+        RuleEngineMetrics metrics = config.getMetrics();
+        RuleTracer tracer = config.getTracer();
+        this.metrics = metrics;
+        this.actionExecutor = config.isAsyncActions()
+                ? new ActionExecutor(config.getActionConcurrencyPerRule(), config.getActionQueueCapacityPerRule(),
+                config.getActionPlatformThreads()) : null;
+        this.evaluationPool = new RuleEvaluationPool(numberOfConsumers, config.getRuleEvaluationChunkSize(), this);
+        this.delayTimerTickMs = config.getDelayTimerTickMs();
+        this.delayTimerWheelSize = config.getDelayTimerWheelSize();
         RuleTaskEventFactory eventFactory = new RuleTaskEventFactory();
 
         ThreadFactory threadFactory = new ThreadFactory() {
@@ -27,8 +87,7 @@ public class RuleTaskExecutor {
 
             @Override
             public Thread newThread(Runnable r) {
-                Thread t = new Thread(r);
-                t.setName("fast-rule-executor-" + index.getAndIncrement());
+                Thread t = new RuleTaskThread(r, "fast-rule-executor-" + index.getAndIncrement(), RuleTaskExecutor.this);
                 t.setDaemon(true);
                 return t;
             }
@@ -36,26 +95,68 @@ public class RuleTaskExecutor {
         disruptor = new Disruptor<>(
                 eventFactory,
                 bufferSize,
-                threadFactory);
+                threadFactory,
+                config.getProducerType(),
+                config.getWaitStrategy().create());
 
-        WorkHandler<RuleTaskEvent>[] workers = new WorkHandler[numberOfConsumers];
-        for (int i = 0; i < numberOfConsumers; i++) {
-            workers[i] = new RuleTaskEventHandler();
-        }
         //disruptor最终会初始化numberOfConsumers个线程，线程工厂是在构造器中传入的threadFactory
-        disruptor.handleEventsWithWorkerPool(workers);
+        if (config.isPartitionedByFactId()) {
+            RuleTaskEventHandler[] handlers = new RuleTaskEventHandler[numberOfConsumers];
+            for (int i = 0; i < numberOfConsumers; i++) {
+                handlers[i] = new RuleTaskEventHandler(i, numberOfConsumers, metrics, tracer, actionExecutor, evaluationPool);
+            }
+            //分区模式下所有处理器都会读取同一个事件，由最后的清理处理器统一清除事件中的引用
+            disruptor.handleEventsWith(handlers).then((event, sequence, endOfBatch) -> event.clear());
+        } else {
+            WorkHandler<RuleTaskEvent>[] workers = new WorkHandler[numberOfConsumers];
+            for (int i = 0; i < numberOfConsumers; i++) {
+                workers[i] = new RuleTaskEventHandler(0, 1, metrics, tracer, actionExecutor, evaluationPool);
+            }
+            disruptor.handleEventsWithWorkerPool(workers);
+        }
         disruptor.setDefaultExceptionHandler(new RuleTaskExceptionHandler());
 
     }
 
     public void shutdown() {
+        HashedWheelTimer timer;
+        ExecutorService publisher;
+        synchronized (this) {
+            shutdown = true;
+            timer = delayTimer;
+            publisher = taskPublisher;
+        }
+        if (timer != null) {
+            timer.stop();
+        }
+        if (publisher != null) {
+            publisher.shutdown();
+        }
         disruptor.shutdown();
+        evaluationPool.shutdown();
+        if (actionExecutor != null) {
+            actionExecutor.shutdown(10, TimeUnit.SECONDS);
+        }
     }
 
     public void start() {
         ringBuffer = disruptor.start();
     }
 
+    /**
+     * 当前线程所属的RuleTaskExecutor，当前线程不是规则执行线程或规则匹配线程时返回null
+     */
+    static RuleTaskExecutor current() {
+        Thread thread = Thread.currentThread();
+        if (thread instanceof RuleTaskThread ruleTaskThread) {
+            return ruleTaskThread.executor();
+        }
+        if (thread instanceof RuleEvaluationPool.EvaluationThread evaluationThread) {
+            return evaluationThread.executor();
+        }
+        return null;
+    }
+
     public void submit(Fact fact, Rule rule, RulesEngineConfig rulesEngineConfig) {
         if (ringBuffer == null) {
             throw new IllegalStateException("RuleTaskExecutor is not started");
@@ -63,27 +164,392 @@ public class RuleTaskExecutor {
         long sequence = ringBuffer.next();
         try {
             RuleTaskEvent event = ringBuffer.get(sequence);
+            event.setFireId(sequence + 1);
             event.setRule(rule);
+            RecyclableFact.retain(fact, 1);
             event.setFact(fact);
+            event.setFacts(null);
             event.setRulesEngineConfig(rulesEngineConfig);
+            event.setRuleSet(null);
+            event.setUnordered(false);
+            event.setTask(null);
+            event.setPublishNanos(publishNanos());
         } finally {
             ringBuffer.publish(sequence);
         }
     }
 
-    public void submit(Fact fact, RuleManager ruleManager, RulesEngineConfig rulesEngineConfig) {
+    public void submit(Fact fact, RuleSet ruleSet, RulesEngineConfig rulesEngineConfig) {
         if (ringBuffer == null) {
             throw new IllegalStateException("RuleTaskExecutor is not started");
         }
         long sequence = ringBuffer.next();
         try {
             RuleTaskEvent event = ringBuffer.get(sequence);
+            event.setFireId(sequence + 1);
+            event.setRule(null);
+            RecyclableFact.retain(fact, 1);
             event.setFact(fact);
+            event.setFacts(null);
             event.setRulesEngineConfig(rulesEngineConfig);
-            event.setRuleManager(ruleManager);
+            event.setRuleSet(ruleSet);
+            event.setUnordered(false);
+            event.setTask(null);
+            event.setPublishNanos(publishNanos());
         } finally {
             ringBuffer.publish(sequence);
         }
     }
 
+    /**
+     * 批量提交规则任务，每批只申请一次序号区间并一次性发布，降低多生产者竞争序号的开销；
+     * rules为null时表示按优先级匹配，此时每个fact对应一个事件，否则facts和rules按下标一一对应
+     */
+    public void submitAll(List<Fact> facts, List<Rule> rules, RuleSet ruleSet, RulesEngineConfig rulesEngineConfig) {
+        publish(facts, rules, 0, facts.size(), ruleSet, rulesEngineConfig, false);
+    }
+
+    /**
+     * 发布[from, to)区间内的事件，队列已满时会阻塞等待；unordered为true时rules为null，每个fact对应一个无序匹配的事件
+     */
+    void publish(List<Fact> facts, List<Rule> rules, int from, int to, RuleSet ruleSet, RulesEngineConfig rulesEngineConfig,
+                 boolean unordered) {
+        checkStarted();
+        int offset = from;
+        while (offset < to) {
+            //单次申请的序号数量不能超过队列的容量
+            int n = Math.min(to - offset, ringBuffer.getBufferSize());
+            long hi = ringBuffer.next(n);
+            fill(hi - (n - 1), hi, facts, rules, offset, ruleSet, rulesEngineConfig, unordered);
+            offset += n;
+        }
+    }
+
+    /**
+     * 尝试一次性发布[from, to)区间内的事件，队列剩余空间不足时不会阻塞，而是直接返回false，此时不会发布任何事件
+     */
+    boolean tryPublish(List<Fact> facts, List<Rule> rules, int from, int to, RuleSet ruleSet, RulesEngineConfig rulesEngineConfig,
+                       boolean unordered) {
+        checkStarted();
+        int n = to - from;
+        if (n == 0) {
+            return true;
+        }
+        if (n > ringBuffer.getBufferSize()) {
+            return false;
+        }
+        long hi;
+        try {
+            hi = ringBuffer.tryNext(n);
+        } catch (InsufficientCapacityException e) {
+            return false;
+        }
+        fill(hi - (n - 1), hi, facts, rules, from, ruleSet, rulesEngineConfig, unordered);
+        return true;
+    }
+
+    /**
+     * 发布单个fact的事件，队列已满时会阻塞等待：rules为null时只发布一个事件，由执行线程匹配ruleSet中的候选规则，
+     * 否则rules的前n个规则各发布一个事件
+     */
+    void publish(Fact fact, Rule[] rules, int n, RuleSet ruleSet, RulesEngineConfig rulesEngineConfig, boolean unordered) {
+        checkStarted();
+        int total = rules == null ? 1 : n;
+        int offset = 0;
+        while (offset < total) {
+            int count = Math.min(total - offset, ringBuffer.getBufferSize());
+            long hi = ringBuffer.next(count);
+            fill(hi - (count - 1), hi, fact, rules, offset, ruleSet, rulesEngineConfig, unordered);
+            offset += count;
+        }
+    }
+
+    /**
+     * 尝试一次性发布单个fact的事件，参数同publish，队列剩余空间不足时不会发布任何事件并返回false
+     */
+    boolean tryPublish(Fact fact, Rule[] rules, int n, RuleSet ruleSet, RulesEngineConfig rulesEngineConfig, boolean unordered) {
+        checkStarted();
+        int total = rules == null ? 1 : n;
+        if (total == 0) {
+            return true;
+        }
+        if (total > ringBuffer.getBufferSize()) {
+            return false;
+        }
+        long hi;
+        try {
+            hi = ringBuffer.tryNext(total);
+        } catch (InsufficientCapacityException e) {
+            return false;
+        }
+        fill(hi - (total - 1), hi, fact, rules, 0, ruleSet, rulesEngineConfig, unordered);
+        return true;
+    }
+
+    /**
+     * 发布批量匹配事件，rules和batches按下标一一对应，每个事件由一个执行线程对该规则批量匹配整组fact；队列已满时会阻塞等待
+     */
+    void publishBatches(List<Rule> rules, List<List<Fact>> batches) {
+        checkStarted();
+        int offset = 0;
+        while (offset < rules.size()) {
+            int n = Math.min(rules.size() - offset, ringBuffer.getBufferSize());
+            long hi = ringBuffer.next(n);
+            fillBatches(hi - (n - 1), hi, rules, batches, offset);
+            offset += n;
+        }
+    }
+
+    /**
+     * 尝试一次性发布全部的批量匹配事件，队列剩余空间不足时不会阻塞，而是直接返回false，此时不会发布任何事件
+     */
+    boolean tryPublishBatches(List<Rule> rules, List<List<Fact>> batches) {
+        checkStarted();
+        int n = rules.size();
+        if (n == 0) {
+            return true;
+        }
+        if (n > ringBuffer.getBufferSize()) {
+            return false;
+        }
+        long hi;
+        try {
+            hi = ringBuffer.tryNext(n);
+        } catch (InsufficientCapacityException e) {
+            return false;
+        }
+        fillBatches(hi - (n - 1), hi, rules, batches, 0);
+        return true;
+    }
+
+    /**
+     * 调度一个延迟任务，到期后作为事件发布到事件队列，由规则执行线程执行；
+     * 按factId分区执行时任务会在fact所在分区的线程上执行，与该fact的规则事件保持串行
+     */
+    public Timeout schedule(Fact fact, TimerTask task, long delayMs) {
+        return delayTimer().newTimeout(fact, task, delayMs, TimeUnit.MILLISECONDS);
+    }
+
+    private HashedWheelTimer delayTimer() {
+        HashedWheelTimer timer = this.delayTimer;
+        if (timer != null) {
+            return timer;
+        }
+        synchronized (this) {
+            if (shutdown) {
+                throw new IllegalStateException("RuleTaskExecutor is already shutdown");
+            }
+            if (delayTimer == null) {
+                delayTimer = new HashedWheelTimer("fast-rule-delay-timer", delayTimerTickMs, TimeUnit.MILLISECONDS,
+                        delayTimerWheelSize, this::publishTasks);
+            }
+            return delayTimer;
+        }
+    }
+
+    /**
+     * 由时间轮线程调用，将同一个刻度内到期的任务作为一批发布；队列已满时不会阻塞时间轮线程，
+     * 返回已经发布的任务数量，其余的任务由时间轮在下一个刻度重新分发
+     */
+    private int publishTasks(List<Timeout> timeouts) {
+        int offset = 0;
+        while (offset < timeouts.size()) {
+            int n = (int) Math.min(timeouts.size() - offset, ringBuffer.remainingCapacity());
+            if (n <= 0) {
+                return offset;
+            }
+            long hi;
+            try {
+                hi = ringBuffer.tryNext(n);
+            } catch (InsufficientCapacityException e) {
+                //其它生产者抢先占用了剩余的空间
+                return offset;
+            }
+            long lo = hi - (n - 1);
+            try {
+                long publishNanos = publishNanos();
+                for (long sequence = lo; sequence <= hi; sequence++, offset++) {
+                    Timeout timeout = timeouts.get(offset);
+                    RuleTaskEvent event = ringBuffer.get(sequence);
+                    event.setFireId(0);
+                    event.setFact(timeout.getFact());
+                    event.setFacts(null);
+                    event.setRule(null);
+                    event.setRulesEngineConfig(null);
+                    event.setRuleSet(null);
+                    event.setUnordered(false);
+                    event.setTask(timeout);
+                    event.setPublishNanos(publishNanos);
+                }
+            } finally {
+                ringBuffer.publish(lo, hi);
+            }
+        }
+        return offset;
+    }
+
+    /**
+     * 发布一个由规则执行线程执行的任务，按factId分区执行时由fact所属的分区执行。
+     * 调用方可能就是本执行器的执行线程，不能等待队列的空位，否则执行线程会等待自己消费事件而永久阻塞：
+     * 队列已满时任务交给单独的发布线程，由它阻塞等待队列的空位后再发布，任务总是在规则执行线程中执行；
+     * 执行器已关闭、任务无法再被执行时调用discard
+     */
+    void submitTask(Fact fact, Runnable task, Runnable discard) {
+        if (shutdown || ringBuffer == null) {
+            discard.run();
+            return;
+        }
+        long sequence;
+        try {
+            sequence = ringBuffer.tryNext();
+        } catch (InsufficientCapacityException e) {
+            try {
+                taskPublisher().execute(() -> {
+                    if (shutdown) {
+                        discard.run();
+                        return;
+                    }
+                    fillTask(ringBuffer.next(), fact, task);
+                });
+            } catch (RejectedExecutionException | IllegalStateException rejected) {
+                discard.run();
+            }
+            return;
+        }
+        fillTask(sequence, fact, task);
+    }
+
+    private void fillTask(long sequence, Fact fact, Runnable task) {
+        try {
+            RuleTaskEvent event = ringBuffer.get(sequence);
+            event.setFireId(0);
+            event.setFact(fact);
+            event.setFacts(null);
+            event.setRule(null);
+            event.setRulesEngineConfig(null);
+            event.setRuleSet(null);
+            event.setUnordered(false);
+            event.setTask(task);
+            event.setPublishNanos(publishNanos());
+        } finally {
+            ringBuffer.publish(sequence);
+        }
+    }
+
+    private ExecutorService taskPublisher() {
+        ExecutorService publisher = this.taskPublisher;
+        if (publisher != null) {
+            return publisher;
+        }
+        synchronized (this) {
+            if (shutdown) {
+                throw new IllegalStateException("RuleTaskExecutor is already shutdown");
+            }
+            if (taskPublisher == null) {
+                taskPublisher = Executors.newSingleThreadExecutor(r -> {
+                    Thread t = new Thread(r, "fast-rule-task-publisher");
+                    t.setDaemon(true);
+                    return t;
+                });
+            }
+            return taskPublisher;
+        }
+    }
+
+    /**
+     * 事件队列当前的剩余容量
+     */
+    public long remainingCapacity() {
+        return ringBuffer == null ? 0 : ringBuffer.remainingCapacity();
+    }
+
+    private void fill(long lo, long hi, List<Fact> facts, List<Rule> rules, int offset,
+                      RuleSet ruleSet, RulesEngineConfig rulesEngineConfig, boolean unordered) {
+        try {
+            Fact previous = null;
+            long fireId = 0;
+            long publishNanos = publishNanos();
+            for (long sequence = lo; sequence <= hi; sequence++, offset++) {
+                RuleTaskEvent event = ringBuffer.get(sequence);
+                Fact fact = facts.get(offset);
+                //同一个fact展开的连续事件共享同一个触发标识，用于在执行时复用相同条件的计算结果
+                if (fact != previous) {
+                    fireId = sequence + 1;
+                    previous = fact;
+                }
+                event.setFireId(fireId);
+                //每个规则事件持有一次fact的引用，由处理该事件的线程释放
+                RecyclableFact.retain(fact, 1);
+                event.setFact(fact);
+                event.setFacts(null);
+                event.setRule(rules == null ? null : rules.get(offset));
+                event.setRulesEngineConfig(rulesEngineConfig);
+                event.setRuleSet(ruleSet);
+                event.setUnordered(unordered);
+                event.setTask(null);
+                event.setPublishNanos(publishNanos);
+            }
+        } finally {
+            ringBuffer.publish(lo, hi);
+        }
+    }
+
+    private void fill(long lo, long hi, Fact fact, Rule[] rules, int offset,
+                      RuleSet ruleSet, RulesEngineConfig rulesEngineConfig, boolean unordered) {
+        try {
+            long fireId = lo + 1;
+            long publishNanos = publishNanos();
+            RecyclableFact.retain(fact, (int) (hi - lo + 1));
+            for (long sequence = lo; sequence <= hi; sequence++, offset++) {
+                RuleTaskEvent event = ringBuffer.get(sequence);
+                event.setFireId(fireId);
+                event.setFact(fact);
+                event.setFacts(null);
+                event.setRule(rules == null ? null : rules[offset]);
+                event.setRulesEngineConfig(rulesEngineConfig);
+                event.setRuleSet(ruleSet);
+                event.setUnordered(unordered);
+                event.setTask(null);
+                event.setPublishNanos(publishNanos);
+            }
+        } finally {
+            ringBuffer.publish(lo, hi);
+        }
+    }
+
+    private void fillBatches(long lo, long hi, List<Rule> rules, List<List<Fact>> batches, int offset) {
+        try {
+            long publishNanos = publishNanos();
+            for (long sequence = lo; sequence <= hi; sequence++, offset++) {
+                RuleTaskEvent event = ringBuffer.get(sequence);
+                List<Fact> batch = batches.get(offset);
+                //每个批量事件持有其中每个fact的一次引用
+                for (Fact fact : batch) {
+                    RecyclableFact.retain(fact, 1);
+                }
+                event.setFireId(sequence + 1);
+                event.setFact(batch.get(0));
+                event.setFacts(batch);
+                event.setRule(rules.get(offset));
+                event.setRulesEngineConfig(null);
+                event.setRuleSet(null);
+                event.setUnordered(false);
+                event.setTask(null);
+                event.setPublishNanos(publishNanos);
+            }
+        } finally {
+            ringBuffer.publish(lo, hi);
+        }
+    }
+
+    private long publishNanos() {
+        return metrics.isEnabled() ? System.nanoTime() : 0;
+    }
+
+    private void checkStarted() {
+        if (ringBuffer == null) {
+            throw new IllegalStateException("RuleTaskExecutor is not started");
+        }
+    }
+
 }
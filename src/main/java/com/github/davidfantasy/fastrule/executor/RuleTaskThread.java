@@ -0,0 +1,32 @@
+package com.github.davidfantasy.fastrule.executor;
+
+import com.github.davidfantasy.fastrule.condition.ConditionMemo;
+
+/**
+ * 规则执行线程，持有该线程专属的条件备忘录以及所属的RuleTaskExecutor
+ */
+class RuleTaskThread extends Thread implements ConditionMemo.Holder {
+
+    private final ConditionMemo conditionMemo = new ConditionMemo();
+
+    private final RuleTaskExecutor executor;
+
+    RuleTaskThread(Runnable target, String name) {
+        this(target, name, null);
+    }
+
+    RuleTaskThread(Runnable target, String name, RuleTaskExecutor executor) {
+        super(target, name);
+        this.executor = executor;
+    }
+
+    RuleTaskExecutor executor() {
+        return executor;
+    }
+
+    @Override
+    public ConditionMemo conditionMemo() {
+        return conditionMemo;
+    }
+
+}
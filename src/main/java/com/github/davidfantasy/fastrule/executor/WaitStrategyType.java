@@ -0,0 +1,60 @@
+package com.github.davidfantasy.fastrule.executor;
+
+import com.lmax.disruptor.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 规则执行线程在等待新事件时采用的策略，不同的策略在延迟和CPU占用之间有不同的取舍
+ */
+public enum WaitStrategyType {
+
+    /**
+     * 基于锁和条件变量等待，CPU占用最低，延迟最高，适合大多数场景
+     */
+    BLOCKING {
+        @Override
+        public WaitStrategy create() {
+            return new BlockingWaitStrategy();
+        }
+    },
+    /**
+     * 先自旋，再yield，最后短暂休眠，在延迟和CPU占用之间比较均衡
+     */
+    SLEEPING {
+        @Override
+        public WaitStrategy create() {
+            return new SleepingWaitStrategy();
+        }
+    },
+    /**
+     * 自旋后通过Thread.yield()让出CPU，延迟低，但空闲时也会占满CPU，执行线程数应小于CPU核数
+     */
+    YIELDING {
+        @Override
+        public WaitStrategy create() {
+            return new YieldingWaitStrategy();
+        }
+    },
+    /**
+     * 忙等待，延迟最低，但每个执行线程都会独占一个CPU核，仅适合执行线程绑定独立核心的部署环境
+     */
+    BUSY_SPIN {
+        @Override
+        public WaitStrategy create() {
+            return new BusySpinWaitStrategy();
+        }
+    },
+    /**
+     * 先自旋1微秒，再yield至1毫秒，之后退化为轻量级锁等待，适合负载有明显波峰波谷的场景
+     */
+    PHASED_BACKOFF {
+        @Override
+        public WaitStrategy create() {
+            return PhasedBackoffWaitStrategy.withLiteLock(1, 1000, TimeUnit.MICROSECONDS);
+        }
+    };
+
+    public abstract WaitStrategy create();
+
+}
@@ -0,0 +1,61 @@
+package com.github.davidfantasy.fastrule.fact;
+
+import lombok.Getter;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * SchemaFact的对象池，适合高频采集的场景：fact的所有规则事件处理完成后会自动归还到池中，
+ * 稳定运行时不再为每条采集数据分配fact及其字段数组。
+ * 池中最多缓存capacity个空闲的fact，超出的部分交给GC回收；池为空时创建新的fact
+ */
+public class FactPool {
+
+    @Getter
+    private final FactSchema schema;
+
+    private final ArrayBlockingQueue<SchemaFact> idle;
+
+    private final LongAdder created = new LongAdder();
+
+    public FactPool(FactSchema schema, int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be greater than 0");
+        }
+        this.schema = schema;
+        this.idle = new ArrayBlockingQueue<>(capacity);
+    }
+
+    /**
+     * 获取一个所有字段都未赋值的fact，调用方持有一次引用
+     */
+    public SchemaFact acquire(String id, Long ts) {
+        SchemaFact fact = idle.poll();
+        if (fact == null) {
+            created.increment();
+            return new SchemaFact(schema, id, ts, this);
+        }
+        fact.reuse(id, ts);
+        return fact;
+    }
+
+    /**
+     * 池中创建过的fact总数，稳定运行时应当不再增长
+     */
+    public long getCreatedCount() {
+        return created.sum();
+    }
+
+    /**
+     * 当前空闲的fact数量
+     */
+    public int getIdleCount() {
+        return idle.size();
+    }
+
+    void recycle(SchemaFact fact) {
+        idle.offer(fact);
+    }
+
+}
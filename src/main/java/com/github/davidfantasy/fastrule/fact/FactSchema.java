@@ -0,0 +1,133 @@
+package com.github.davidfantasy.fastrule.fact;
+
+import lombok.Getter;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * SchemaFact的字段定义，描述字段名到存储槽位和类型的映射，同一类fact共享同一个schema。
+ * 数值字段分别存放在long[]/double[]中，避免装箱；其它类型的字段存放在Object[]中。
+ * 每个字段的slot是其在对应类型数组中的下标，可以通过SchemaFact的getLong/getDouble/getObject直接访问；
+ * JaninoCondition在编译时绑定schema后，表达式的参数会直接按槽位读取，不再按字段名查找
+ */
+public final class FactSchema {
+
+    private static final AtomicInteger IDS = new AtomicInteger();
+
+    /**
+     * 全局唯一的编号，用于区分编译结果所绑定的schema
+     */
+    @Getter
+    private final int id;
+
+    private final Field[] fields;
+
+    private final Map<String, Field> fieldsByName;
+
+    @Getter
+    private final int longCount;
+
+    @Getter
+    private final int doubleCount;
+
+    @Getter
+    private final int objectCount;
+
+    private FactSchema(List<Field> fields) {
+        this.id = IDS.incrementAndGet();
+        this.fields = fields.toArray(new Field[0]);
+        Map<String, Field> byName = new HashMap<>(fields.size() * 2);
+        int longs = 0, doubles = 0, objects = 0;
+        for (Field field : fields) {
+            byName.put(field.name(), field);
+            switch (field.type()) {
+                case LONG -> longs++;
+                case DOUBLE -> doubles++;
+                default -> objects++;
+            }
+        }
+        this.fieldsByName = byName;
+        this.longCount = longs;
+        this.doubleCount = doubles;
+        this.objectCount = objects;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * 按名称查找字段，不存在时返回null
+     */
+    public Field field(String name) {
+        return fieldsByName.get(name);
+    }
+
+    /**
+     * 按字段的定义顺序获取字段
+     */
+    public Field field(int index) {
+        return fields[index];
+    }
+
+    public int size() {
+        return fields.length;
+    }
+
+    public List<Field> getFields() {
+        return Collections.unmodifiableList(Arrays.asList(fields));
+    }
+
+    /**
+     * 字段的存储类型
+     */
+    public enum FieldType {
+        LONG, DOUBLE, OBJECT
+    }
+
+    /**
+     * @param index 字段的定义顺序
+     * @param slot  字段在对应类型数组中的下标
+     */
+    public record Field(String name, FieldType type, int index, int slot) {
+    }
+
+    public static final class Builder {
+
+        private final List<Field> fields = new ArrayList<>();
+
+        private final int[] counts = new int[FieldType.values().length];
+
+        private Builder() {
+        }
+
+        public Builder longField(String name) {
+            return field(name, FieldType.LONG);
+        }
+
+        public Builder doubleField(String name) {
+            return field(name, FieldType.DOUBLE);
+        }
+
+        public Builder objectField(String name) {
+            return field(name, FieldType.OBJECT);
+        }
+
+        public Builder field(String name, FieldType type) {
+            Objects.requireNonNull(name, "name must not be null");
+            Objects.requireNonNull(type, "type must not be null");
+            if (fields.stream().anyMatch(f -> f.name().equals(name))) {
+                throw new IllegalArgumentException("duplicate field: " + name);
+            }
+            fields.add(new Field(name, type, fields.size(), counts[type.ordinal()]++));
+            return this;
+        }
+
+        public FactSchema build() {
+            return new FactSchema(fields);
+        }
+
+    }
+
+}
@@ -0,0 +1,33 @@
+package com.github.davidfantasy.fastrule.fact;
+
+/**
+ * 可回收的fact，通过引用计数判断fact是否还在被使用，计数归零时归还到所属的对象池。
+ * 从对象池获取的fact计数为1，由调用方持有；调用fire后该引用转交给引擎，调用方不能再访问该fact。
+ * 引擎在fact被发布为规则事件、进入等待区、被延迟任务或异步动作持有时增加计数，使用完成后减少计数；
+ * 规则如果需要在executeThen/executeElse返回后继续持有fact，需要自行调用retain，并在使用完成后调用release
+ */
+public interface RecyclableFact extends Fact {
+
+    /**
+     * 增加引用计数
+     */
+    void retain(int count);
+
+    /**
+     * 减少一次引用计数，归零时fact会被重置并归还到对象池
+     */
+    void release();
+
+    static void retain(Fact fact, int count) {
+        if (count > 0 && fact instanceof RecyclableFact recyclable) {
+            recyclable.retain(count);
+        }
+    }
+
+    static void release(Fact fact) {
+        if (fact instanceof RecyclableFact recyclable) {
+            recyclable.release();
+        }
+    }
+
+}
@@ -0,0 +1,221 @@
+package com.github.davidfantasy.fastrule.fact;
+
+import lombok.Getter;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+/**
+ * 按FactSchema存储值的fact，数值字段存放在基本类型数组中，适合字段固定、数量大的采集数据：
+ * 写入和按槽位读取都不会装箱，也不需要按字段名做哈希查找；按字段名访问时通过schema转换为槽位。
+ * 未赋值的字段通过getValue读取时返回null。
+ * 通过FactPool获取的fact在引用计数归零后会被重置并复用，不要在规则执行完成后继续持有
+ */
+public class SchemaFact implements RecyclableFact {
+
+    private static final AtomicIntegerFieldUpdater<SchemaFact> REF_COUNT =
+            AtomicIntegerFieldUpdater.newUpdater(SchemaFact.class, "refCount");
+
+    @Getter
+    private String id;
+
+    @Getter
+    private Long ts;
+
+    @Getter
+    private final FactSchema schema;
+
+    private final long[] longs;
+
+    private final double[] doubles;
+
+    private final Object[] objects;
+
+    /**
+     * 按字段定义顺序记录已赋值的字段
+     */
+    private final long[] assigned;
+
+    /**
+     * 所属的对象池，为空时不回收，retain和release不做任何处理
+     */
+    private final FactPool pool;
+
+    private volatile int refCount;
+
+    public SchemaFact(FactSchema schema, String id, Long ts) {
+        this(schema, id, ts, null);
+    }
+
+    SchemaFact(FactSchema schema, String id, Long ts, FactPool pool) {
+        Objects.requireNonNull(schema, "schema must not be null");
+        Objects.requireNonNull(id, "id must not be null");
+        this.schema = schema;
+        this.id = id;
+        this.ts = ts;
+        this.longs = new long[schema.getLongCount()];
+        this.doubles = new double[schema.getDoubleCount()];
+        this.objects = new Object[schema.getObjectCount()];
+        this.assigned = new long[(schema.size() + 63) >>> 6];
+        this.pool = pool;
+        this.refCount = 1;
+    }
+
+    @Override
+    public void retain(int count) {
+        if (pool != null) {
+            REF_COUNT.addAndGet(this, count);
+        }
+    }
+
+    @Override
+    public void release() {
+        if (pool == null) {
+            return;
+        }
+        int remaining = REF_COUNT.decrementAndGet(this);
+        if (remaining == 0) {
+            //归还前清除对象字段，避免池中的fact继续引用业务对象
+            Arrays.fill(assigned, 0);
+            Arrays.fill(objects, null);
+            pool.recycle(this);
+        } else if (remaining < 0) {
+            throw new IllegalStateException("fact is released more times than retained: " + id);
+        }
+    }
+
+    /**
+     * 从对象池中取出时重置fact，只由FactPool调用
+     */
+    void reuse(String id, Long ts) {
+        Objects.requireNonNull(id, "id must not be null");
+        this.id = id;
+        this.ts = ts;
+        this.refCount = 1;
+    }
+
+    public long getLong(int slot) {
+        return longs[slot];
+    }
+
+    public double getDouble(int slot) {
+        return doubles[slot];
+    }
+
+    public Object getObject(int slot) {
+        return objects[slot];
+    }
+
+    public SchemaFact setLong(FactSchema.Field field, long value) {
+        checkType(field, FactSchema.FieldType.LONG);
+        longs[field.slot()] = value;
+        markAssigned(field.index());
+        return this;
+    }
+
+    public SchemaFact setDouble(FactSchema.Field field, double value) {
+        checkType(field, FactSchema.FieldType.DOUBLE);
+        doubles[field.slot()] = value;
+        markAssigned(field.index());
+        return this;
+    }
+
+    public SchemaFact setObject(FactSchema.Field field, Object value) {
+        checkType(field, FactSchema.FieldType.OBJECT);
+        objects[field.slot()] = value;
+        markAssigned(field.index());
+        return this;
+    }
+
+    /**
+     * 按字段名赋值，数值字段的值必须是Number，值为null时将字段恢复为未赋值
+     */
+    public SchemaFact setValue(String name, Object value) {
+        FactSchema.Field field = schema.field(name);
+        if (field == null) {
+            throw new IllegalArgumentException("field " + name + " is not defined in schema");
+        }
+        if (value == null) {
+            if (field.type() == FactSchema.FieldType.OBJECT) {
+                objects[field.slot()] = null;
+            }
+            assigned[field.index() >>> 6] &= ~(1L << field.index());
+            return this;
+        }
+        switch (field.type()) {
+            case LONG -> setLong(field, toNumber(name, value).longValue());
+            case DOUBLE -> setDouble(field, toNumber(name, value).doubleValue());
+            default -> setObject(field, value);
+        }
+        return this;
+    }
+
+    /**
+     * 字段是否已赋值，index为字段的定义顺序
+     */
+    public boolean isAssigned(int index) {
+        return (assigned[index >>> 6] & (1L << index)) != 0;
+    }
+
+    @Override
+    public Object getValue(String name) {
+        FactSchema.Field field = schema.field(name);
+        return field == null ? null : getValue(field);
+    }
+
+    @Override
+    public Collection<Object> getValues() {
+        List<Object> values = new ArrayList<>(schema.size());
+        for (int i = 0; i < schema.size(); i++) {
+            if (isAssigned(i)) {
+                values.add(getValue(schema.field(i)));
+            }
+        }
+        return values;
+    }
+
+    private Object getValue(FactSchema.Field field) {
+        if (!isAssigned(field.index())) {
+            return null;
+        }
+        return switch (field.type()) {
+            case LONG -> longs[field.slot()];
+            case DOUBLE -> doubles[field.slot()];
+            default -> objects[field.slot()];
+        };
+    }
+
+    private void markAssigned(int index) {
+        assigned[index >>> 6] |= 1L << index;
+    }
+
+    private void checkType(FactSchema.Field field, FactSchema.FieldType type) {
+        if (field.type() != type || schema.field(field.index()) != field) {
+            throw new IllegalArgumentException("field " + field.name() + " is not a " + type + " field of this schema");
+        }
+    }
+
+    private static Number toNumber(String name, Object value) {
+        if (value instanceof Number number) {
+            return number;
+        }
+        throw new IllegalArgumentException("value of field " + name + " must be a number: " + value);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("SchemaFact(id=").append(id).append(", ts=").append(ts);
+        for (int i = 0; i < schema.size(); i++) {
+            if (isAssigned(i)) {
+                FactSchema.Field field = schema.field(i);
+                sb.append(", ").append(field.name()).append('=').append(getValue(field));
+            }
+        }
+        return sb.append(')').toString();
+    }
+
+}
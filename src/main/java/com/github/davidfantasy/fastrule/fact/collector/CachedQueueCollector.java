@@ -6,35 +6,67 @@ import lombok.extern.slf4j.Slf4j;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
- * 自带缓存队列的fact采集器，支持并发采集
+ * 自带缓存队列的fact采集器，支持并发采集。
+ * 缓存队列为有界的数组队列，多个线程并发写入时不需要加锁，队列已满时丢弃新的fact并计数。
+ * collect每次取出队列中的全部fact，为了避免每次分配新的列表，返回的列表会被复用，只在下一次collect之前有效
  */
 @Slf4j
 public class CachedQueueCollector implements FactCollector {
 
-    private final LinkedBlockingQueue<Fact> cacheQueue;
+    private final MpscFactQueue cacheQueue;
+
+    private final long maxWaitNanos;
+
+    private final List<Fact> drained = new ArrayList<>();
+
+    /**
+     * 保证只有一个线程在取出数据，shutdown清空队列时也需要持有
+     */
+    private final ReentrantLock drainLock = new ReentrantLock();
+
+    private final AtomicLong droppedCount = new AtomicLong();
+
+    private volatile Thread waitingConsumer;
 
     public CachedQueueCollector(int capacity) {
+        this(capacity, 0);
+    }
+
+    /**
+     * @param maxWaitMs 没有数据时collect的最长等待时间，超时后返回空列表；小于等于0时一直等待直到有数据产生
+     */
+    public CachedQueueCollector(int capacity, long maxWaitMs) {
         if (capacity <= 0) {
             throw new IllegalArgumentException("capacity must be greater than 0");
         }
-        cacheQueue = new LinkedBlockingQueue<>(capacity);
+        cacheQueue = new MpscFactQueue(capacity);
+        maxWaitNanos = maxWaitMs > 0 ? TimeUnit.MILLISECONDS.toNanos(maxWaitMs) : 0;
     }
 
     @Override
     public List<Fact> collect() {
-        var results = new ArrayList<Fact>();
-        try {
+        drained.clear();
+        long deadline = maxWaitNanos > 0 ? System.nanoTime() + maxWaitNanos : 0;
+        while (true) {
+            drainLock.lock();
+            try {
+                if (cacheQueue.drainTo(drained) > 0) {
+                    return drained;
+                }
+            } finally {
+                drainLock.unlock();
+            }
             //如果当前没有数据则阻塞collect，直到有数据产生,避免空轮询
-            results.add(cacheQueue.take());
-            //将剩下的数据放入结果集
-            cacheQueue.drainTo(results);
-        } catch (InterruptedException e) {
-            log.error("Thread was interrupted while waiting for facts", e);
+            if (!await(deadline)) {
+                return drained;
+            }
         }
-        return results;
     }
 
     @Override
@@ -44,12 +76,73 @@ public class CachedQueueCollector implements FactCollector {
 
     @Override
     public void shutdown() {
-        cacheQueue.clear();
+        drainLock.lock();
+        try {
+            cacheQueue.drainTo(new ArrayList<>(cacheQueue.size()));
+        } finally {
+            drainLock.unlock();
+        }
     }
 
-    protected void addFact(Fact fact) {
+    /**
+     * 因队列已满而丢弃的fact数量
+     */
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    /**
+     * 队列中等待取出的fact数量
+     */
+    public int getQueueSize() {
+        return cacheQueue.size();
+    }
+
+    /**
+     * 写入fact，队列已满时丢弃该fact并返回false
+     */
+    protected boolean addFact(Fact fact) {
         if (!cacheQueue.offer(fact)) {
-            log.warn("cache queue is full,fact will be dropped:{}", fact.getId());
+            long dropped = droppedCount.incrementAndGet();
+            //队列持续满载时避免每个fact都输出日志，丢弃数量每翻一倍输出一次
+            if ((dropped & (dropped - 1)) == 0) {
+                log.warn("cache queue is full,fact will be dropped:{}, total dropped:{}", fact.getId(), dropped);
+            }
+            return false;
+        }
+        Thread consumer = waitingConsumer;
+        if (consumer != null) {
+            LockSupport.unpark(consumer);
+        }
+        return true;
+    }
+
+    /**
+     * 挂起当前线程直到队列中有数据，超时或者被中断时返回false
+     */
+    private boolean await(long deadline) {
+        waitingConsumer = Thread.currentThread();
+        try {
+            while (cacheQueue.isEmpty()) {
+                if (Thread.interrupted()) {
+                    log.error("Thread was interrupted while waiting for facts");
+                    return false;
+                }
+                if (deadline == 0) {
+                    LockSupport.park(this);
+                } else {
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) {
+                        return false;
+                    }
+                    LockSupport.parkNanos(this, remaining);
+                }
+            }
+            //已申请位置但尚未写入完成时，短暂自旋等待生产者
+            Thread.onSpinWait();
+            return true;
+        } finally {
+            waitingConsumer = null;
         }
     }
 
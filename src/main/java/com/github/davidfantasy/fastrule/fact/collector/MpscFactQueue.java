@@ -0,0 +1,103 @@
+package com.github.davidfantasy.fastrule.fact.collector;
+
+import com.github.davidfantasy.fastrule.fact.Fact;
+import com.lmax.disruptor.Sequence;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * 基于数组的有界多生产者单消费者队列，生产者通过CAS申请位置后写入，消费者按顺序批量取出；
+ * 读写序号使用Disruptor的Sequence，其前后都有填充，避免生产者和消费者的序号处于同一个缓存行。
+ * 槽位不为空表示数据已写入，消费者取出后将槽位置空再推进消费序号，生产者不需要加锁，也不会为每个fact分配节点
+ */
+final class MpscFactQueue {
+
+    private final AtomicReferenceArray<Fact> slots;
+
+    private final int mask;
+
+    private final int capacity;
+
+    /**
+     * 下一个可申请的位置
+     */
+    private final Sequence producerIndex = new Sequence(0);
+
+    /**
+     * 生产者缓存的可写入上限，超过时才需要读取消费序号，减少对消费者缓存行的访问
+     */
+    private final Sequence producerLimit;
+
+    /**
+     * 下一个待取出的位置，只由消费者更新
+     */
+    private final Sequence consumerIndex = new Sequence(0);
+
+    MpscFactQueue(int capacity) {
+        if (capacity <= 0 || capacity > 1 << 30) {
+            throw new IllegalArgumentException("capacity must be between 1 and 2^30");
+        }
+        int length = Integer.highestOneBit(capacity);
+        if (length < capacity) {
+            length <<= 1;
+        }
+        this.slots = new AtomicReferenceArray<>(length);
+        this.mask = length - 1;
+        this.capacity = capacity;
+        this.producerLimit = new Sequence(capacity);
+    }
+
+    /**
+     * 写入fact，队列已满时返回false
+     */
+    boolean offer(Fact fact) {
+        long limit = producerLimit.get();
+        long index;
+        do {
+            index = producerIndex.get();
+            if (index >= limit) {
+                limit = consumerIndex.get() + capacity;
+                if (index >= limit) {
+                    return false;
+                }
+                producerLimit.set(limit);
+            }
+        } while (!producerIndex.compareAndSet(index, index + 1));
+        slots.lazySet((int) index & mask, fact);
+        return true;
+    }
+
+    /**
+     * 取出所有已写入的fact，只能由单个线程调用，返回取出的数量
+     */
+    int drainTo(List<Fact> target) {
+        long index = consumerIndex.get();
+        int count = 0;
+        while (true) {
+            int offset = (int) index & mask;
+            Fact fact = slots.get(offset);
+            //已申请但尚未写入的位置也视为没有数据，下次再取
+            if (fact == null) {
+                break;
+            }
+            slots.lazySet(offset, null);
+            target.add(fact);
+            index++;
+            count++;
+        }
+        if (count > 0) {
+            consumerIndex.set(index);
+        }
+        return count;
+    }
+
+    boolean isEmpty() {
+        return consumerIndex.get() >= producerIndex.get();
+    }
+
+    int size() {
+        return (int) Math.max(0, producerIndex.get() - consumerIndex.get());
+    }
+
+}
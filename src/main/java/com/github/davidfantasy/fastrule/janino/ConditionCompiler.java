@@ -0,0 +1,151 @@
+package com.github.davidfantasy.fastrule.janino;
+
+import com.github.davidfantasy.fastrule.condition.AndCondition;
+import com.github.davidfantasy.fastrule.condition.Condition;
+import com.github.davidfantasy.fastrule.condition.OrCondition;
+import com.github.davidfantasy.fastrule.fact.FactSchema;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 条件编译器，将由AndCondition/OrCondition和JaninoCondition组成的条件树编译为单个Janino生成的类，
+ * 条件之间的短路逻辑和每个JaninoCondition的表达式都会被内联到生成的代码中，整棵树的匹配只需要一次单态调用；
+ * 用户自定义的Condition无法内联，会保留为对原对象的调用。
+ * 注意：编译结果是条件树在编译时刻的快照，之后再通过addCondition修改条件树不会影响编译结果
+ */
+public final class ConditionCompiler {
+
+    private static final String CONDITION_TYPE = "com.github.davidfantasy.fastrule.condition.Condition";
+
+    private static final String EXTERNAL_FIELD = "__external";
+
+    private static final String SCHEMAS_FIELD = "__schemas";
+
+    private static final String MEMO_TYPE = "com.github.davidfantasy.fastrule.condition.ConditionMemo";
+
+    private ConditionCompiler() {
+    }
+
+    /**
+     * 编译条件树，条件中不包含可内联的节点时直接返回原条件
+     */
+    public static Condition compile(Condition condition) {
+        if (!(condition instanceof AndCondition || condition instanceof OrCondition || condition instanceof JaninoCondition)) {
+            return condition;
+        }
+        Generator generator = new Generator();
+        String body = generator.generate(condition);
+        try {
+            Condition compiled = JaninoSources.newInstance(body, Condition.class);
+            compiled.getClass().getField(EXTERNAL_FIELD).set(compiled, generator.externals.toArray(new Condition[0]));
+            compiled.getClass().getField(SCHEMAS_FIELD).set(compiled, generator.schemas.toArray(new FactSchema[0]));
+            return compiled;
+        } catch (Exception e) {
+            throw new RuntimeException("condition compile failed：" + body, e);
+        }
+    }
+
+    private static class Generator {
+
+        private final List<Condition> externals = new ArrayList<>();
+
+        private final List<FactSchema> schemas = new ArrayList<>();
+
+        private final StringBuilder methods = new StringBuilder();
+
+        private int leafCount;
+
+        String generate(Condition condition) {
+            String expression = visit(condition);
+            StringBuilder sb = new StringBuilder();
+            sb.append("public ").append(CONDITION_TYPE).append("[] ").append(EXTERNAL_FIELD).append(";\n\n");
+            sb.append("public ").append(JaninoSources.SCHEMA_TYPE).append("[] ").append(SCHEMAS_FIELD).append(";\n\n");
+            sb.append("public boolean evaluate(").append(JaninoSources.FACT_TYPE).append(' ').append(JaninoSources.FACT_VAR).append(") {\n");
+            sb.append("    return ").append(expression).append(";\n");
+            sb.append("}\n\n");
+            //批量匹配时逐个调用生成的evaluate，循环内是单态的直接调用，可以被JIT内联
+            sb.append("public void evaluateBatch(java.util.List __facts, java.util.BitSet __out) {\n");
+            sb.append("    for (int __i = 0; __i < __facts.size(); __i++) {\n");
+            sb.append("        if (evaluate((").append(JaninoSources.FACT_TYPE).append(") __facts.get(__i))) {\n");
+            sb.append("            __out.set(__i);\n");
+            sb.append("        }\n");
+            sb.append("    }\n");
+            sb.append("}\n\n");
+            sb.append(methods);
+            return sb.toString();
+        }
+
+        private String visit(Condition condition) {
+            //只内联框架自带的组合条件，子类可能重写了evaluate的逻辑
+            if (condition.getClass() == AndCondition.class) {
+                return join(((AndCondition) condition).getConditions(), " && ", "true");
+            }
+            if (condition.getClass() == OrCondition.class) {
+                return join(((OrCondition) condition).getConditions(), " || ", "false");
+            }
+            if (condition.getClass() == JaninoCondition.class) {
+                return leaf((JaninoCondition) condition);
+            }
+            externals.add(condition);
+            return EXTERNAL_FIELD + "[" + (externals.size() - 1) + "].evaluate(" + JaninoSources.FACT_VAR + ")";
+        }
+
+        private String join(List<Condition> conditions, String operator, String identity) {
+            if (conditions == null || conditions.isEmpty()) {
+                return identity;
+            }
+            StringBuilder sb = new StringBuilder("(");
+            for (int i = 0; i < conditions.size(); i++) {
+                if (i > 0) {
+                    sb.append(operator);
+                }
+                sb.append(visit(conditions.get(i)));
+            }
+            return sb.append(')').toString();
+        }
+
+        /**
+         * 每个JaninoCondition生成一个私有方法，参数仅在该分支被执行时才会从fact中读取，
+         * 并且和JaninoCondition一样通过备忘录复用同一次触发中相同条件的结果
+         */
+        private String leaf(JaninoCondition condition) {
+            String method = "leaf" + leafCount++;
+            int slot = condition.getMemoSlot();
+            methods.append("private boolean ").append(method).append('(')
+                    .append(JaninoSources.FACT_TYPE).append(' ').append(JaninoSources.FACT_VAR).append(") {\n");
+            methods.append("    ").append(MEMO_TYPE).append(" __memo = ").append(MEMO_TYPE).append(".current();\n");
+            methods.append("    int __memoized = __memo == null ? -1 : __memo.get(").append(slot).append(");\n");
+            methods.append("    if (__memoized >= 0) {\n");
+            methods.append("        return __memoized == 1;\n");
+            methods.append("    }\n");
+            FactSchema schema = condition.getSchema();
+            String schemaRef = null;
+            if (schema != null) {
+                int index = schemas.indexOf(schema);
+                if (index < 0) {
+                    schemas.add(schema);
+                    index = schemas.size() - 1;
+                }
+                schemaRef = SCHEMAS_FIELD + "[" + index + "]";
+            }
+            //和JaninoCondition一样，读取参数或计算表达式失败时抛出包含表达式的异常
+            methods.append("    boolean __result;\n");
+            methods.append("    try {\n");
+            JaninoSources.appendParameterBindings(methods, condition.getParamNames(), condition.getParameterTypes(), schema, schemaRef);
+            methods.append("    __result = (").append(condition.getExpression()).append(");\n");
+            methods.append("    } catch (java.lang.Exception __e) {\n");
+            methods.append("        throw new java.lang.RuntimeException(")
+                    .append(JaninoSources.stringLiteral("evaluate rule error：" + condition.getExpression())).append(", __e);\n");
+            methods.append("    }\n");
+            methods.append("    if (__memo != null) {\n");
+            methods.append("        __memo.put(").append(slot).append(", __result);\n");
+            methods.append("    }\n");
+            methods.append("    return __result;\n");
+            methods.append("}\n\n");
+            return method + "(" + JaninoSources.FACT_VAR + ")";
+        }
+
+    }
+
+}
@@ -1,41 +1,94 @@
 package com.github.davidfantasy.fastrule.janino;
 
 import com.github.davidfantasy.fastrule.condition.Condition;
+import com.github.davidfantasy.fastrule.condition.ConditionMemo;
 import com.github.davidfantasy.fastrule.fact.Fact;
+import com.github.davidfantasy.fastrule.fact.FactSchema;
 import lombok.Getter;
-import org.codehaus.janino.ExpressionEvaluator;
 
-import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
 
+/**
+ * 基于Janino表达式的条件，表达式会被编译为一个直接从fact中读取参数的类，
+ * 匹配时不需要构建参数数组，也不会经过反射调用，基本类型的参数会自动拆箱。
+ * 规范化后的表达式和参数签名都相同的条件只会编译一次，并且在同一个fact的一次触发中只会计算一次，
+ * 大量规则共享相同的条件时可以显著减少计算量；复用结果的前提是同一次触发中fact的值不会被修改（例如在preEvaluate中补充数据）。
+ * 指定FactSchema时，参数在编译时绑定到schema的槽位，匹配该schema的SchemaFact时直接读取基本类型的值，不装箱也不按名称查找
+ */
 public class JaninoCondition implements Condition {
 
     @Getter
     private final String expression;
 
-    private final ExpressionEvaluator ee;
-
+    @Getter
     private final String[] paramNames;
 
+    @Getter
+    private final Class<?>[] parameterTypes;
+
+    /**
+     * 参数绑定的schema，为空时按字段名读取参数
+     */
+    @Getter
+    private final FactSchema schema;
+
+    /**
+     * 持有共享的编译结果，缓存中的弱引用在还有条件使用它时不会被回收
+     */
+    private final SharedConditions.Shared shared;
+
+    private final Condition evaluator;
+
+    /**
+     * 该条件在备忘录中的槽位，相同的条件共享同一个槽位
+     */
+    @Getter
+    private final int memoSlot;
+
     public JaninoCondition(String expression, String[] paramNames, Class<?>[] parameterTypes) {
+        this(expression, paramNames, parameterTypes, null);
+    }
+
+    public JaninoCondition(String expression, String[] paramNames, Class<?>[] parameterTypes, FactSchema schema) {
+        if (paramNames.length != parameterTypes.length) {
+            throw new IllegalArgumentException("paramNames and parameterTypes must have the same length");
+        }
         this.expression = expression;
-        this.ee = new ExpressionEvaluator();
         this.paramNames = paramNames;
-        //执行参数类型
-        ee.setParameters(paramNames, parameterTypes);
-        //设置返回类型
-        ee.setExpressionType(Boolean.class);
+        this.parameterTypes = parameterTypes;
+        this.schema = schema;
+        this.shared = SharedConditions.obtain(expression, paramNames, parameterTypes, schema);
+        this.evaluator = shared.evaluator();
+        this.memoSlot = shared.slot();
+    }
+
+    @Override
+    public boolean evaluate(Fact fact) {
         try {
-            ee.cook(expression);
+            ConditionMemo memo = ConditionMemo.current();
+            if (memo == null) {
+                return evaluator.evaluate(fact);
+            }
+            int memoized = memo.get(memoSlot);
+            if (memoized >= 0) {
+                return memoized == 1;
+            }
+            boolean result = evaluator.evaluate(fact);
+            memo.put(memoSlot, result);
+            return result;
         } catch (Exception e) {
-            throw new RuntimeException("expression compile failed：" + expression, e);
+            throw new RuntimeException("evaluate rule error：" + this.getExpression(), e);
         }
     }
 
+    /**
+     * 按列读取参数后批量计算表达式，不经过备忘录
+     */
     @Override
-    public boolean evaluate(Fact fact) {
-        Object[] params = Arrays.stream(this.paramNames).map(fact::getValue).toArray();
+    public void evaluateBatch(List<? extends Fact> facts, BitSet out) {
         try {
-            return (Boolean) ee.evaluate(params);
+            evaluator.evaluateBatch(facts, out);
         } catch (Exception e) {
             throw new RuntimeException("evaluate rule error：" + this.getExpression(), e);
         }
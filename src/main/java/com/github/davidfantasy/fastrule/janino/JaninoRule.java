@@ -3,15 +3,16 @@ package com.github.davidfantasy.fastrule.janino;
 import com.github.davidfantasy.fastrule.BaseRule;
 import com.github.davidfantasy.fastrule.condition.Condition;
 import com.github.davidfantasy.fastrule.fact.Fact;
-import org.codehaus.janino.ScriptEvaluator;
 
-import java.util.Arrays;
+import java.util.function.Consumer;
 
+/**
+ * 基于Janino脚本的规则，规则的条件会在构造时通过ConditionCompiler编译为单个类，
+ * 之后再修改传入的条件树不会影响该规则；执行脚本会被编译为直接从fact中读取参数的类，执行时不会额外分配对象
+ */
 public class JaninoRule extends BaseRule {
 
-    private final ScriptEvaluator se;
-
-    private final String[] paramNames;
+    private final Consumer<Fact> script;
 
     public JaninoRule(String id,
                       String name,
@@ -21,22 +22,33 @@ public class JaninoRule extends BaseRule {
                       String executeScript,
                       String[] paramNames,
                       Class<?>[] paramTypes) {
-        super(id, name, priority, description, condition);
-        se = new ScriptEvaluator();
-        this.paramNames = paramNames;
-        se.setParameters(paramNames, paramTypes);
+        super(id, name, priority, description, ConditionCompiler.compile(condition));
+        if (paramNames.length != paramTypes.length) {
+            throw new IllegalArgumentException("paramNames and paramTypes must have the same length");
+        }
+        StringBuilder sb = new StringBuilder();
+        sb.append("public void accept(Object __target) {\n");
+        sb.append("    ").append(JaninoSources.FACT_TYPE).append(' ').append(JaninoSources.FACT_VAR)
+                .append(" = (").append(JaninoSources.FACT_TYPE).append(") __target;\n");
+        JaninoSources.appendParameterBindings(sb, paramNames, paramTypes);
+        sb.append(executeScript).append('\n');
+        sb.append("}\n");
         try {
-            se.cook(executeScript);
+            this.script = newScript(sb.toString());
         } catch (Exception e) {
             throw new RuntimeException("script compile failed：" + executeScript, e);
         }
     }
 
+    @SuppressWarnings("unchecked")
+    private static Consumer<Fact> newScript(String classBody) throws Exception {
+        return JaninoSources.newInstance(classBody, Consumer.class);
+    }
+
     @Override
     public void executeThen(Fact fact) {
-        Object[] params = Arrays.stream(this.paramNames).map(fact::getValue).toArray();
         try {
-            se.evaluate(params);
+            script.accept(fact);
         } catch (Exception e) {
             throw new RuntimeException("rule " + this.getName() + " execute failed", e);
         }
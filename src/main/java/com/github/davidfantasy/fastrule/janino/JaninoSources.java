@@ -0,0 +1,156 @@
+package com.github.davidfantasy.fastrule.janino;
+
+import com.github.davidfantasy.fastrule.fact.FactSchema;
+import org.codehaus.janino.ClassBodyEvaluator;
+
+/**
+ * 生成和编译Janino源码的辅助方法
+ */
+final class JaninoSources {
+
+    /**
+     * 生成代码中fact参数的变量名，避免和表达式中的参数名冲突
+     */
+    static final String FACT_VAR = "__fact";
+
+    static final String FACT_TYPE = "com.github.davidfantasy.fastrule.fact.Fact";
+
+    static final String SCHEMA_TYPE = "com.github.davidfantasy.fastrule.fact.FactSchema";
+
+    private static final String SCHEMA_FACT_TYPE = "com.github.davidfantasy.fastrule.fact.SchemaFact";
+
+    private static final String SCHEMA_FACT_VAR = "__schemaFact";
+
+    private JaninoSources() {
+    }
+
+    /**
+     * 生成从fact中读取参数并赋值给同名局部变量的语句，基本类型的参数会自动拆箱
+     */
+    static void appendParameterBindings(StringBuilder sb, String[] names, Class<?>[] types) {
+        for (int i = 0; i < names.length; i++) {
+            sb.append("    ").append(typeName(types[i])).append(' ').append(names[i])
+                    .append(" = ").append(valueRead(names[i], types[i])).append(";\n");
+        }
+    }
+
+    /**
+     * 生成按字段名读取参数的表达式。数值类型的基本类型参数通过Number转换，
+     * 和ExpressionEvaluator一样可以接受其它的数值类型（例如Integer的值绑定到double参数）
+     */
+    private static String valueRead(String name, Class<?> type) {
+        String read = FACT_VAR + ".getValue(" + stringLiteral(name) + ")";
+        if (isNumeric(type)) {
+            return "((java.lang.Number) " + read + ")." + type.getName() + "Value()";
+        }
+        return "(" + typeName(wrap(type)) + ") " + read;
+    }
+
+    private static boolean isNumeric(Class<?> type) {
+        return type.isPrimitive() && type != boolean.class && type != char.class && type != void.class;
+    }
+
+    /**
+     * 绑定了schema时，fact是该schema的SchemaFact且字段已赋值的参数直接按槽位读取，类型不兼容的参数以及其它fact仍按字段名读取
+     *
+     * @param schemaRef 生成代码中引用该schema对象的表达式
+     */
+    static void appendParameterBindings(StringBuilder sb, String[] names, Class<?>[] types, FactSchema schema, String schemaRef) {
+        if (schema == null) {
+            appendParameterBindings(sb, names, types);
+            return;
+        }
+        sb.append("    ").append(SCHEMA_FACT_TYPE).append(' ').append(SCHEMA_FACT_VAR).append(" = ")
+                .append(FACT_VAR).append(" instanceof ").append(SCHEMA_FACT_TYPE)
+                .append(" && ((").append(SCHEMA_FACT_TYPE).append(") ").append(FACT_VAR).append(").getSchema() == ").append(schemaRef)
+                .append(" ? (").append(SCHEMA_FACT_TYPE).append(") ").append(FACT_VAR).append(" : null;\n");
+        for (int i = 0; i < names.length; i++) {
+            FactSchema.Field field = schema.field(names[i]);
+            String slotRead = field == null ? null : slotRead(field, types[i]);
+            if (slotRead == null) {
+                appendParameterBindings(sb, new String[]{names[i]}, new Class<?>[]{types[i]});
+                continue;
+            }
+            sb.append("    ").append(typeName(types[i])).append(' ').append(names[i]).append(";\n");
+            sb.append("    if (").append(SCHEMA_FACT_VAR).append(" != null && ").append(SCHEMA_FACT_VAR)
+                    .append(".isAssigned(").append(field.index()).append(")) {\n");
+            sb.append("        ").append(names[i]).append(" = ").append(slotRead).append(";\n");
+            sb.append("    } else {\n");
+            sb.append("        ").append(names[i]).append(" = ").append(valueRead(names[i], types[i])).append(";\n");
+            sb.append("    }\n");
+        }
+    }
+
+    /**
+     * 生成按槽位读取字段并转换为参数类型的表达式，类型不兼容时返回null
+     */
+    private static String slotRead(FactSchema.Field field, Class<?> type) {
+        String read = SCHEMA_FACT_VAR + switch (field.type()) {
+            case LONG -> ".getLong(" + field.slot() + ")";
+            case DOUBLE -> ".getDouble(" + field.slot() + ")";
+            default -> ".getObject(" + field.slot() + ")";
+        };
+        if (field.type() == FactSchema.FieldType.OBJECT) {
+            return type.isPrimitive() ? null : "(" + typeName(type) + ") " + read;
+        }
+        boolean isLong = field.type() == FactSchema.FieldType.LONG;
+        if (isNumeric(type)) {
+            return "(" + type.getName() + ") " + read;
+        }
+        if (type == Double.class && !isLong) {
+            return "java.lang.Double.valueOf(" + read + ")";
+        }
+        if (type == Long.class && isLong) {
+            return "java.lang.Long.valueOf(" + read + ")";
+        }
+        if (type == Integer.class && isLong) {
+            return "java.lang.Integer.valueOf((int) " + read + ")";
+        }
+        return null;
+    }
+
+    static String typeName(Class<?> type) {
+        String name = type.getCanonicalName();
+        return name != null ? name : type.getName();
+    }
+
+    static String stringLiteral(String value) {
+        StringBuilder sb = new StringBuilder(value.length() + 2).append('"');
+        for (char c : value.toCharArray()) {
+            switch (c) {
+                case '"' -> sb.append("\\\"");
+                case '\\' -> sb.append("\\\\");
+                case '\n' -> sb.append("\\n");
+                case '\r' -> sb.append("\\r");
+                default -> sb.append(c);
+            }
+        }
+        return sb.append('"').toString();
+    }
+
+    static Class<?> wrap(Class<?> type) {
+        if (!type.isPrimitive()) {
+            return type;
+        }
+        if (type == int.class) return Integer.class;
+        if (type == long.class) return Long.class;
+        if (type == double.class) return Double.class;
+        if (type == float.class) return Float.class;
+        if (type == boolean.class) return Boolean.class;
+        if (type == short.class) return Short.class;
+        if (type == byte.class) return Byte.class;
+        if (type == char.class) return Character.class;
+        return Void.class;
+    }
+
+    /**
+     * 编译类体源码并创建一个实现了指定接口的实例
+     */
+    static <T> T newInstance(String classBody, Class<T> implementedInterface) throws Exception {
+        ClassBodyEvaluator cbe = new ClassBodyEvaluator();
+        cbe.setImplementedInterfaces(new Class[]{implementedInterface});
+        cbe.cook(classBody);
+        return implementedInterface.cast(cbe.getClazz().getDeclaredConstructor().newInstance());
+    }
+
+}
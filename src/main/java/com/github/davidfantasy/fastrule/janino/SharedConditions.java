@@ -0,0 +1,145 @@
+package com.github.davidfantasy.fastrule.janino;
+
+import com.github.davidfantasy.fastrule.condition.Condition;
+import com.github.davidfantasy.fastrule.condition.ConditionMemo;
+import com.github.davidfantasy.fastrule.fact.FactSchema;
+
+import java.lang.ref.WeakReference;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 按规范化后的表达式和参数签名对Janino条件去重，相同的条件只会编译一次，并共享同一个备忘录槽位；
+ * 不再被任何JaninoCondition引用的编译结果可以被回收
+ */
+final class SharedConditions {
+
+    private static final Map<String, WeakReference<Shared>> CACHE = new ConcurrentHashMap<>();
+
+    private SharedConditions() {
+    }
+
+    private static final String SCHEMA_FIELD = "__schema";
+
+    static Shared obtain(String expression, String[] paramNames, Class<?>[] parameterTypes, FactSchema schema) {
+        String key = key(expression, paramNames, parameterTypes, schema);
+        WeakReference<Shared> ref = CACHE.get(key);
+        Shared shared = ref != null ? ref.get() : null;
+        if (shared != null) {
+            return shared;
+        }
+        //编译在锁外进行，并发编译同一个表达式时以先放入缓存的结果为准
+        Shared compiled = new Shared(compile(expression, paramNames, parameterTypes, schema), ConditionMemo.allocateSlot());
+        WeakReference<Shared> result = CACHE.compute(key, (k, existing) ->
+                existing != null && existing.get() != null ? existing : new WeakReference<>(compiled));
+        shared = result.get();
+        if (CACHE.size() > 1024 && CACHE.size() % 1024 == 0) {
+            CACHE.values().removeIf(r -> r.get() == null);
+        }
+        return shared != null ? shared : compiled;
+    }
+
+    private static Condition compile(String expression, String[] paramNames, Class<?>[] parameterTypes, FactSchema schema) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("public ").append(JaninoSources.SCHEMA_TYPE).append(' ').append(SCHEMA_FIELD).append(";\n\n");
+        sb.append("public boolean evaluate(").append(JaninoSources.FACT_TYPE).append(' ').append(JaninoSources.FACT_VAR).append(") {\n");
+        JaninoSources.appendParameterBindings(sb, paramNames, parameterTypes, schema, SCHEMA_FIELD);
+        sb.append("    return (").append(expression).append(");\n");
+        sb.append("}\n\n");
+        appendBatchMethod(sb, expression, paramNames, parameterTypes, schema);
+        try {
+            Condition condition = JaninoSources.newInstance(sb.toString(), Condition.class);
+            condition.getClass().getField(SCHEMA_FIELD).set(condition, schema);
+            return condition;
+        } catch (Exception e) {
+            throw new RuntimeException("expression compile failed：" + expression, e);
+        }
+    }
+
+    /**
+     * 生成按列匹配的批量方法：先把每个参数从所有fact中读取到一个数组中，再在一个只访问局部数组的循环中计算表达式，
+     * 基本类型的参数使用基本类型数组，比较逻辑简单时JIT可以对第二个循环做进一步的优化
+     */
+    private static void appendBatchMethod(StringBuilder sb, String expression, String[] paramNames, Class<?>[] parameterTypes,
+                                          FactSchema schema) {
+        sb.append("public void evaluateBatch(java.util.List __facts, java.util.BitSet __out) {\n");
+        sb.append("    int __n = __facts.size();\n");
+        for (int i = 0; i < paramNames.length; i++) {
+            String type = JaninoSources.typeName(parameterTypes[i]);
+            sb.append("    ").append(type).append("[] __c").append(i).append(" = new ").append(type).append("[__n];\n");
+        }
+        sb.append("    for (int __i = 0; __i < __n; __i++) {\n");
+        sb.append("    ").append(JaninoSources.FACT_TYPE).append(' ').append(JaninoSources.FACT_VAR)
+                .append(" = (").append(JaninoSources.FACT_TYPE).append(") __facts.get(__i);\n");
+        JaninoSources.appendParameterBindings(sb, paramNames, parameterTypes, schema, SCHEMA_FIELD);
+        for (int i = 0; i < paramNames.length; i++) {
+            sb.append("    __c").append(i).append("[__i] = ").append(paramNames[i]).append(";\n");
+        }
+        sb.append("    }\n");
+        sb.append("    for (int __i = 0; __i < __n; __i++) {\n");
+        for (int i = 0; i < paramNames.length; i++) {
+            sb.append("    ").append(JaninoSources.typeName(parameterTypes[i])).append(' ').append(paramNames[i])
+                    .append(" = __c").append(i).append("[__i];\n");
+        }
+        sb.append("    if (").append(expression).append(") {\n");
+        sb.append("        __out.set(__i);\n");
+        sb.append("    }\n");
+        sb.append("    }\n");
+        sb.append("}\n");
+    }
+
+    static String key(String expression, String[] paramNames, Class<?>[] parameterTypes, FactSchema schema) {
+        StringBuilder sb = new StringBuilder(normalize(expression));
+        for (int i = 0; i < paramNames.length; i++) {
+            sb.append('|').append(paramNames[i]).append(':').append(parameterTypes[i].getName());
+        }
+        //绑定不同schema时生成的代码不同，需要分别编译
+        if (schema != null) {
+            sb.append("#schema").append(schema.getId());
+        }
+        return sb.toString();
+    }
+
+    /**
+     * 去掉字符串和字符字面量以外的多余空白，只保留两个标识符之间必要的单个空格
+     */
+    static String normalize(String expression) {
+        StringBuilder sb = new StringBuilder(expression.length());
+        char quote = 0;
+        boolean pendingSpace = false;
+        for (int i = 0; i < expression.length(); i++) {
+            char c = expression.charAt(i);
+            if (quote != 0) {
+                sb.append(c);
+                if (c == '\\' && i + 1 < expression.length()) {
+                    sb.append(expression.charAt(++i));
+                } else if (c == quote) {
+                    quote = 0;
+                }
+                continue;
+            }
+            if (Character.isWhitespace(c)) {
+                pendingSpace = true;
+                continue;
+            }
+            if (pendingSpace && sb.length() > 0
+                    && Character.isJavaIdentifierPart(sb.charAt(sb.length() - 1))
+                    && Character.isJavaIdentifierPart(c)) {
+                sb.append(' ');
+            }
+            pendingSpace = false;
+            if (c == '"' || c == '\'') {
+                quote = c;
+            }
+            sb.append(c);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * 编译后的共享条件及其备忘录槽位
+     */
+    record Shared(Condition evaluator, int slot) {
+    }
+
+}
@@ -0,0 +1,143 @@
+package com.github.davidfantasy.fastrule.metrics;
+
+import com.github.davidfantasy.fastrule.Rule;
+import lombok.Getter;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * 不依赖任何第三方库的内存指标实现，计数使用LongAdder，耗时使用StripedHistogram，
+ * 多个执行线程同时更新同一个规则的指标时不会竞争同一个缓存行。
+ * 每个规则的指标在第一次记录时创建，规则被移除后不会自动清理，可以通过removeRuleStats清理
+ */
+public class InMemoryRuleEngineMetrics implements RuleEngineMetrics {
+
+    private final Map<String, RuleStats> ruleStats = new ConcurrentHashMap<>();
+
+    private final Map<String, StripedHistogram> collectorBatchSizes = new ConcurrentHashMap<>();
+
+    /**
+     * 事件从发布到开始执行的等待时间，单位纳秒
+     */
+    @Getter
+    private final StripedHistogram queueDelay = new StripedHistogram();
+
+    private volatile LongSupplier remainingCapacity;
+
+    @Override
+    public void onRuleDropped(Rule rule) {
+        stats(rule).dropped.increment();
+    }
+
+    @Override
+    public void onRuleHit(Rule rule) {
+        stats(rule).hits.increment();
+    }
+
+    @Override
+    public void onRuleMissed(Rule rule) {
+        stats(rule).misses.increment();
+    }
+
+    @Override
+    public void onRuleFailed(Rule rule, Throwable e) {
+        stats(rule).failures.increment();
+    }
+
+    @Override
+    public void recordExecuteThenLatency(Rule rule, long nanos) {
+        stats(rule).executeThenLatency.record(nanos);
+    }
+
+    @Override
+    public void recordQueueDelay(long nanos) {
+        queueDelay.record(nanos);
+    }
+
+    @Override
+    public void recordCollectorBatch(String collectorName, int size) {
+        collectorBatchSizes.computeIfAbsent(collectorName, k -> new StripedHistogram()).record(size);
+    }
+
+    @Override
+    public void bindRemainingCapacity(LongSupplier remainingCapacity) {
+        this.remainingCapacity = remainingCapacity;
+    }
+
+    /**
+     * 事件队列当前的剩余容量，引擎未启动时返回-1
+     */
+    public long getRemainingCapacity() {
+        LongSupplier supplier = this.remainingCapacity;
+        return supplier == null ? -1 : supplier.getAsLong();
+    }
+
+    /**
+     * 获取规则的指标，规则还没有产生任何指标时返回null
+     */
+    public RuleStats getRuleStats(String ruleId) {
+        return ruleStats.get(ruleId);
+    }
+
+    public Map<String, RuleStats> getAllRuleStats() {
+        return Collections.unmodifiableMap(ruleStats);
+    }
+
+    public void removeRuleStats(String ruleId) {
+        ruleStats.remove(ruleId);
+    }
+
+    /**
+     * 获取采集器每次采集到的fact数量分布，采集器还没有执行过时返回null
+     */
+    public StripedHistogram getCollectorBatchSizes(String collectorName) {
+        return collectorBatchSizes.get(collectorName);
+    }
+
+    private RuleStats stats(Rule rule) {
+        RuleStats stats = ruleStats.get(rule.getId());
+        return stats != null ? stats : ruleStats.computeIfAbsent(rule.getId(), k -> new RuleStats());
+    }
+
+    /**
+     * 单个规则的指标
+     */
+    public static class RuleStats {
+
+        private final LongAdder dropped = new LongAdder();
+
+        private final LongAdder hits = new LongAdder();
+
+        private final LongAdder misses = new LongAdder();
+
+        private final LongAdder failures = new LongAdder();
+
+        /**
+         * executeThen的耗时，单位纳秒
+         */
+        @Getter
+        private final StripedHistogram executeThenLatency = new StripedHistogram();
+
+        public long getDropped() {
+            return dropped.sum();
+        }
+
+        public long getHits() {
+            return hits.sum();
+        }
+
+        public long getMisses() {
+            return misses.sum();
+        }
+
+        public long getFailures() {
+            return failures.sum();
+        }
+
+    }
+
+}
@@ -0,0 +1,69 @@
+package com.github.davidfantasy.fastrule.metrics;
+
+import com.github.davidfantasy.fastrule.Rule;
+
+import java.util.function.LongSupplier;
+
+/**
+ * 规则引擎的运行指标，由规则执行线程和采集线程并发调用，实现类需要保证线程安全，且不能成为规则执行的瓶颈。
+ * 默认使用不记录任何数据的NOOP实现，可以使用InMemoryRuleEngineMetrics或者对接其它的监控系统
+ */
+public interface RuleEngineMetrics {
+
+    RuleEngineMetrics NOOP = new RuleEngineMetrics() {
+        @Override
+        public boolean isEnabled() {
+            return false;
+        }
+    };
+
+    /**
+     * 是否需要记录耗时类的指标，返回false时引擎不会为了统计耗时而读取时钟
+     */
+    default boolean isEnabled() {
+        return true;
+    }
+
+    /**
+     * 规则的preEvaluate返回了false
+     */
+    default void onRuleDropped(Rule rule) {
+    }
+
+    default void onRuleHit(Rule rule) {
+    }
+
+    default void onRuleMissed(Rule rule) {
+    }
+
+    /**
+     * 规则执行过程中（包括条件计算和动作执行）发生了异常
+     */
+    default void onRuleFailed(Rule rule, Throwable e) {
+    }
+
+    /**
+     * 记录规则executeThen的耗时
+     */
+    default void recordExecuteThenLatency(Rule rule, long nanos) {
+    }
+
+    /**
+     * 记录规则事件从发布到开始执行的等待时间
+     */
+    default void recordQueueDelay(long nanos) {
+    }
+
+    /**
+     * 记录采集器单次采集到的fact数量
+     */
+    default void recordCollectorBatch(String collectorName, int size) {
+    }
+
+    /**
+     * 引擎启动时绑定事件队列剩余容量的读取方法，可以作为gauge类型的指标
+     */
+    default void bindRemainingCapacity(LongSupplier remainingCapacity) {
+    }
+
+}
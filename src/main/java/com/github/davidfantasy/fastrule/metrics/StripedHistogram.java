@@ -0,0 +1,145 @@
+package com.github.davidfantasy.fastrule.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * 分条带记录的对数-线性直方图，思路与HdrHistogram类似：小于16的值按原值计数，
+ * 更大的值按2的幂划分量级，每个量级再线性划分为8个子区间，相对误差不超过12.5%。
+ * 不同线程按线程id写入不同的条带，条带在第一次写入时才分配，读取时合并所有条带
+ */
+public class StripedHistogram {
+
+    private static final int LINEAR_LIMIT = 16;
+
+    private static final int SUB_BUCKET_BITS = 3;
+
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    /**
+     * 量级4到62，每个量级8个子区间
+     */
+    private static final int BUCKETS = LINEAR_LIMIT + (63 - 4) * SUB_BUCKETS;
+
+    private static final int STRIPES = Math.min(16, Integer.highestOneBit(Runtime.getRuntime().availableProcessors() * 2 - 1));
+
+    private final AtomicReferenceArray<AtomicLongArray> stripes = new AtomicReferenceArray<>(STRIPES);
+
+    public void record(long value) {
+        if (value < 0) {
+            value = 0;
+        }
+        int index = (int) Thread.currentThread().getId() & (STRIPES - 1);
+        AtomicLongArray stripe = stripes.get(index);
+        if (stripe == null) {
+            stripes.compareAndSet(index, null, new AtomicLongArray(BUCKETS));
+            stripe = stripes.get(index);
+        }
+        stripe.incrementAndGet(bucketOf(value));
+    }
+
+    public long getCount() {
+        long count = 0;
+        for (long c : merge()) {
+            count += c;
+        }
+        return count;
+    }
+
+    /**
+     * 获取百分位对应的值（所在区间的上界），percentile的取值范围为(0, 100]，没有任何记录时返回0
+     */
+    public long getValueAtPercentile(double percentile) {
+        long[] counts = merge();
+        long total = 0;
+        for (long c : counts) {
+            total += c;
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long target = Math.max(1, (long) Math.ceil(total * Math.min(percentile, 100) / 100));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= target) {
+                return highestEquivalentValue(i);
+            }
+        }
+        return highestEquivalentValue(counts.length - 1);
+    }
+
+    public long getMax() {
+        long[] counts = merge();
+        for (int i = counts.length - 1; i >= 0; i--) {
+            if (counts[i] > 0) {
+                return highestEquivalentValue(i);
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * 近似的平均值，每个区间按区间中点计算
+     */
+    public double getMean() {
+        long[] counts = merge();
+        long total = 0;
+        double sum = 0;
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] > 0) {
+                total += counts[i];
+                sum += counts[i] * ((lowestEquivalentValue(i) + (double) highestEquivalentValue(i)) / 2);
+            }
+        }
+        return total == 0 ? 0 : sum / total;
+    }
+
+    public void reset() {
+        for (int i = 0; i < STRIPES; i++) {
+            stripes.set(i, null);
+        }
+    }
+
+    private long[] merge() {
+        long[] counts = new long[BUCKETS];
+        for (int s = 0; s < STRIPES; s++) {
+            AtomicLongArray stripe = stripes.get(s);
+            if (stripe == null) {
+                continue;
+            }
+            for (int i = 0; i < BUCKETS; i++) {
+                counts[i] += stripe.get(i);
+            }
+        }
+        return counts;
+    }
+
+    static int bucketOf(long value) {
+        if (value < LINEAR_LIMIT) {
+            return (int) value;
+        }
+        int magnitude = 63 - Long.numberOfLeadingZeros(value);
+        int sub = (int) (value >>> (magnitude - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return LINEAR_LIMIT + (magnitude - 4) * SUB_BUCKETS + sub;
+    }
+
+    static long lowestEquivalentValue(int bucket) {
+        if (bucket < LINEAR_LIMIT) {
+            return bucket;
+        }
+        int magnitude = (bucket - LINEAR_LIMIT) / SUB_BUCKETS + 4;
+        int sub = (bucket - LINEAR_LIMIT) % SUB_BUCKETS;
+        return (long) (SUB_BUCKETS + sub) << (magnitude - SUB_BUCKET_BITS);
+    }
+
+    static long highestEquivalentValue(int bucket) {
+        if (bucket < LINEAR_LIMIT) {
+            return bucket;
+        }
+        int magnitude = (bucket - LINEAR_LIMIT) / SUB_BUCKETS + 4;
+        long width = 1L << (magnitude - SUB_BUCKET_BITS);
+        return lowestEquivalentValue(bucket) + width - 1;
+    }
+
+}
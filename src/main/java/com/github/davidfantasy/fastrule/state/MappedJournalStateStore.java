@@ -0,0 +1,433 @@
+package com.github.davidfantasy.fastrule.state;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.*;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.zip.CRC32;
+
+/**
+ * 基于内存映射文件的状态存储，由定期生成的快照和仅追加的增量日志组成：
+ * 每次状态变化都以一条带CRC校验的记录追加到当前的日志段（journal-N.log），日志段写满后切换到新的日志段；
+ * 快照（snapshot.dat）记录了生成时的全部状态以及它覆盖到的日志段编号，生成快照后更早的日志段会被删除。
+ * 启动时先加载快照，再按顺序回放之后的日志段，遇到校验失败的记录（例如进程崩溃时写了一半）即停止回放。
+ * 写入内存映射文件不需要系统调用，进程崩溃时已写入的数据不会丢失，但操作系统崩溃时可能丢失最近的记录，
+ * 需要更强的持久性时可以定期调用flush。
+ * 写入不需要全局锁：每条记录通过CAS在当前日志段中预留空间后各自写入，只有切换日志段时才需要加锁，
+ * 旧日志段的刷盘在锁外进行；快照直接遍历并发的内存镜像，生成期间不会阻塞写入。
+ * 多个线程并发写入时记录的完成顺序可能和预留顺序不同，进程崩溃时最后几条记录之间可能出现空洞，回放在第一个空洞处停止
+ */
+@Slf4j
+public class MappedJournalStateStore implements RuleStateStore {
+
+    private static final int SNAPSHOT_MAGIC = 0x46525353;
+
+    private static final int SNAPSHOT_VERSION = 1;
+
+    private static final String SNAPSHOT_FILE = "snapshot.dat";
+
+    private static final String JOURNAL_PREFIX = "journal-";
+
+    private static final String JOURNAL_SUFFIX = ".log";
+
+    private static final byte TYPE_SAVE = 1;
+
+    private static final byte TYPE_REMOVE = 2;
+
+    /**
+     * 记录头：长度和CRC
+     */
+    private static final int HEADER_SIZE = 8;
+
+    private final Path directory;
+
+    private final int segmentSize;
+
+    private final long snapshotIntervalMs;
+
+    /**
+     * 所有状态的内存镜像，用于生成快照；为了避免和写入竞争，规则的状态表清空后也不会被移除
+     */
+    private final Map<String, Map<String, RuleState>> states = new ConcurrentHashMap<>();
+
+    /**
+     * 打开、关闭和切换日志段时持有的锁
+     */
+    private final Object lock = new Object();
+
+    private final Object snapshotLock = new Object();
+
+    private final ThreadLocal<CRC32> crc = ThreadLocal.withInitial(CRC32::new);
+
+    private volatile Segment segment;
+
+    private volatile boolean opened;
+
+    private ScheduledExecutorService snapshotExecutor;
+
+    public MappedJournalStateStore(Path directory) {
+        this(directory, 64 * 1024 * 1024, TimeUnit.MINUTES.toMillis(5));
+    }
+
+    /**
+     * @param segmentSize        单个日志段的大小（字节）
+     * @param snapshotIntervalMs 自动生成快照的间隔，小于等于0时不自动生成
+     */
+    public MappedJournalStateStore(Path directory, int segmentSize, long snapshotIntervalMs) {
+        if (segmentSize < 1024) {
+            throw new IllegalArgumentException("segmentSize must be at least 1024");
+        }
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.snapshotIntervalMs = snapshotIntervalMs;
+    }
+
+    @Override
+    public void open() {
+        synchronized (lock) {
+            if (opened) {
+                return;
+            }
+            long start = System.currentTimeMillis();
+            try {
+                Files.createDirectories(directory);
+                states.clear();
+                CRC32 crc = new CRC32();
+                long snapshotGeneration = readSnapshot();
+                long next = snapshotGeneration;
+                int records = 0;
+                for (long gen : journalGenerations()) {
+                    if (gen < snapshotGeneration) {
+                        Files.deleteIfExists(journalPath(gen));
+                        continue;
+                    }
+                    records += replay(journalPath(gen), crc);
+                    next = gen + 1;
+                }
+                //总是从新的日志段开始写入，避免覆盖上次写了一半的记录后残留的数据被误认为有效记录
+                segment = map(next);
+                opened = true;
+                log.info("rule state store opened: {} rules, {} journal records replayed in {}ms",
+                        states.size(), records, System.currentTimeMillis() - start);
+            } catch (IOException e) {
+                throw new RuntimeException("open rule state store failed: " + directory, e);
+            }
+        }
+        if (snapshotIntervalMs > 0) {
+            snapshotExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "fast-rule-state-snapshot");
+                t.setDaemon(true);
+                return t;
+            });
+            snapshotExecutor.scheduleWithFixedDelay(() -> {
+                try {
+                    snapshot();
+                } catch (Exception e) {
+                    log.error("rule state snapshot failed", e);
+                }
+            }, snapshotIntervalMs, snapshotIntervalMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @Override
+    public void load(String ruleId, BiConsumer<String, RuleState> consumer) {
+        Map<String, RuleState> ruleStates = states.get(ruleId);
+        if (ruleStates != null) {
+            ruleStates.forEach(consumer);
+        }
+    }
+
+    /**
+     * 同一个stateKey的写入由规则保证串行；先更新内存镜像再追加日志，
+     * 这样写入旧日志段的记录一定已经包含在之后生成的快照中
+     */
+    @Override
+    public void save(String ruleId, String stateKey, RuleState state) {
+        checkOpened();
+        states.computeIfAbsent(ruleId, k -> new ConcurrentHashMap<>()).put(stateKey, state);
+        append(TYPE_SAVE, ruleId, stateKey, state);
+    }
+
+    @Override
+    public void remove(String ruleId, String stateKey) {
+        checkOpened();
+        Map<String, RuleState> ruleStates = states.get(ruleId);
+        if (ruleStates == null || ruleStates.remove(stateKey) == null) {
+            return;
+        }
+        append(TYPE_REMOVE, ruleId, stateKey, null);
+    }
+
+    @Override
+    public void snapshot() {
+        synchronized (snapshotLock) {
+            Segment current = segment;
+            if (!opened || current == null) {
+                return;
+            }
+            //之后的记录写入新的日志段，快照覆盖之前的全部日志段
+            roll(current);
+            long covered = current.generation + 1;
+            try {
+                writeSnapshot(covered);
+                for (long gen : journalGenerations()) {
+                    if (gen < covered) {
+                        Files.deleteIfExists(journalPath(gen));
+                    }
+                }
+            } catch (IOException e) {
+                throw new RuntimeException("write rule state snapshot failed: " + directory, e);
+            }
+        }
+    }
+
+    /**
+     * 将当前日志段已写入的内容强制刷到磁盘
+     */
+    public void flush() {
+        Segment current = segment;
+        if (current != null) {
+            current.buffer.force();
+        }
+    }
+
+    @Override
+    public void close() {
+        if (snapshotExecutor != null) {
+            snapshotExecutor.shutdownNow();
+            snapshotExecutor = null;
+        }
+        //关闭时生成快照，下次启动时不需要回放日志
+        snapshot();
+        Segment current;
+        synchronized (lock) {
+            current = segment;
+            segment = null;
+            opened = false;
+        }
+        if (current != null) {
+            current.buffer.force();
+        }
+    }
+
+    private void append(byte type, String ruleId, String stateKey, RuleState state) {
+        byte[] rule = bytes(ruleId);
+        byte[] key = bytes(stateKey);
+        int length = 1 + 1 + 8 + 2 + rule.length + 2 + key.length;
+        if (HEADER_SIZE + length > segmentSize) {
+            throw new IllegalArgumentException("rule state record is too large: " + ruleId + "," + stateKey);
+        }
+        while (true) {
+            Segment current = segment;
+            if (current == null) {
+                throw new IllegalStateException("rule state store is not opened");
+            }
+            int start = current.position.getAndAdd(HEADER_SIZE + length);
+            //预留一个int的位置作为结束标记，空间不足时切换到新的日志段后重试
+            if (start + HEADER_SIZE + length + 4 > segmentSize) {
+                roll(current);
+                continue;
+            }
+            MappedByteBuffer buffer = current.buffer;
+            int offset = start + HEADER_SIZE;
+            buffer.put(offset, type);
+            buffer.put(offset + 1, (byte) (state != null && state.triggered() ? 1 : 0));
+            buffer.putLong(offset + 2, state != null ? state.delayDeadline() : 0);
+            buffer.putShort(offset + 10, (short) rule.length);
+            buffer.put(offset + 12, rule);
+            buffer.putShort(offset + 12 + rule.length, (short) key.length);
+            buffer.put(offset + 14 + rule.length, key);
+            CRC32 checksum = crc.get();
+            checksum.reset();
+            checksum.update(buffer.slice(offset, length));
+            buffer.putInt(start + 4, (int) checksum.getValue());
+            //最后写入长度，长度不为0表示记录已经完整写入
+            buffer.putInt(start, length);
+            return;
+        }
+    }
+
+    /**
+     * 将写满的日志段切换为新的日志段，已经被其它线程切换时直接返回；旧日志段在锁外刷盘
+     */
+    private void roll(Segment full) {
+        synchronized (lock) {
+            if (segment != full) {
+                return;
+            }
+            try {
+                segment = map(full.generation + 1);
+            } catch (IOException e) {
+                throw new RuntimeException("create rule state journal failed: " + directory, e);
+            }
+        }
+        full.buffer.force();
+    }
+
+    private Segment map(long gen) throws IOException {
+        try (FileChannel channel = FileChannel.open(journalPath(gen), StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            return new Segment(gen, channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize));
+        }
+    }
+
+    private int replay(Path path, CRC32 crc) throws IOException {
+        int records = 0;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            while (buffer.remaining() >= HEADER_SIZE) {
+                int start = buffer.position();
+                int length = buffer.getInt();
+                int checksum = buffer.getInt();
+                if (length <= 0 || length > buffer.remaining()) {
+                    break;
+                }
+                crc.reset();
+                crc.update(buffer.duplicate().limit(start + HEADER_SIZE + length));
+                if ((int) crc.getValue() != checksum) {
+                    log.warn("corrupted rule state record found in {} at {}, stop replaying", path.getFileName(), start);
+                    break;
+                }
+                byte type = buffer.get();
+                boolean triggered = buffer.get() == 1;
+                long deadline = buffer.getLong();
+                String ruleId = string(buffer);
+                String stateKey = string(buffer);
+                if (type == TYPE_SAVE) {
+                    states.computeIfAbsent(ruleId, k -> new ConcurrentHashMap<>()).put(stateKey, new RuleState(triggered, deadline));
+                } else {
+                    Map<String, RuleState> ruleStates = states.get(ruleId);
+                    if (ruleStates != null) {
+                        ruleStates.remove(stateKey);
+                    }
+                }
+                records++;
+            }
+        }
+        return records;
+    }
+
+    /**
+     * 加载快照，返回快照覆盖到的日志段编号，没有快照时返回0
+     */
+    private long readSnapshot() throws IOException {
+        Path path = directory.resolve(SNAPSHOT_FILE);
+        if (!Files.exists(path)) {
+            return 0;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path), 1 << 16))) {
+            if (in.readInt() != SNAPSHOT_MAGIC || in.readInt() != SNAPSHOT_VERSION) {
+                throw new IOException("unsupported rule state snapshot: " + path);
+            }
+            long covered = in.readLong();
+            //快照边遍历边写入，数量未知，每条记录前用一个布尔值表示后面是否还有记录
+            while (in.readBoolean()) {
+                Map<String, RuleState> ruleStates = states.computeIfAbsent(in.readUTF(), k -> new ConcurrentHashMap<>());
+                while (in.readBoolean()) {
+                    ruleStates.put(in.readUTF(), new RuleState(in.readBoolean(), in.readLong()));
+                }
+            }
+            return covered;
+        }
+    }
+
+    /**
+     * 直接遍历内存镜像写入快照，遍历期间的并发写入可能只有一部分包含在快照中，它们同时也写入了快照之后的日志段，回放时会被重新应用
+     */
+    private void writeSnapshot(long covered) throws IOException {
+        Path tmp = directory.resolve(SNAPSHOT_FILE + ".tmp");
+        try (FileOutputStream fos = new FileOutputStream(tmp.toFile());
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fos, 1 << 16))) {
+            out.writeInt(SNAPSHOT_MAGIC);
+            out.writeInt(SNAPSHOT_VERSION);
+            out.writeLong(covered);
+            for (Map.Entry<String, Map<String, RuleState>> rule : states.entrySet()) {
+                if (rule.getValue().isEmpty()) {
+                    continue;
+                }
+                out.writeBoolean(true);
+                out.writeUTF(rule.getKey());
+                for (Map.Entry<String, RuleState> entry : rule.getValue().entrySet()) {
+                    out.writeBoolean(true);
+                    out.writeUTF(entry.getKey());
+                    out.writeBoolean(entry.getValue().triggered());
+                    out.writeLong(entry.getValue().delayDeadline());
+                }
+                out.writeBoolean(false);
+            }
+            out.writeBoolean(false);
+            out.flush();
+            fos.getChannel().force(true);
+        }
+        Files.move(tmp, directory.resolve(SNAPSHOT_FILE), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private List<Long> journalGenerations() throws IOException {
+        List<Long> generations = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, JOURNAL_PREFIX + "*" + JOURNAL_SUFFIX)) {
+            for (Path path : stream) {
+                String name = path.getFileName().toString();
+                try {
+                    generations.add(Long.parseLong(name.substring(JOURNAL_PREFIX.length(), name.length() - JOURNAL_SUFFIX.length())));
+                } catch (NumberFormatException e) {
+                    log.warn("ignore unknown file in rule state directory: {}", name);
+                }
+            }
+        }
+        Collections.sort(generations);
+        return generations;
+    }
+
+    private Path journalPath(long gen) {
+        return directory.resolve(JOURNAL_PREFIX + gen + JOURNAL_SUFFIX);
+    }
+
+    private void checkOpened() {
+        if (!opened) {
+            throw new IllegalStateException("rule state store is not opened");
+        }
+    }
+
+    private static byte[] bytes(String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > 0xffff) {
+            throw new IllegalArgumentException("rule id or state key is too long");
+        }
+        return bytes;
+    }
+
+    private static String string(MappedByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getShort() & 0xffff];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 一个日志段，position为下一条记录的预留位置
+     */
+    private static final class Segment {
+
+        final long generation;
+
+        final MappedByteBuffer buffer;
+
+        final AtomicInteger position = new AtomicInteger();
+
+        Segment(long generation, MappedByteBuffer buffer) {
+            this.generation = generation;
+            this.buffer = buffer;
+        }
+
+    }
+
+}
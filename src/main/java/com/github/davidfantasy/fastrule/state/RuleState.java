@@ -0,0 +1,10 @@
+package com.github.davidfantasy.fastrule.state;
+
+/**
+ * 有状态规则中单个key的状态
+ *
+ * @param triggered     是否已触发
+ * @param delayDeadline 等待中的延迟触发的到期时间（毫秒时间戳），0表示没有等待中的延迟触发
+ */
+public record RuleState(boolean triggered, long delayDeadline) {
+}
@@ -0,0 +1,32 @@
+package com.github.davidfantasy.fastrule.state;
+
+import java.util.function.BiConsumer;
+
+/**
+ * 有状态规则的状态存储，用于在引擎重启后恢复规则的触发状态，避免重启后重复触发所有已触发的规则。
+ * 规则引擎启动时调用open加载已保存的状态，关闭时调用close；实现类需要保证线程安全
+ */
+public interface RuleStateStore {
+
+    /**
+     * 加载已保存的状态，重复调用时不会重复加载
+     */
+    void open();
+
+    /**
+     * 遍历规则已保存的全部状态
+     */
+    void load(String ruleId, BiConsumer<String, RuleState> consumer);
+
+    void save(String ruleId, String stateKey, RuleState state);
+
+    void remove(String ruleId, String stateKey);
+
+    /**
+     * 生成一份完整的快照，并清理已经被快照覆盖的增量记录
+     */
+    void snapshot();
+
+    void close();
+
+}
@@ -0,0 +1,235 @@
+package com.github.davidfantasy.fastrule.timer;
+
+import com.github.davidfantasy.fastrule.fact.Fact;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.ToIntFunction;
+
+/**
+ * 哈希时间轮，用于调度大量的延迟任务。添加和取消任务都只是放入无锁队列，时间复杂度为O(1)，
+ * 由时间轮线程在每个刻度统一处理，超过一圈的延迟通过剩余圈数表示。
+ * 同一个刻度内到期的任务会作为一批交给dispatcher，时间轮线程本身不执行业务逻辑（使用默认dispatcher时除外）；
+ * dispatcher暂时无法分发的任务会保留到下一个刻度和新到期的任务一起重新分发，时间轮线程不会被阻塞；
+ * 任务的实际执行时间精度为一个刻度
+ */
+@Slf4j
+public class HashedWheelTimer {
+
+    private static final int WORKER_INIT = 0;
+
+    private static final int WORKER_STARTED = 1;
+
+    private static final int WORKER_SHUTDOWN = 2;
+
+    /**
+     * 每个刻度最多从等待队列中转移的任务数，避免大量任务同时加入时阻塞时间轮
+     */
+    private static final int MAX_TRANSFER_PER_TICK = 100000;
+
+    private final String name;
+
+    private final long tickDuration;
+
+    private final Timeout.Bucket[] wheel;
+
+    private final int mask;
+
+    private final ToIntFunction<List<Timeout>> dispatcher;
+
+    private final Queue<Timeout> pendingTimeouts = new ConcurrentLinkedQueue<>();
+
+    private final Queue<Timeout> cancelledTimeouts = new ConcurrentLinkedQueue<>();
+
+    private final AtomicInteger workerState = new AtomicInteger(WORKER_INIT);
+
+    private volatile long startTime;
+
+    private Thread workerThread;
+
+    private long tick;
+
+    /**
+     * 到期的任务由时间轮线程直接执行
+     */
+    public HashedWheelTimer(String name, long tickDuration, TimeUnit unit, int ticksPerWheel) {
+        this(name, tickDuration, unit, ticksPerWheel, null);
+    }
+
+    /**
+     * @param ticksPerWheel 时间轮的槽位数，会向上取整为2的幂
+     * @param dispatcher    到期任务的分发方式，返回从列表头部开始已经分发的任务数量，为null时由时间轮线程直接执行
+     */
+    public HashedWheelTimer(String name, long tickDuration, TimeUnit unit, int ticksPerWheel,
+                            ToIntFunction<List<Timeout>> dispatcher) {
+        if (tickDuration <= 0) {
+            throw new IllegalArgumentException("tickDuration must be greater than 0");
+        }
+        if (ticksPerWheel <= 0 || ticksPerWheel > (1 << 30)) {
+            throw new IllegalArgumentException("ticksPerWheel must be in (0, 2^30]");
+        }
+        this.name = name;
+        this.tickDuration = Math.max(unit.toNanos(tickDuration), TimeUnit.MILLISECONDS.toNanos(1));
+        int size = Integer.bitCount(ticksPerWheel) == 1 ? ticksPerWheel : Integer.highestOneBit(ticksPerWheel) << 1;
+        this.wheel = new Timeout.Bucket[size];
+        for (int i = 0; i < size; i++) {
+            wheel[i] = new Timeout.Bucket();
+        }
+        this.mask = size - 1;
+        this.dispatcher = dispatcher != null ? dispatcher : HashedWheelTimer::runAll;
+    }
+
+    /**
+     * 添加一个延迟任务，第一次添加时会启动时间轮线程
+     *
+     * @param fact 任务关联的fact，可以为null
+     */
+    public Timeout newTimeout(Fact fact, TimerTask task, long delay, TimeUnit unit) {
+        start();
+        long deadline = System.nanoTime() + unit.toNanos(delay) - startTime;
+        Timeout timeout = new Timeout(this, fact, task, deadline);
+        pendingTimeouts.add(timeout);
+        return timeout;
+    }
+
+    /**
+     * 停止时间轮，还没有到期的任务不会再执行
+     */
+    public void stop() {
+        if (workerState.getAndSet(WORKER_SHUTDOWN) == WORKER_STARTED) {
+            workerThread.interrupt();
+            try {
+                workerThread.join(TimeUnit.SECONDS.toMillis(1));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        pendingTimeouts.clear();
+        cancelledTimeouts.clear();
+    }
+
+    void cancelled(Timeout timeout) {
+        cancelledTimeouts.add(timeout);
+    }
+
+    /**
+     * 重新放入时间轮，下一个刻度按当时的刻度重新计算槽位和剩余圈数，只由时间轮线程调用
+     */
+    void reschedule(Timeout timeout) {
+        pendingTimeouts.add(timeout);
+    }
+
+    private void start() {
+        int state = workerState.get();
+        if (state == WORKER_STARTED) {
+            return;
+        }
+        if (state == WORKER_SHUTDOWN) {
+            throw new IllegalStateException("timer is already stopped:" + name);
+        }
+        synchronized (this) {
+            if (workerState.get() == WORKER_INIT) {
+                startTime = System.nanoTime();
+                workerThread = new Thread(this::run, name);
+                workerThread.setDaemon(true);
+                workerState.set(WORKER_STARTED);
+                workerThread.start();
+            } else if (workerState.get() == WORKER_SHUTDOWN) {
+                throw new IllegalStateException("timer is already stopped:" + name);
+            }
+        }
+    }
+
+    private void run() {
+        List<Timeout> expired = new ArrayList<>();
+        while (workerState.get() == WORKER_STARTED) {
+            long deadline = waitForNextTick();
+            if (deadline < 0) {
+                break;
+            }
+            removeCancelled();
+            transferPending();
+            wheel[(int) (tick & mask)].expire(deadline, expired);
+            tick++;
+            if (!expired.isEmpty()) {
+                int dispatched;
+                try {
+                    dispatched = dispatcher.applyAsInt(expired);
+                } catch (Exception e) {
+                    log.error("dispatch expired timeouts failed", e);
+                    dispatched = expired.size();
+                }
+                expired.subList(0, dispatched).clear();
+            }
+        }
+        //时间轮停止时还没有分发的任务不会再执行
+        for (Timeout timeout : expired) {
+            timeout.discard();
+        }
+    }
+
+    /**
+     * 等待到下一个刻度，返回当前刻度相对于启动时间的时间点，时间轮被停止时返回-1
+     */
+    private long waitForNextTick() {
+        long deadline = tickDuration * (tick + 1);
+        while (true) {
+            long current = System.nanoTime() - startTime;
+            long sleepMs = TimeUnit.NANOSECONDS.toMillis(deadline - current + 999999);
+            if (sleepMs <= 0) {
+                return current;
+            }
+            try {
+                Thread.sleep(sleepMs);
+            } catch (InterruptedException e) {
+                if (workerState.get() == WORKER_SHUTDOWN) {
+                    return -1;
+                }
+            }
+        }
+    }
+
+    private void removeCancelled() {
+        Timeout timeout;
+        while ((timeout = cancelledTimeouts.poll()) != null) {
+            if (timeout.bucket != null) {
+                timeout.bucket.remove(timeout);
+            }
+        }
+    }
+
+    private void transferPending() {
+        for (int i = 0; i < MAX_TRANSFER_PER_TICK; i++) {
+            Timeout timeout = pendingTimeouts.poll();
+            if (timeout == null) {
+                break;
+            }
+            if (timeout.isCancelled()) {
+                continue;
+            }
+            //第n个刻度在(n+1)*tickDuration时处理，恰好落在刻度边界上的任务不需要再多等一个刻度
+            long calculated = (timeout.deadline - 1) / tickDuration;
+            timeout.remainingRounds = (calculated - tick) / wheel.length;
+            //已经过期的任务放到当前刻度，避免放入已经转过的槽位
+            long ticks = Math.max(calculated, tick);
+            wheel[(int) (ticks & mask)].add(timeout);
+        }
+    }
+
+    private static int runAll(List<Timeout> timeouts) {
+        for (Timeout timeout : timeouts) {
+            try {
+                timeout.run();
+            } catch (Throwable t) {
+                log.warn("timer task execute error", t);
+            }
+        }
+        return timeouts.size();
+    }
+
+}
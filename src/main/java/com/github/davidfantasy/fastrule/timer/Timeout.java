@@ -0,0 +1,167 @@
+package com.github.davidfantasy.fastrule.timer;
+
+import com.github.davidfantasy.fastrule.fact.Fact;
+import com.github.davidfantasy.fastrule.fact.RecyclableFact;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * HashedWheelTimer中的一个延迟任务，本身也是一个Runnable，执行时会调用关联的TimerTask
+ */
+public final class Timeout implements Runnable {
+
+    private static final int ST_INIT = 0;
+
+    private static final int ST_CANCELLED = 1;
+
+    private static final int ST_EXPIRED = 2;
+
+    private final HashedWheelTimer timer;
+
+    private final Fact fact;
+
+    private final TimerTask task;
+
+    /**
+     * 相对于时间轮启动时间的到期时间（纳秒）
+     */
+    final long deadline;
+
+    /**
+     * 到期前时间轮还需要转动的圈数，只由时间轮线程访问
+     */
+    long remainingRounds;
+
+    Timeout next;
+
+    Timeout prev;
+
+    Bucket bucket;
+
+    private final AtomicInteger state = new AtomicInteger(ST_INIT);
+
+    Timeout(HashedWheelTimer timer, Fact fact, TimerTask task, long deadline) {
+        this.timer = timer;
+        this.fact = fact;
+        this.task = task;
+        this.deadline = deadline;
+        //等待到期期间持有fact的引用，执行完成或被取消后释放
+        RecyclableFact.retain(fact, 1);
+    }
+
+    /**
+     * 任务关联的fact，按factId分区执行时到期任务会被分配到该fact所在的执行线程，可能为null
+     */
+    public Fact getFact() {
+        return fact;
+    }
+
+    /**
+     * 取消任务，只是修改状态，实际的移除由时间轮线程在下一个刻度完成，任务已经到期时返回false
+     */
+    public boolean cancel() {
+        if (!state.compareAndSet(ST_INIT, ST_CANCELLED)) {
+            return false;
+        }
+        timer.cancelled(this);
+        RecyclableFact.release(fact);
+        return true;
+    }
+
+    public boolean isCancelled() {
+        return state.get() == ST_CANCELLED;
+    }
+
+    public boolean isExpired() {
+        return state.get() == ST_EXPIRED;
+    }
+
+    boolean expire() {
+        return state.compareAndSet(ST_INIT, ST_EXPIRED);
+    }
+
+    @Override
+    public void run() {
+        try {
+            task.run(this);
+        } finally {
+            RecyclableFact.release(fact);
+        }
+    }
+
+    /**
+     * 已到期的任务不再执行，释放持有的fact
+     */
+    void discard() {
+        RecyclableFact.release(fact);
+    }
+
+    /**
+     * 时间轮的一个槽位，使用双向链表保存任务，只由时间轮线程访问
+     */
+    static final class Bucket {
+
+        private Timeout head;
+
+        private Timeout tail;
+
+        void add(Timeout timeout) {
+            timeout.bucket = this;
+            if (head == null) {
+                head = tail = timeout;
+            } else {
+                tail.next = timeout;
+                timeout.prev = tail;
+                tail = timeout;
+            }
+        }
+
+        void remove(Timeout timeout) {
+            Timeout next = timeout.next;
+            if (timeout.prev != null) {
+                timeout.prev.next = next;
+            }
+            if (next != null) {
+                next.prev = timeout.prev;
+            }
+            if (timeout == head) {
+                head = next;
+            }
+            if (timeout == tail) {
+                tail = timeout.prev;
+            }
+            timeout.prev = null;
+            timeout.next = null;
+            timeout.bucket = null;
+        }
+
+        /**
+         * 取出已经到期的任务放入expired中，其它任务的剩余圈数减1。
+         * 槽位和圈数由到期时间计算，圈数为0时任务应当已经到期；否则重新放入时间轮，不会被丢弃
+         */
+        void expire(long deadline, List<Timeout> expired) {
+            Timeout timeout = head;
+            while (timeout != null) {
+                Timeout next = timeout.next;
+                if (timeout.remainingRounds <= 0) {
+                    remove(timeout);
+                    if (timeout.deadline > deadline) {
+                        if (!timeout.isCancelled()) {
+                            timeout.timer.reschedule(timeout);
+                        }
+                    } else if (timeout.expire()) {
+                        expired.add(timeout);
+                    }
+                } else if (timeout.isCancelled()) {
+                    remove(timeout);
+                } else {
+                    timeout.remainingRounds--;
+                }
+                timeout = next;
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,11 @@
+package com.github.davidfantasy.fastrule.timer;
+
+/**
+ * 到期后执行的任务
+ */
+@FunctionalInterface
+public interface TimerTask {
+
+    void run(Timeout timeout);
+
+}
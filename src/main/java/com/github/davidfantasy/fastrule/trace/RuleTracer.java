@@ -0,0 +1,190 @@
+package com.github.davidfantasy.fastrule.trace;
+
+import com.github.davidfantasy.fastrule.Rule;
+import com.github.davidfantasy.fastrule.fact.Fact;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 规则执行的跟踪器，用于在生产环境中针对个别规则排查问题，而不需要全局开启debug日志。
+ * 可以按规则开启跟踪并设置采样率，跟踪记录写入固定容量的环形缓冲区，旧的记录会被覆盖，通过dump随时导出。
+ * 没有开启任何跟踪时，执行线程只需要读取一次isActive；写入记录时复用缓冲区中预先分配的槽位，不会产生新的对象
+ */
+public class RuleTracer {
+
+    private final int capacity;
+
+    private final Map<String, Double> ruleSamplingRates = new ConcurrentHashMap<>();
+
+    /**
+     * 对所有规则生效的采样率，0表示未开启
+     */
+    private volatile double globalSamplingRate;
+
+    private volatile boolean active;
+
+    private final AtomicLong cursor = new AtomicLong();
+
+    /**
+     * 第一次开启跟踪时才分配
+     */
+    private volatile Slot[] slots;
+
+    public RuleTracer() {
+        this(1024);
+    }
+
+    /**
+     * @param capacity 最多保留的跟踪记录数，必须是2的幂
+     */
+    public RuleTracer(int capacity) {
+        if (Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("capacity must be a power of 2");
+        }
+        this.capacity = capacity;
+    }
+
+    /**
+     * 开启单个规则的跟踪
+     *
+     * @param samplingRate 采样率，取值范围(0, 1]
+     */
+    public synchronized void enable(String ruleId, double samplingRate) {
+        checkSamplingRate(samplingRate);
+        ruleSamplingRates.put(ruleId, samplingRate);
+        refresh();
+    }
+
+    public synchronized void disable(String ruleId) {
+        ruleSamplingRates.remove(ruleId);
+        refresh();
+    }
+
+    /**
+     * 开启所有规则的跟踪，单独开启了跟踪的规则仍然使用各自的采样率
+     */
+    public synchronized void enableAll(double samplingRate) {
+        checkSamplingRate(samplingRate);
+        globalSamplingRate = samplingRate;
+        refresh();
+    }
+
+    public synchronized void disableAll() {
+        ruleSamplingRates.clear();
+        globalSamplingRate = 0;
+        refresh();
+    }
+
+    public boolean isActive() {
+        return active;
+    }
+
+    /**
+     * 记录一次规则执行的结果，调用方应先判断isActive，未开启跟踪的规则或未被采样时不会记录
+     */
+    public void trace(Rule rule, Fact fact, TraceEvent event, String detail) {
+        Slot[] slots = this.slots;
+        if (slots == null || !sampled(rule.getId())) {
+            return;
+        }
+        long sequence = cursor.getAndIncrement();
+        Slot slot = slots[(int) (sequence & (capacity - 1))];
+        slot.sequence = -1;
+        slot.timestamp = System.currentTimeMillis();
+        slot.threadName = Thread.currentThread().getName();
+        slot.ruleId = rule.getId();
+        slot.factId = fact.getId();
+        slot.event = event;
+        slot.detail = detail;
+        slot.sequence = sequence;
+    }
+
+    /**
+     * 按写入顺序导出缓冲区中当前保留的跟踪记录，正在被覆盖的记录会被忽略
+     */
+    public List<TraceRecord> dump() {
+        Slot[] slots = this.slots;
+        if (slots == null) {
+            return List.of();
+        }
+        long end = cursor.get();
+        long start = Math.max(0, end - capacity);
+        List<TraceRecord> records = new ArrayList<>((int) (end - start));
+        for (long sequence = start; sequence < end; sequence++) {
+            Slot slot = slots[(int) (sequence & (capacity - 1))];
+            if (slot.sequence != sequence) {
+                continue;
+            }
+            TraceRecord record = new TraceRecord(sequence, slot.timestamp, slot.threadName, slot.ruleId, slot.factId,
+                    slot.event, slot.detail);
+            if (slot.sequence == sequence) {
+                records.add(record);
+            }
+        }
+        return records;
+    }
+
+    /**
+     * 清空已有的跟踪记录
+     */
+    public synchronized void clear() {
+        if (slots != null) {
+            slots = newSlots();
+        }
+    }
+
+    private boolean sampled(String ruleId) {
+        Double rate = ruleSamplingRates.get(ruleId);
+        double samplingRate = rate != null ? rate : globalSamplingRate;
+        return samplingRate >= 1 || (samplingRate > 0 && ThreadLocalRandom.current().nextDouble() < samplingRate);
+    }
+
+    private void refresh() {
+        boolean active = globalSamplingRate > 0 || !ruleSamplingRates.isEmpty();
+        if (active && slots == null) {
+            slots = newSlots();
+        }
+        this.active = active;
+    }
+
+    private Slot[] newSlots() {
+        Slot[] slots = new Slot[capacity];
+        for (int i = 0; i < capacity; i++) {
+            slots[i] = new Slot();
+        }
+        return slots;
+    }
+
+    private static void checkSamplingRate(double samplingRate) {
+        if (!(samplingRate > 0 && samplingRate <= 1)) {
+            throw new IllegalArgumentException("samplingRate must be in (0, 1]");
+        }
+    }
+
+    /**
+     * 缓冲区中的槽位，sequence为-1表示正在写入
+     */
+    private static final class Slot {
+
+        volatile long sequence = -1;
+
+        long timestamp;
+
+        String threadName;
+
+        String ruleId;
+
+        String factId;
+
+        TraceEvent event;
+
+        String detail;
+
+    }
+
+}
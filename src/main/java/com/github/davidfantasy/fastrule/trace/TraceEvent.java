@@ -0,0 +1,24 @@
+package com.github.davidfantasy.fastrule.trace;
+
+public enum TraceEvent {
+    /**
+     * 规则的preEvaluate返回了false
+     */
+    DROP,
+    /**
+     * 规则条件满足
+     */
+    HIT,
+    /**
+     * 规则条件不满足
+     */
+    MISS,
+    /**
+     * 规则执行过程中发生了异常
+     */
+    FAIL,
+    /**
+     * 优先级模式下后续的规则被跳过，detail为触发跳过的参数名
+     */
+    SKIP
+}
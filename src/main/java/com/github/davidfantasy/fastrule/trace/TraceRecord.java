@@ -0,0 +1,12 @@
+package com.github.davidfantasy.fastrule.trace;
+
+/**
+ * 一条规则执行的跟踪记录
+ *
+ * @param sequence  记录的序号，按写入顺序递增
+ * @param timestamp 记录的时间（毫秒）
+ * @param detail    附加信息，例如异常信息，可能为null
+ */
+public record TraceRecord(long sequence, long timestamp, String threadName, String ruleId, String factId,
+                          TraceEvent event, String detail) {
+}
@@ -0,0 +1,76 @@
+package com.github.davidfantasy.fastrule;
+
+import com.github.davidfantasy.fastrule.fact.Fact;
+import com.github.davidfantasy.fastrule.fact.SimpleFact;
+import com.github.davidfantasy.fastrule.fact.collector.CachedQueueCollector;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+
+public class TestCachedQueueCollector {
+
+    @Test
+    public void testDropOnFull() {
+        TestCollector collector = new TestCollector(3, 10);
+        for (int i = 0; i < 5; i++) {
+            collector.offer(new SimpleFact("fact" + i, "v", i, null));
+        }
+        Assertions.assertEquals(2, collector.getDroppedCount());
+        Assertions.assertEquals(List.of("fact0", "fact1", "fact2"), collector.collect().stream().map(Fact::getId).toList());
+        //取出后有空位，可以继续写入
+        collector.offer(new SimpleFact("fact5", "v", 5, null));
+        Assertions.assertEquals(List.of("fact5"), collector.collect().stream().map(Fact::getId).toList());
+    }
+
+    @Test
+    public void testBoundedWait() {
+        TestCollector collector = new TestCollector(16, 100);
+        long start = System.currentTimeMillis();
+        Assertions.assertTrue(collector.collect().isEmpty());
+        Assertions.assertTrue(System.currentTimeMillis() - start >= 100);
+    }
+
+    @Test
+    public void testConcurrentProducers() throws InterruptedException {
+        TestCollector collector = new TestCollector(1024, 0);
+        int producers = 4;
+        int perProducer = 50000;
+        CountDownLatch latch = new CountDownLatch(producers);
+        for (int p = 0; p < producers; p++) {
+            int id = p;
+            new Thread(() -> {
+                for (int i = 0; i < perProducer; i++) {
+                    Fact fact = new SimpleFact(id + "-" + i, "v", i, null);
+                    //队列已满时重试，保证所有fact最终都被取出
+                    while (!collector.offer(fact)) {
+                        Thread.yield();
+                    }
+                }
+                latch.countDown();
+            }).start();
+        }
+        Set<String> ids = new HashSet<>();
+        while (ids.size() < producers * perProducer) {
+            collector.collect().forEach(fact -> Assertions.assertTrue(ids.add(fact.getId())));
+        }
+        latch.await();
+        Assertions.assertEquals(0, collector.getQueueSize());
+    }
+
+    private static class TestCollector extends CachedQueueCollector {
+
+        TestCollector(int capacity, long maxWaitMs) {
+            super(capacity, maxWaitMs);
+        }
+
+        boolean offer(Fact fact) {
+            return addFact(fact);
+        }
+
+    }
+
+}
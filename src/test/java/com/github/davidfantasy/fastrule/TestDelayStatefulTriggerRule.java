@@ -1,11 +1,14 @@
 package com.github.davidfantasy.fastrule;
 
+import com.github.davidfantasy.fastrule.fact.Fact;
 import com.github.davidfantasy.fastrule.fact.SimpleFact;
 import com.github.davidfantasy.fastrule.mock.SimpleDelayStatefulTriggerRule;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import java.util.List;
+
 public class TestDelayStatefulTriggerRule {
 
     private RuleEngine ruleEngine;
@@ -61,4 +64,100 @@ public class TestDelayStatefulTriggerRule {
         Assertions.assertEquals(1, rule.getHitFacts().size());
     }
 
+    @Test
+    public void testCancelDelay() throws InterruptedException {
+        SimpleDelayStatefulTriggerRule rule = new SimpleDelayStatefulTriggerRule("rule1", (fact) -> {
+            int v = Integer.parseInt(fact.getValue("v").toString());
+            return v < 10;
+        }, 1000L);
+        rule.enable();
+        ruleManager.add(rule);
+        ruleEngine.fire(new SimpleFact("fact1", "v", 7, null), true);
+        ruleEngine.fire(new SimpleFact("fact2", "v", 7, null), true);
+        Thread.sleep(100);
+        //fact1恢复，取消其延迟触发
+        ruleEngine.fire(new SimpleFact("fact1", "v", 11, null), true);
+        Thread.sleep(1100);
+        Assertions.assertEquals(List.of("fact2"), rule.getHitFacts().stream().map(Fact::getId).toList());
+    }
+
+    @Test
+    public void testStatePerFact() throws InterruptedException {
+        SimpleDelayStatefulTriggerRule rule = new SimpleDelayStatefulTriggerRule("rule1", (fact) -> {
+            int v = Integer.parseInt(fact.getValue("v").toString());
+            return v < 10;
+        }, null);
+        rule.enable();
+        ruleManager.add(rule);
+        ruleEngine.fire(new SimpleFact("fact1", "v", 7, null), true);
+        //fact1已触发，不影响fact2的触发
+        ruleEngine.fire(new SimpleFact("fact2", "v", 7, null), true);
+        ruleEngine.fire(new SimpleFact("fact1", "v", 8, null), true);
+        Thread.sleep(100);
+        Assertions.assertEquals(List.of("fact1", "fact2"), rule.getHitFacts().stream().map(Fact::getId).sorted().toList());
+        Assertions.assertTrue(rule.hasTriggered("fact1"));
+        Assertions.assertEquals(2, rule.getStateSize());
+        //恢复后不再保存fact2的状态
+        ruleEngine.fire(new SimpleFact("fact2", "v", 11, null), true);
+        Thread.sleep(100);
+        Assertions.assertFalse(rule.hasTriggered("fact2"));
+        Assertions.assertEquals(1, rule.getStateSize());
+    }
+
+    @Test
+    public void testStateTtl() throws InterruptedException {
+        SimpleDelayStatefulTriggerRule rule = new SimpleDelayStatefulTriggerRule("rule1", (fact) -> true, null);
+        rule.setStateTtlMs(100);
+        rule.executeThen(new SimpleFact("fact1", "v", 1, null));
+        Assertions.assertTrue(rule.hasTriggered("fact1"));
+        Thread.sleep(1100);
+        //清理由后续的执行顺带触发，fact1空闲超时被清理，fact2正常保存
+        rule.executeThen(new SimpleFact("fact2", "v", 1, null));
+        Assertions.assertFalse(rule.hasTriggered("fact1"));
+        Assertions.assertTrue(rule.hasTriggered("fact2"));
+        Assertions.assertEquals(1, rule.getStateSize());
+    }
+
+    @Test
+    public void testRuleTriggeredStatus() {
+        SimpleDelayStatefulTriggerRule rule = new SimpleDelayStatefulTriggerRule("rule1", (fact) -> true, null);
+        //设置整个规则为已触发，之前没有出现过的fact也不会触发
+        rule.setTriggeredStatus(true);
+        Assertions.assertTrue(rule.hasTriggered());
+        rule.executeThen(new SimpleFact("fact1", "v", 1, null));
+        Assertions.assertEquals(0, rule.getHitFacts().size());
+        rule.setTriggeredStatus(false);
+        rule.executeThen(new SimpleFact("fact1", "v", 1, null));
+        Assertions.assertEquals(1, rule.getHitFacts().size());
+        //替换后的规则继承整个规则的触发状态
+        rule.setTriggeredStatus(true);
+        SimpleDelayStatefulTriggerRule replaced = new SimpleDelayStatefulTriggerRule("rule1", (fact) -> true, null);
+        replaced.mergeState(rule);
+        replaced.executeThen(new SimpleFact("fact2", "v", 1, null));
+        Assertions.assertEquals(0, replaced.getHitFacts().size());
+        Assertions.assertTrue(replaced.hasTriggered("fact1"));
+    }
+
+    @Test
+    public void testMergeStateCopiesState() throws InterruptedException {
+        SimpleDelayStatefulTriggerRule rule = new SimpleDelayStatefulTriggerRule("rule1", (fact) -> true, null);
+        rule.executeThen(new SimpleFact("fact1", "v", 1, null));
+        SimpleDelayStatefulTriggerRule replaced = new SimpleDelayStatefulTriggerRule("rule1", (fact) -> true, null);
+        replaced.mergeState(rule);
+        Assertions.assertTrue(replaced.hasTriggered());
+        //替换后的规则修改的是状态的副本，不影响原规则
+        replaced.setTriggeredStatus("fact1", false);
+        Assertions.assertFalse(replaced.hasTriggered());
+        Assertions.assertTrue(rule.hasTriggered("fact1"));
+        //等待中的延迟触发由新规则按原到期时间执行
+        SimpleDelayStatefulTriggerRule delayed = new SimpleDelayStatefulTriggerRule("rule2", (fact) -> true, 1000L);
+        delayed.executeThen(new SimpleFact("fact2", "v", 1, null));
+        SimpleDelayStatefulTriggerRule delayedReplaced = new SimpleDelayStatefulTriggerRule("rule2", (fact) -> true, 1000L);
+        delayedReplaced.mergeState(delayed);
+        Thread.sleep(1300);
+        Assertions.assertEquals(0, delayed.getHitFacts().size());
+        Assertions.assertEquals(1, delayedReplaced.getHitFacts().size());
+        Assertions.assertTrue(delayedReplaced.hasTriggered("fact2"));
+    }
+
 }
@@ -0,0 +1,104 @@
+package com.github.davidfantasy.fastrule;
+
+import com.github.davidfantasy.fastrule.fact.Fact;
+import com.github.davidfantasy.fastrule.fact.FactPool;
+import com.github.davidfantasy.fastrule.fact.FactSchema;
+import com.github.davidfantasy.fastrule.fact.SchemaFact;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class TestFactPool {
+
+    private RuleEngine ruleEngine;
+
+    private RuleManager ruleManager;
+
+    private FactSchema schema;
+
+    @BeforeEach
+    public void beforeEachTest() {
+        ruleManager = new DefaultRuleManager();
+        ruleEngine = new DefaultRuleEngine(ruleManager, RulesEngineConfig.builder().build());
+        ruleEngine.start();
+        schema = FactSchema.builder().doubleField("v").build();
+    }
+
+    @Test
+    public void testRecycle() throws InterruptedException {
+        AtomicInteger hits = new AtomicInteger();
+        AtomicInteger misses = new AtomicInteger();
+        BaseRule rule = new BaseRule("rule1", "rule1", 1, null, fact -> fact.getValue("v") != null && (double) fact.getValue("v") > 5) {
+            @Override
+            public void executeThen(Fact fact) {
+                hits.incrementAndGet();
+            }
+
+            @Override
+            public void executeElse(Fact fact) {
+                misses.incrementAndGet();
+            }
+        };
+        rule.enable();
+        ruleManager.add(rule);
+        FactPool pool = new FactPool(schema, 1000);
+        for (int round = 0; round < 10; round++) {
+            for (int i = 0; i < 100; i++) {
+                ruleEngine.fire(pool.acquire("fact" + i, null).setValue("v", (double) i), false);
+            }
+            Thread.sleep(100);
+        }
+        Assertions.assertEquals(1000, hits.get() + misses.get());
+        Assertions.assertEquals(940, hits.get());
+        //每一轮的fact处理完成后都被归还，后续轮次复用池中的fact
+        Assertions.assertTrue(pool.getCreatedCount() <= 100, "created: " + pool.getCreatedCount());
+        Assertions.assertEquals(pool.getCreatedCount(), pool.getIdleCount());
+        //归还后的fact字段被重置
+        Assertions.assertNull(pool.acquire("fact", null).getValue("v"));
+    }
+
+    @Test
+    public void testDelayedFactRetained() throws InterruptedException {
+        List<String> hits = new CopyOnWriteArrayList<>();
+        DelayStatefulTriggerRule rule = new DelayStatefulTriggerRule("rule1", "rule1", 1, null, fact -> true, 1000L) {
+            @Override
+            protected boolean doExecuteThen(Fact fact) {
+                hits.add(fact.getId() + ":" + fact.getValue("v"));
+                return true;
+            }
+
+            @Override
+            protected boolean doExecuteElse(Fact fact) {
+                return true;
+            }
+        };
+        rule.enable();
+        ruleManager.add(rule);
+        FactPool pool = new FactPool(schema, 10);
+        ruleEngine.fire(pool.acquire("fact1", null).setValue("v", 1.0), false);
+        Thread.sleep(100);
+        //等待延迟触发期间fact被时间轮持有，不会归还
+        Assertions.assertEquals(0, pool.getIdleCount());
+        Thread.sleep(1100);
+        Assertions.assertEquals(List.of("fact1:1.0"), hits);
+        Assertions.assertEquals(1, pool.getIdleCount());
+    }
+
+    @Test
+    public void testReleaseTwice() {
+        FactPool pool = new FactPool(schema, 10);
+        SchemaFact fact = pool.acquire("fact1", null);
+        fact.release();
+        Assertions.assertEquals(1, pool.getIdleCount());
+        Assertions.assertThrows(IllegalStateException.class, fact::release);
+        //不属于对象池的fact不做引用计数
+        SchemaFact unpooled = new SchemaFact(schema, "fact2", null);
+        unpooled.release();
+        unpooled.release();
+    }
+
+}
@@ -0,0 +1,92 @@
+package com.github.davidfantasy.fastrule;
+
+import com.github.davidfantasy.fastrule.fact.Fact;
+import com.github.davidfantasy.fastrule.fact.SimpleFact;
+import com.github.davidfantasy.fastrule.mock.SimpleTestRule;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Flow;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.concurrent.TimeUnit;
+
+public class TestFactSource {
+
+    private RuleEngine ruleEngine;
+
+    private RuleManager ruleManager;
+
+    @BeforeEach
+    public void beforeEachTest() {
+        ruleManager = new DefaultRuleManager();
+        ruleEngine = new DefaultRuleEngine(ruleManager, RulesEngineConfig.builder().build());
+        ruleEngine.start();
+    }
+
+    @AfterEach
+    public void afterEachTest() {
+        ruleEngine.shutdown();
+    }
+
+    @Test
+    public void testSubscribe() throws InterruptedException {
+        SimpleTestRule rule1 = new SimpleTestRule("rule1", 1, fact -> {
+            int v = Integer.parseInt(fact.getValue("v").toString());
+            return v > 5 && v < 10;
+        });
+        ruleManager.add(rule1);
+        SubmissionPublisher<Fact> publisher = new SubmissionPublisher<>();
+        ruleEngine.subscribe("source1", publisher, 64, 50, false);
+        for (int i = 0; i < 1000; i++) {
+            publisher.submit(new SimpleFact("fact" + i, "v", i % 2 == 0 ? 7 : 4, null));
+        }
+        Thread.sleep(500);
+        Assertions.assertEquals(500, rule1.getHitFacts().size());
+        //未攒满一批的fact在等待超时后提交
+        publisher.submit(new SimpleFact("fact1", "v", 8, null));
+        Thread.sleep(300);
+        Assertions.assertEquals(501, rule1.getHitFacts().size());
+        Assertions.assertThrows(IllegalArgumentException.class, () -> ruleEngine.subscribe("source1", publisher, 64, 50, false));
+        ruleEngine.unsubscribe("source1");
+        publisher.submit(new SimpleFact("fact1", "v", 8, null));
+        Thread.sleep(300);
+        Assertions.assertEquals(501, rule1.getHitFacts().size());
+        publisher.close();
+    }
+
+    @Test
+    public void testCancelWhileFlushBlocked() throws Exception {
+        CountDownLatch entered = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        FactSubscriber subscriber = new FactSubscriber("source1", 1, facts -> {
+            entered.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        subscriber.onSubscribe(new Flow.Subscription() {
+            @Override
+            public void request(long n) {
+            }
+
+            @Override
+            public void cancel() {
+            }
+        });
+        CompletableFuture<Void> publishing = CompletableFuture.runAsync(() -> subscriber.onNext(new SimpleFact("fact1", "v", 1, null)));
+        Assertions.assertTrue(entered.await(1, TimeUnit.SECONDS));
+        //引擎阻塞发布线程时，超时提交和取消订阅都不会被阻塞
+        CompletableFuture.runAsync(subscriber::flushIfLingering).get(1, TimeUnit.SECONDS);
+        CompletableFuture.runAsync(subscriber::cancel).get(1, TimeUnit.SECONDS);
+        Assertions.assertTrue(subscriber.isDone());
+        release.countDown();
+        publishing.get(1, TimeUnit.SECONDS);
+    }
+
+}
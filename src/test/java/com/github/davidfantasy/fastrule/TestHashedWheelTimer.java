@@ -0,0 +1,56 @@
+package com.github.davidfantasy.fastrule;
+
+import com.github.davidfantasy.fastrule.timer.HashedWheelTimer;
+import com.github.davidfantasy.fastrule.timer.Timeout;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class TestHashedWheelTimer {
+
+    @Test
+    public void testScheduleAndCancel() throws InterruptedException {
+        //槽位数较少，部分任务需要时间轮转动多圈才会到期
+        HashedWheelTimer timer = new HashedWheelTimer("test-timer", 10, TimeUnit.MILLISECONDS, 8);
+        AtomicInteger executed = new AtomicInteger();
+        List<Timeout> timeouts = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            timeouts.add(timer.newTimeout(null, t -> executed.incrementAndGet(), 50 + i % 200, TimeUnit.MILLISECONDS));
+        }
+        for (int i = 0; i < timeouts.size(); i += 2) {
+            Assertions.assertTrue(timeouts.get(i).cancel());
+        }
+        Thread.sleep(30);
+        Assertions.assertEquals(0, executed.get());
+        Thread.sleep(500);
+        Assertions.assertEquals(500, executed.get());
+        Assertions.assertTrue(timeouts.get(1).isExpired());
+        Assertions.assertFalse(timeouts.get(1).cancel());
+        timer.stop();
+        Assertions.assertThrows(IllegalStateException.class,
+                () -> timer.newTimeout(null, t -> executed.incrementAndGet(), 10, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void testDeferredDispatch() throws InterruptedException {
+        //模拟事件队列已满：每个刻度最多分发一个任务，其余的任务保留到之后的刻度
+        AtomicInteger executed = new AtomicInteger();
+        HashedWheelTimer timer = new HashedWheelTimer("test-timer", 10, TimeUnit.MILLISECONDS, 8, timeouts -> {
+            timeouts.get(0).run();
+            return 1;
+        });
+        for (int i = 0; i < 5; i++) {
+            timer.newTimeout(null, t -> executed.incrementAndGet(), 10, TimeUnit.MILLISECONDS);
+        }
+        Thread.sleep(40);
+        Assertions.assertTrue(executed.get() < 5, "executed: " + executed.get());
+        Thread.sleep(200);
+        Assertions.assertEquals(5, executed.get());
+        timer.stop();
+    }
+
+}
@@ -1,20 +1,38 @@
 package com.github.davidfantasy.fastrule;
 
+import com.github.davidfantasy.fastrule.condition.AndCondition;
 import com.github.davidfantasy.fastrule.condition.Condition;
+import com.github.davidfantasy.fastrule.condition.OrCondition;
+import com.github.davidfantasy.fastrule.fact.Fact;
+import com.github.davidfantasy.fastrule.fact.FactSchema;
+import com.github.davidfantasy.fastrule.fact.SchemaFact;
 import com.github.davidfantasy.fastrule.fact.SimpleFact;
+import com.github.davidfantasy.fastrule.janino.ConditionCompiler;
 import com.github.davidfantasy.fastrule.janino.JaninoCondition;
 import com.github.davidfantasy.fastrule.janino.JaninoRule;
+import com.github.davidfantasy.fastrule.mock.SimpleTestRule;
 import lombok.extern.slf4j.Slf4j;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
 
 @Slf4j
 public class TestJaninoRule {
 
+    private static final AtomicInteger evaluations = new AtomicInteger();
+
+    public static int count(int v) {
+        evaluations.incrementAndGet();
+        return v;
+    }
+
     private RuleEngine ruleEngine;
 
     private RuleManager ruleManager;
@@ -42,5 +60,166 @@ public class TestJaninoRule {
         Assertions.assertEquals(400, resultMap.get("number"));
     }
 
+    @Test
+    public void testNumericParameterConversion() {
+        //和ExpressionEvaluator一样，基本类型的参数可以接受其它数值类型的值
+        JaninoCondition condition = new JaninoCondition("a > 10.5 && b > 2", new String[]{"a", "b"},
+                new Class[]{double.class, long.class});
+        SimpleFact fact = new SimpleFact("fact1", "a", 11, null);
+        fact.addValue("b", 3);
+        Assertions.assertTrue(condition.evaluate(fact));
+        fact.addValue("b", 2.0f);
+        Assertions.assertFalse(condition.evaluate(fact));
+    }
+
+    @Test
+    public void testSchemaBinding() {
+        FactSchema schema = FactSchema.builder().doubleField("temp").longField("count").objectField("status").build();
+        JaninoCondition temp = new JaninoCondition("temp > 30.5 && count > 2", new String[]{"temp", "count"},
+                new Class[]{double.class, int.class}, schema);
+        JaninoCondition status = new JaninoCondition("\"ON\".equals(status)", new String[]{"status"},
+                new Class[]{String.class}, schema);
+        SchemaFact fact = new SchemaFact(schema, "fact1", null)
+                .setValue("temp", 31.5).setValue("count", 3).setValue("status", "ON");
+        Assertions.assertTrue(temp.evaluate(fact));
+        Assertions.assertEquals(31.5, fact.getValue("temp"));
+        Assertions.assertEquals(3L, fact.getValue("count"));
+        fact.setValue("count", 1);
+        Assertions.assertFalse(temp.evaluate(fact));
+        //编译后的条件树同样按槽位读取
+        Condition compiled = ConditionCompiler.compile(new AndCondition(List.of(temp, status)));
+        fact.setValue("count", 5);
+        Assertions.assertTrue(compiled.evaluate(fact));
+        fact.setValue("status", "OFF");
+        Assertions.assertFalse(compiled.evaluate(fact));
+        //其它fact仍然按字段名读取
+        SimpleFact simpleFact = new SimpleFact("fact2", "temp", 40.0, null);
+        simpleFact.addValue("count", 3);
+        Assertions.assertTrue(temp.evaluate(simpleFact));
+    }
+
+    @Test
+    public void testSchemaNumericConversion() {
+        //字段类型和参数类型不一致时，按槽位和按字段名读取都转换为参数类型
+        FactSchema schema = FactSchema.builder().doubleField("temp").longField("count").build();
+        JaninoCondition condition = new JaninoCondition("temp > 30.5f && count > 2.5f", new String[]{"temp", "count"},
+                new Class[]{float.class, float.class}, schema);
+        SchemaFact fact = new SchemaFact(schema, "fact1", null).setValue("temp", 31.5).setValue("count", 3);
+        Assertions.assertTrue(condition.evaluate(fact));
+        fact.setValue("count", 2);
+        Assertions.assertFalse(condition.evaluate(fact));
+        JaninoCondition count = new JaninoCondition("count > 2", new String[]{"count"}, new Class[]{int.class}, schema);
+        SimpleFact simpleFact = new SimpleFact("fact2", "count", 3L, null);
+        Assertions.assertTrue(count.evaluate(simpleFact));
+        simpleFact.addValue("count", 2.0);
+        Assertions.assertFalse(count.evaluate(simpleFact));
+        SimpleFact otherFact = new SimpleFact("fact3", "temp", 40L, null);
+        otherFact.addValue("count", 3);
+        Assertions.assertTrue(condition.evaluate(otherFact));
+    }
+
+    @Test
+    public void testEvaluateBatch() {
+        FactSchema schema = FactSchema.builder().doubleField("temp").longField("count").build();
+        JaninoCondition condition = new JaninoCondition("temp > 30.5 && count > 2", new String[]{"temp", "count"},
+                new Class[]{double.class, int.class}, schema);
+        List<Fact> facts = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            facts.add(new SchemaFact(schema, "fact" + i, null).setValue("temp", 28.5 + i).setValue("count", i));
+        }
+        //其它类型的fact在同一批中按字段名读取
+        SimpleFact simpleFact = new SimpleFact("simple", "temp", 40.0, null);
+        simpleFact.addValue("count", 3);
+        facts.add(simpleFact);
+        BitSet out = new BitSet();
+        condition.evaluateBatch(facts, out);
+        Assertions.assertEquals(BitSet.valueOf(new long[]{0b111111000L}), out);
+        for (int i = 0; i < facts.size(); i++) {
+            Assertions.assertEquals(condition.evaluate(facts.get(i)), out.get(i));
+        }
+        //编译后的条件树同样支持批量匹配
+        Condition compiled = ConditionCompiler.compile(new AndCondition(List.of(condition,
+                new JaninoCondition("count < 7", new String[]{"count"}, new Class[]{int.class}, schema))));
+        BitSet compiledOut = new BitSet();
+        compiled.evaluateBatch(facts, compiledOut);
+        Assertions.assertEquals(BitSet.valueOf(new long[]{0b101111000L}), compiledOut);
+    }
+
+    @Test
+    public void testCompiledCondition() {
+        AtomicInteger customCalls = new AtomicInteger();
+        Condition custom = fact -> {
+            customCalls.incrementAndGet();
+            return "on".equals(fact.getValue("status"));
+        };
+        //(a > 10 || status == "on") && b < 5
+        Condition tree = new AndCondition(new ArrayList<>(List.of(
+                new OrCondition(new ArrayList<>(List.of(
+                        new JaninoCondition("a > 10", new String[]{"a"}, new Class[]{int.class}),
+                        custom))),
+                new JaninoCondition("b < 5", new String[]{"b"}, new Class[]{Integer.class}))));
+        Condition compiled = ConditionCompiler.compile(tree);
+        Assertions.assertNotSame(tree, compiled);
+        int[][] cases = {{11, 4, 0}, {11, 5, 0}, {3, 4, 0}, {3, 4, 1}, {3, 6, 1}};
+        for (int[] c : cases) {
+            SimpleFact fact = new SimpleFact("fact1", "a", c[0], null);
+            fact.addValue("b", c[1]);
+            fact.addValue("status", c[2] == 1 ? "on" : "off");
+            Assertions.assertEquals(tree.evaluate(fact), compiled.evaluate(fact));
+        }
+        //a > 10成立时不会再执行自定义条件
+        customCalls.set(0);
+        SimpleFact fact = new SimpleFact("fact1", "a", 11, null);
+        fact.addValue("b", 1);
+        Assertions.assertTrue(compiled.evaluate(fact));
+        Assertions.assertEquals(0, customCalls.get());
+        //内联的条件同样按数值类型转换参数，失败时的异常包含表达式
+        Condition numeric = ConditionCompiler.compile(new AndCondition(new ArrayList<>(List.of(
+                new JaninoCondition("c > 1.5", new String[]{"c"}, new Class[]{double.class})))));
+        Assertions.assertTrue(numeric.evaluate(new SimpleFact("fact1", "c", 2, null)));
+        RuntimeException error = Assertions.assertThrows(RuntimeException.class,
+                () -> numeric.evaluate(new SimpleFact("fact1", "other", 2, null)));
+        Assertions.assertEquals("evaluate rule error：c > 1.5", error.getMessage());
+    }
+
+    @Test
+    public void testSharedConditionSurvivesGc() {
+        String[] names = {"v"};
+        Class<?>[] types = {int.class};
+        JaninoCondition c1 = new JaninoCondition("v > 100", names, types);
+        System.gc();
+        //条件还在使用时，共享的编译结果和备忘录槽位不会被回收
+        JaninoCondition c2 = new JaninoCondition("v > 100", names, types);
+        Assertions.assertEquals(c1.getMemoSlot(), c2.getMemoSlot());
+    }
+
+    @Test
+    public void testSharedCondition() throws InterruptedException {
+        String[] names = {"v"};
+        Class<?>[] types = {int.class};
+        String expression = "com.github.davidfantasy.fastrule.TestJaninoRule.count(v) > 5";
+        JaninoCondition c1 = new JaninoCondition(expression, names, types);
+        JaninoCondition c2 = new JaninoCondition("com.github.davidfantasy.fastrule.TestJaninoRule.count( v )>5", names, types);
+        JaninoCondition c3 = new JaninoCondition(expression, names, new Class[]{Integer.class});
+        Assertions.assertEquals(c1.getMemoSlot(), c2.getMemoSlot());
+        Assertions.assertNotEquals(c1.getMemoSlot(), c3.getMemoSlot());
+        SimpleTestRule rule1 = new SimpleTestRule("rule1", 1, c1);
+        SimpleTestRule rule2 = new SimpleTestRule("rule2", 2, c2);
+        SimpleTestRule rule3 = new SimpleTestRule("rule3", 3, ConditionCompiler.compile(c1));
+        ruleManager.addAll(List.of(rule1, rule2, rule3));
+        evaluations.set(0);
+        ruleEngine.fire(new SimpleFact("fact1", "v", 7, null), true);
+        Thread.sleep(100);
+        Assertions.assertEquals(1, rule1.getHitFacts().size());
+        Assertions.assertEquals(1, rule2.getHitFacts().size());
+        Assertions.assertEquals(1, rule3.getHitFacts().size());
+        //三个规则共享同一个条件，同一次触发只需计算一次
+        Assertions.assertEquals(1, evaluations.get());
+        //不同的触发之间不会复用结果
+        ruleEngine.fire(new SimpleFact("fact1", "v", 3, null), true);
+        Thread.sleep(100);
+        Assertions.assertEquals(3, rule1.getMissFacts().size() + rule2.getMissFacts().size() + rule3.getMissFacts().size());
+        Assertions.assertEquals(2, evaluations.get());
+    }
 
 }
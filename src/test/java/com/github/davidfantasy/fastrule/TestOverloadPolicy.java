@@ -0,0 +1,96 @@
+package com.github.davidfantasy.fastrule;
+
+import com.github.davidfantasy.fastrule.executor.OverloadPolicy;
+import com.github.davidfantasy.fastrule.fact.Fact;
+import com.github.davidfantasy.fastrule.fact.SimpleFact;
+import com.github.davidfantasy.fastrule.mock.SimpleTestRule;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+public class TestOverloadPolicy {
+
+    private RuleEngine ruleEngine;
+
+    private final CountDownLatch blocker = new CountDownLatch(1);
+
+    @AfterEach
+    public void afterEachTest() {
+        blocker.countDown();
+        ruleEngine.shutdown();
+    }
+
+    @Test
+    public void testReject() throws InterruptedException {
+        SimpleTestRule rule = startEngine(OverloadPolicy.REJECT);
+        int accepted = 0;
+        for (int i = 0; i < 10; i++) {
+            if (ruleEngine.fire(new SimpleFact("fact" + i, "v", i, null), false) == FireResult.ACCEPTED) {
+                accepted++;
+            }
+        }
+        blocker.countDown();
+        Thread.sleep(500);
+        Assertions.assertTrue(ruleEngine.getRejectedFactCount() > 0);
+        Assertions.assertEquals(10, accepted + ruleEngine.getRejectedFactCount());
+        Assertions.assertEquals(accepted, rule.getHitFacts().size());
+    }
+
+    @Test
+    public void testSpill() throws InterruptedException {
+        SimpleTestRule rule = startEngine(OverloadPolicy.SPILL);
+        boolean queued = false;
+        for (int i = 0; i < 10; i++) {
+            queued |= ruleEngine.fire(new SimpleFact("fact", "v", i, null), false) == FireResult.QUEUED;
+        }
+        Assertions.assertTrue(queued);
+        blocker.countDown();
+        Thread.sleep(500);
+        List<Object> values = rule.getHitFacts().stream().map(f -> f.getValue("v")).toList();
+        Assertions.assertEquals(List.of(0, 1, 2, 3, 4, 5, 6, 7, 8, 9), values);
+        Assertions.assertEquals(0, ruleEngine.getRejectedFactCount());
+    }
+
+    @Test
+    public void testDropOldest() throws InterruptedException {
+        SimpleTestRule rule = startEngine(OverloadPolicy.DROP_OLDEST);
+        for (int i = 0; i < 10; i++) {
+            ruleEngine.fire(new SimpleFact("fact", "v", i, null), false);
+        }
+        blocker.countDown();
+        Thread.sleep(500);
+        List<Fact> hitFacts = rule.getHitFacts();
+        Assertions.assertTrue(ruleEngine.getDroppedFactCount() > 0);
+        Assertions.assertEquals(10, hitFacts.size() + ruleEngine.getDroppedFactCount());
+        //同一个factId只保留最新的值
+        Assertions.assertEquals(9, hitFacts.get(hitFacts.size() - 1).getValue("v"));
+    }
+
+    private SimpleTestRule startEngine(OverloadPolicy policy) {
+        RuleManager ruleManager = new DefaultRuleManager();
+        ruleEngine = new DefaultRuleEngine(ruleManager, RulesEngineConfig.builder()
+                .ringBufferSize(2)
+                .executorThreadPoolSize(1)
+                .overloadPolicy(policy)
+                .overflowQueueCapacity(100)
+                .build());
+        ruleEngine.start();
+        SimpleTestRule rule = new SimpleTestRule("rule1", 1, fact -> true) {
+            @Override
+            public void executeThen(Fact fact) {
+                try {
+                    blocker.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                super.executeThen(fact);
+            }
+        };
+        ruleManager.add(rule);
+        return rule;
+    }
+
+}
@@ -1,8 +1,11 @@
 package com.github.davidfantasy.fastrule;
 
 
+import com.github.davidfantasy.fastrule.condition.Condition;
+import com.github.davidfantasy.fastrule.executor.ActionExecutor;
 import com.github.davidfantasy.fastrule.fact.Fact;
 import com.github.davidfantasy.fastrule.fact.SimpleFact;
+import com.github.davidfantasy.fastrule.janino.JaninoCondition;
 import com.github.davidfantasy.fastrule.mock.MockManualCollector;
 import com.github.davidfantasy.fastrule.mock.SimpleTestRule;
 import lombok.extern.slf4j.Slf4j;
@@ -11,7 +14,17 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
 import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 @Slf4j
 public class TestRuleEngine {
@@ -51,6 +64,314 @@ public class TestRuleEngine {
         Assertions.assertTrue(missedFacts.contains("fact4"));
     }
 
+    @Test
+    public void testFireAll() throws InterruptedException {
+        SimpleTestRule rule1 = new SimpleTestRule("rule1", 1, fact -> {
+            int v = Integer.parseInt(fact.getValue("v").toString());
+            return v > 5;
+        });
+        SimpleTestRule rule2 = new SimpleTestRule("rule2", 2, fact -> true);
+        ruleManager.add(rule1);
+        ruleManager.add(rule2);
+        List<Fact> facts = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            facts.add(new SimpleFact("fact" + i, "v", i, null));
+        }
+        ruleEngine.fireAll(facts, false);
+        ruleEngine.fireAll(facts, true);
+        Thread.sleep(500);
+        Assertions.assertEquals(8, rule1.getHitFacts().size());
+        Assertions.assertEquals(12, rule1.getMissFacts().size());
+        Assertions.assertEquals(20, rule2.getHitFacts().size());
+    }
+
+    @Test
+    public void testPartitionedByFactId() throws InterruptedException {
+        ruleEngine = new DefaultRuleEngine(ruleManager, RulesEngineConfig.builder()
+                .partitionedByFactId(true)
+                .executorThreadPoolSize(4)
+                .build());
+        ruleEngine.start();
+        SimpleTestRule rule1 = new SimpleTestRule("rule1", 1, fact -> true);
+        ruleManager.add(rule1);
+        for (int i = 0; i < 1000; i++) {
+            ruleEngine.fire(new SimpleFact("fact" + (i % 8), "v", i, null), false);
+        }
+        Thread.sleep(500);
+        Assertions.assertEquals(1000, rule1.getHitFacts().size());
+        //同一个factId的fact需要按提交的顺序执行
+        Map<String, Integer> lastValues = new HashMap<>();
+        for (Fact fact : rule1.getHitFacts()) {
+            int v = (Integer) fact.getValue("v");
+            Integer last = lastValues.put(fact.getId(), v);
+            Assertions.assertTrue(last == null || last < v);
+        }
+    }
+
+    @Test
+    public void testConcernedFacts() throws InterruptedException {
+        SimpleTestRule rule1 = new SimpleTestRule("rule1", 1, fact -> true);
+        rule1.addConcernedFact("fact1");
+        SimpleTestRule rule2 = new SimpleTestRule("rule2", 2, fact -> true);
+        ruleManager.add(rule1);
+        ruleManager.add(rule2);
+        ruleEngine.fire(new SimpleFact("fact1", "v", 7, null), false);
+        ruleEngine.fire(new SimpleFact("fact2", "v", 7, null), true);
+        Thread.sleep(500);
+        Assertions.assertEquals(1, rule1.getHitFacts().size());
+        Assertions.assertEquals(2, rule2.getHitFacts().size());
+        //注册后再修改关注的fact，索引需要同步更新
+        rule1.addConcernedFact("fact2");
+        ruleEngine.fire(new SimpleFact("fact2", "v", 7, null), false);
+        Thread.sleep(500);
+        Assertions.assertEquals(2, rule1.getHitFacts().size());
+        Assertions.assertEquals(3, rule2.getHitFacts().size());
+    }
+
+    @Test
+    public void testAsyncActions() throws InterruptedException {
+        ruleEngine = new DefaultRuleEngine(ruleManager, RulesEngineConfig.builder()
+                .executorThreadPoolSize(1).asyncActions(true).actionConcurrencyPerRule(8).build());
+        ruleEngine.start();
+        SimpleTestRule slowRule = new SimpleTestRule("slowRule", 1, fact -> true) {
+            @Override
+            public void executeThen(Fact fact) {
+                try {
+                    //模拟阻塞的动作
+                    Thread.sleep(200);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                super.executeThen(fact);
+            }
+        };
+        SimpleTestRule fastRule = new SimpleTestRule("fastRule", 2, fact -> true);
+        ruleManager.add(slowRule);
+        ruleManager.add(fastRule);
+        for (int i = 0; i < 16; i++) {
+            ruleEngine.fire(new SimpleFact("fact" + i, "v", i, null), false);
+        }
+        //只有一个规则执行线程，慢动作不会阻塞其它规则的匹配
+        Thread.sleep(100);
+        Assertions.assertEquals(16, fastRule.getHitFacts().size());
+        Assertions.assertEquals(0, slowRule.getHitFacts().size());
+        //每个规则最多8个动作同时执行，16个动作分两轮完成
+        Thread.sleep(500);
+        Assertions.assertEquals(16, slowRule.getHitFacts().size());
+        ruleEngine.shutdown();
+    }
+
+    @Test
+    public void testActionLaneRecycled() throws InterruptedException {
+        ActionExecutor actionExecutor = new ActionExecutor(2, 100);
+        SimpleTestRule rule = new SimpleTestRule("rule1", 1, fact -> true);
+        CountDownLatch done = new CountDownLatch(50);
+        for (int i = 0; i < 50; i++) {
+            Assertions.assertTrue(actionExecutor.submit(rule, done::countDown));
+        }
+        Assertions.assertTrue(done.await(1, TimeUnit.SECONDS));
+        Thread.sleep(50);
+        //动作全部完成后规则的队列被回收，之后提交的动作使用新的队列
+        Assertions.assertEquals(0, actionExecutor.getLaneSize());
+        Assertions.assertTrue(actionExecutor.submit(rule, () -> {
+        }));
+        actionExecutor.shutdown(1, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void testSingleEventPerFact() throws InterruptedException {
+        //事件队列只有16个槽位，每个fact只占用一个
+        ruleEngine = new DefaultRuleEngine(ruleManager, RulesEngineConfig.builder()
+                .ringBufferSize(16).executorThreadPoolSize(2).singleEventPerFact(true).ruleEvaluationChunkSize(8).build());
+        ruleEngine.start();
+        Set<String> threads = ConcurrentHashMap.newKeySet();
+        List<SimpleTestRule> rules = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            int threshold = i;
+            rules.add(new SimpleTestRule("rule" + i, i, fact -> {
+                threads.add(Thread.currentThread().getName());
+                if (threshold == 50) {
+                    throw new IllegalStateException("mock error");
+                }
+                return (int) fact.getValue("v") > threshold;
+            }));
+        }
+        ruleManager.addAll(rules);
+        for (int i = 0; i < 20; i++) {
+            ruleEngine.fire(new SimpleFact("fact" + i, "v", 60, null), false);
+        }
+        Thread.sleep(500);
+        //单个规则的异常不影响同一fact的其它规则
+        for (int i = 0; i < 100; i++) {
+            SimpleTestRule rule = rules.get(i);
+            Assertions.assertEquals(i == 50 ? 0 : 20, rule.getHitFacts().size() + rule.getMissFacts().size());
+            Assertions.assertEquals(i < 60 && i != 50 ? 20 : 0, rule.getHitFacts().size());
+        }
+        //候选规则超过一段时由fork-join线程并行匹配
+        Assertions.assertTrue(threads.stream().anyMatch(name -> name.startsWith("fast-rule-evaluator")), threads.toString());
+        ruleEngine.shutdown();
+    }
+
+    @Test
+    public void testBatchEvaluation() throws InterruptedException {
+        ruleEngine = new DefaultRuleEngine(ruleManager, RulesEngineConfig.builder()
+                .batchEvaluation(true).evaluationBatchSize(8).build());
+        ruleEngine.start();
+        List<Integer> batchSizes = new CopyOnWriteArrayList<>();
+        SimpleTestRule rule1 = new SimpleTestRule("rule1", 1, new Condition() {
+            @Override
+            public boolean evaluate(Fact fact) {
+                return (int) fact.getValue("v") > 5;
+            }
+
+            @Override
+            public void evaluateBatch(List<? extends Fact> facts, BitSet out) {
+                batchSizes.add(facts.size());
+                Condition.super.evaluateBatch(facts, out);
+            }
+        });
+        SimpleTestRule rule2 = new SimpleTestRule("rule2", 2, new JaninoCondition("v > 5", new String[]{"v"}, new Class[]{int.class}));
+        //只关注fact0的规则只会收到fact0
+        SimpleTestRule rule3 = new SimpleTestRule("rule3", 3, fact -> true);
+        rule3.addConcernedFact("fact0");
+        ruleManager.addAll(List.of(rule1, rule2, rule3));
+        List<Fact> facts = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            facts.add(new SimpleFact("fact" + i, "v", i, null));
+        }
+        ruleEngine.fireAll(facts, false);
+        Thread.sleep(500);
+        //10个fact按evaluationBatchSize拆分为两批
+        Assertions.assertEquals(List.of(2, 8), batchSizes.stream().sorted().toList());
+        Assertions.assertEquals(4, rule1.getHitFacts().size());
+        Assertions.assertEquals(6, rule1.getMissFacts().size());
+        Assertions.assertEquals(List.of("fact6", "fact7", "fact8", "fact9"),
+                rule2.getHitFacts().stream().map(Fact::getId).sorted().toList());
+        Assertions.assertEquals(List.of("fact0"), rule3.getHitFacts().stream().map(Fact::getId).toList());
+        ruleEngine.shutdown();
+    }
+
+    @Test
+    public void testExecuteThenAsync() throws InterruptedException {
+        ruleEngine = new DefaultRuleEngine(ruleManager, RulesEngineConfig.builder()
+                .executorThreadPoolSize(1).skipOnFirstFailedRule(true).build());
+        ruleEngine.start();
+        List<String> executed = new CopyOnWriteArrayList<>();
+        //优先级最高的规则异步执行动作，fact的值为0时动作失败
+        SimpleTestRule asyncRule = new SimpleTestRule("asyncRule", 3, fact -> true) {
+            @Override
+            public CompletionStage<Boolean> executeThenAsync(Fact fact) {
+                return CompletableFuture.supplyAsync(() -> {
+                    executed.add(getId() + ":" + fact.getId());
+                    return !fact.getValue("v").equals(0);
+                }, CompletableFuture.delayedExecutor(200, TimeUnit.MILLISECONDS));
+            }
+        };
+        SimpleTestRule rule2 = new SimpleTestRule("rule2", 2, fact -> true) {
+            @Override
+            public void executeThen(Fact fact) {
+                executed.add(getId() + ":" + fact.getId());
+            }
+        };
+        ruleManager.add(asyncRule);
+        ruleManager.add(rule2);
+        ruleEngine.fire(new SimpleFact("fact1", "v", 0, null), true);
+        ruleEngine.fire(new SimpleFact("fact2", "v", 1, null), true);
+        //动作未完成前不会继续匹配后续规则，也不会阻塞其它fact
+        Thread.sleep(100);
+        Assertions.assertTrue(executed.isEmpty());
+        Thread.sleep(400);
+        Assertions.assertEquals(List.of("asyncRule:fact1", "asyncRule:fact2", "rule2:fact2"),
+                executed.stream().sorted().toList());
+        Assertions.assertTrue(executed.indexOf("asyncRule:fact2") < executed.indexOf("rule2:fact2"));
+        ruleEngine.shutdown();
+    }
+
+    @Test
+    public void testResumeOnFullRingBuffer() throws Exception {
+        ruleEngine = new DefaultRuleEngine(ruleManager, RulesEngineConfig.builder()
+                .executorThreadPoolSize(1).ringBufferSize(8).build());
+        ruleEngine.start();
+        CompletableFuture<Boolean> gate = new CompletableFuture<>();
+        CountDownLatch paused = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        SimpleTestRule gateRule = new SimpleTestRule("gateRule", 2, fact -> true) {
+            @Override
+            public CompletionStage<Boolean> executeThenAsync(Fact fact) {
+                switch (fact.getId()) {
+                    case "blocker":
+                        return gate;
+                    case "pause":
+                        paused.countDown();
+                        try {
+                            release.await();
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                        break;
+                    case "opener":
+                        //等待发布线程填满事件队列后，在规则执行线程中完成另一个fact等待的动作
+                        try {
+                            Thread.sleep(50);
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                        gate.complete(true);
+                        break;
+                    default:
+                }
+                return super.executeThenAsync(fact);
+            }
+        };
+        SimpleTestRule rule2 = new SimpleTestRule("rule2", 1, fact -> true);
+        ruleManager.add(gateRule);
+        ruleManager.add(rule2);
+        ruleEngine.fire(new SimpleFact("blocker", "v", 1, null), true);
+        ruleEngine.fire(new SimpleFact("pause", "v", 1, null), true);
+        Assertions.assertTrue(paused.await(1, TimeUnit.SECONDS));
+        CompletableFuture<Void> producer = CompletableFuture.runAsync(() -> {
+            ruleEngine.fire(new SimpleFact("opener", "v", 1, null), true);
+            for (int i = 0; i < 32; i++) {
+                ruleEngine.fire(new SimpleFact("fact" + i, "v", i, null), true);
+            }
+        });
+        Thread.sleep(100);
+        release.countDown();
+        producer.get(2, TimeUnit.SECONDS);
+        Thread.sleep(200);
+        Assertions.assertEquals(35, rule2.getHitFacts().size());
+        ruleEngine.shutdown();
+    }
+
+    @Test
+    public void testAsyncActionsKeepFactOrderInPartition() throws Exception {
+        ruleEngine = new DefaultRuleEngine(ruleManager, RulesEngineConfig.builder()
+                .executorThreadPoolSize(2).partitionedByFactId(true).asyncActions(true).build());
+        ruleEngine.start();
+        SimpleTestRule slowRule = new SimpleTestRule("slowRule", 2, fact -> true) {
+            @Override
+            public CompletionStage<Boolean> executeThenAsync(Fact fact) {
+                //先到达的事件动作完成得更晚，不暂存同一个fact之后的事件时，后到达的事件会先完成匹配
+                long delay = 200 - 90L * Integer.parseInt(fact.getValue("v").toString());
+                return CompletableFuture.runAsync(() -> {
+                }, CompletableFuture.delayedExecutor(delay, TimeUnit.MILLISECONDS)).thenCompose(v -> super.executeThenAsync(fact));
+            }
+        };
+        SimpleTestRule rule2 = new SimpleTestRule("rule2", 1, fact -> true);
+        ruleManager.add(slowRule);
+        ruleManager.add(rule2);
+        for (int i = 0; i < 3; i++) {
+            ruleEngine.fire(new SimpleFact("ordered", "v", i, null), true);
+        }
+        long deadline = System.currentTimeMillis() + 2000;
+        while (rule2.getHitFacts().size() < 3 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        List<Object> values = rule2.getHitFacts().stream().map(f -> f.getValue("v")).toList();
+        Assertions.assertEquals(List.of(0, 1, 2), values);
+        ruleEngine.shutdown();
+    }
+
     @Test
     public void testFireByCollector() throws InterruptedException {
         MockManualCollector collector = new MockManualCollector();
@@ -0,0 +1,66 @@
+package com.github.davidfantasy.fastrule;
+
+import com.github.davidfantasy.fastrule.fact.Fact;
+import com.github.davidfantasy.fastrule.fact.SimpleFact;
+import com.github.davidfantasy.fastrule.metrics.InMemoryRuleEngineMetrics;
+import com.github.davidfantasy.fastrule.metrics.StripedHistogram;
+import com.github.davidfantasy.fastrule.mock.SimpleTestRule;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class TestRuleEngineMetrics {
+
+    @Test
+    public void testRuleMetrics() throws InterruptedException {
+        InMemoryRuleEngineMetrics metrics = new InMemoryRuleEngineMetrics();
+        RuleManager ruleManager = new DefaultRuleManager();
+        RuleEngine ruleEngine = new DefaultRuleEngine(ruleManager, RulesEngineConfig.builder()
+                .ringBufferSize(64)
+                .metrics(metrics)
+                .build());
+        ruleEngine.start();
+        ruleManager.add(new SimpleTestRule("rule1", 1, fact -> (Integer) fact.getValue("v") > 5));
+        ruleManager.add(new SimpleTestRule("rule2", 2, fact -> {
+            if ((Integer) fact.getValue("v") == 3) {
+                throw new IllegalStateException("mock error");
+            }
+            return true;
+        }));
+        List<Fact> facts = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            facts.add(new SimpleFact("fact" + i, "v", i, null));
+        }
+        ruleEngine.fireAll(facts, false);
+        Thread.sleep(500);
+        Assertions.assertEquals(64, metrics.getRemainingCapacity());
+        ruleEngine.shutdown();
+        InMemoryRuleEngineMetrics.RuleStats stats1 = metrics.getRuleStats("rule1");
+        Assertions.assertEquals(4, stats1.getHits());
+        Assertions.assertEquals(6, stats1.getMisses());
+        Assertions.assertEquals(4, stats1.getExecuteThenLatency().getCount());
+        InMemoryRuleEngineMetrics.RuleStats stats2 = metrics.getRuleStats("rule2");
+        Assertions.assertEquals(9, stats2.getHits());
+        Assertions.assertEquals(1, stats2.getFailures());
+        Assertions.assertEquals(20, metrics.getQueueDelay().getCount());
+    }
+
+    @Test
+    public void testHistogram() {
+        StripedHistogram histogram = new StripedHistogram();
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(i);
+        }
+        Assertions.assertEquals(1000, histogram.getCount());
+        //相对误差不超过12.5%
+        Assertions.assertEquals(500, histogram.getValueAtPercentile(50), 500 * 0.125);
+        Assertions.assertEquals(990, histogram.getValueAtPercentile(99), 990 * 0.125);
+        Assertions.assertTrue(histogram.getMax() >= 1000);
+        Assertions.assertEquals(500, histogram.getMean(), 500 * 0.125);
+        histogram.reset();
+        Assertions.assertEquals(0, histogram.getCount());
+    }
+
+}
@@ -0,0 +1,288 @@
+package com.github.davidfantasy.fastrule;
+
+import com.github.davidfantasy.fastrule.condition.AndCondition;
+import com.github.davidfantasy.fastrule.condition.Condition;
+import com.github.davidfantasy.fastrule.condition.FieldCondition;
+import com.github.davidfantasy.fastrule.fact.Fact;
+import com.github.davidfantasy.fastrule.fact.SimpleFact;
+import com.github.davidfantasy.fastrule.mock.SimpleTestRule;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+public class TestRuleManager {
+
+    @Test
+    public void testDefaultRuleManager() {
+        verifyRuleManager(new DefaultRuleManager());
+    }
+
+    @Test
+    public void testCopyOnWriteRuleManager() {
+        verifyRuleManager(new CopyOnWriteRuleManager());
+    }
+
+    @Test
+    public void testCustomRuleManager() {
+        //只实现了基础方法的规则管理器，按factId遍历使用默认实现
+        Map<String, Rule> ruleMap = new TreeMap<>();
+        RuleManager ruleManager = new RuleManager() {
+            @Override
+            public void add(Rule rule) {
+                ruleMap.put(rule.getId(), rule);
+            }
+
+            @Override
+            public Rule remove(String ruleId) {
+                return ruleMap.remove(ruleId);
+            }
+
+            @Override
+            public Rule get(String ruleId) {
+                return ruleMap.get(ruleId);
+            }
+
+            @Override
+            public void forEach(RuleConsumer consumer) {
+                for (Rule rule : ruleMap.values()) {
+                    if (!consumer.accept(rule)) {
+                        break;
+                    }
+                }
+            }
+
+            @Override
+            public void clear() {
+                ruleMap.clear();
+            }
+        };
+        BaseRule rule1 = new SimpleTestRule("rule1", 1, fact -> true);
+        rule1.addConcernedFact("fact1");
+        ruleManager.add(rule1);
+        ruleManager.add(new SimpleTestRule("rule2", 1, fact -> true));
+        Assertions.assertEquals(List.of("rule1", "rule2"), ids(ruleManager, "fact1"));
+        Assertions.assertEquals(List.of("rule2"), ids(ruleManager, "fact2"));
+        Assertions.assertEquals(2, ruleManager.size());
+    }
+
+    @Test
+    public void testBatchUpdate() {
+        RuleManager ruleManager = new CopyOnWriteRuleManager();
+        ruleManager.addAll(List.of(new SimpleTestRule("rule1", 1, fact -> true),
+                new SimpleTestRule("rule2", 2, fact -> true)));
+        Assertions.assertEquals(List.of("rule2", "rule1"), ids(ruleManager, null));
+        //批量添加时存在重复的规则，整批都不会生效
+        Assertions.assertThrows(IllegalArgumentException.class, () -> ruleManager.addAll(List.of(
+                new SimpleTestRule("rule3", 3, fact -> true),
+                new SimpleTestRule("rule1", 1, fact -> true))));
+        Assertions.assertNull(ruleManager.get("rule3"));
+        ruleManager.removeAll(List.of("rule1", "rule2"));
+        Assertions.assertTrue(ids(ruleManager, null).isEmpty());
+    }
+
+    @Test
+    public void testCoalescedReindex() {
+        RuleManager ruleManager = new CopyOnWriteRuleManager();
+        SimpleTestRule rule1 = new SimpleTestRule("rule1", 1, fact -> true);
+        ruleManager.add(rule1);
+        long version = ruleManager.getVersion();
+        //多次修改关注的fact只在下一次读取时重建一次快照
+        rule1.addConcernedFact("fact1");
+        rule1.addConcernedFact("fact2");
+        rule1.addConcernedFact("fact3");
+        Assertions.assertEquals(List.of("rule1"), ids(ruleManager, "fact2"));
+        Assertions.assertTrue(ids(ruleManager, "fact4").isEmpty());
+        Assertions.assertEquals(version + 1, ruleManager.getVersion());
+    }
+
+    @Test
+    public void testAlphaNetwork() {
+        verifyAlphaNetwork(new CopyOnWriteRuleManager(true));
+        verifyAlphaNetwork(new DefaultRuleManager(true));
+        //通过引擎配置开启
+        RuleManager ruleManager = new DefaultRuleManager();
+        new DefaultRuleEngine(ruleManager, RulesEngineConfig.builder().alphaNetworkEnabled(true).build());
+        verifyAlphaNetwork(ruleManager);
+    }
+
+    @Test
+    public void testAlphaIntervalIndex() {
+        RuleManager indexed = new CopyOnWriteRuleManager(true);
+        RuleManager plain = new CopyOnWriteRuleManager();
+        Random random = new Random(7);
+        List<Rule> rules = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            int lower = random.nextInt(1000);
+            int upper = lower + random.nextInt(100) - 10;
+            rules.add(fieldRule("rule" + i, i, FieldCondition.between("v", lower, upper)));
+        }
+        indexed.addAll(rules);
+        plain.addAll(rules);
+        //区间树只负责排除规则，候选规则中条件满足的规则和逐个匹配的结果一致
+        for (int v = -5; v < 1110; v++) {
+            Fact fact = fact("v", v);
+            Assertions.assertEquals(hits(plain, fact), hits(indexed, fact), "v=" + v);
+        }
+    }
+
+    private List<String> hits(RuleManager ruleManager, Fact fact) {
+        List<String> ids = new ArrayList<>();
+        ruleManager.forEach(fact, rule -> {
+            if (rule.evaluate(fact)) {
+                ids.add(rule.getId());
+            }
+            return true;
+        });
+        return ids;
+    }
+
+    private void verifyAlphaNetwork(RuleManager ruleManager) {
+        ruleManager.addAll(List.of(
+                fieldRule("eq", 5, FieldCondition.eq("status", "alarm")),
+                fieldRule("in", 4, FieldCondition.in("level", 1, 2)),
+                fieldRule("gt", 3, FieldCondition.gt("temperature", 30)),
+                fieldRule("between", 2, new AndCondition(List.of(FieldCondition.between("temperature", 10, 20),
+                        FieldCondition.lt("humidity", 50)))),
+                new SimpleTestRule("always", 1, fact -> true)));
+        Assertions.assertEquals(List.of("eq", "always"), matched(ruleManager, fact("status", "alarm")));
+        Assertions.assertEquals(List.of("in", "always"), matched(ruleManager, fact("level", 2L)));
+        Assertions.assertEquals(List.of("gt", "always"), matched(ruleManager, fact("temperature", 30.5)));
+        Assertions.assertEquals(List.of("between", "always"), matched(ruleManager, fact("temperature", 10)));
+        Assertions.assertEquals(List.of("always"), matched(ruleManager, fact("temperature", 25)));
+        //索引只负责排除规则，不改变关注fact的过滤结果
+        ((BaseRule) ruleManager.get("eq")).addConcernedFact("other");
+        Assertions.assertEquals(List.of("always"), matched(ruleManager, fact("status", "alarm")));
+        //重写了evaluate的规则不一定使用condition，不能被索引排除
+        ruleManager.add(new BaseRule("custom", "custom", 0, null, FieldCondition.eq("status", "alarm")) {
+            @Override
+            public boolean evaluate(Fact fact) {
+                return true;
+            }
+
+            @Override
+            public void executeThen(Fact fact) {
+            }
+        });
+        Assertions.assertEquals(List.of("always", "custom"), matched(ruleManager, fact("level", 3L)));
+    }
+
+    @Test
+    public void testApplyDiff() {
+        verifyApplyDiff(new DefaultRuleManager());
+        verifyApplyDiff(new CopyOnWriteRuleManager());
+    }
+
+    private void verifyApplyDiff(RuleManager ruleManager) {
+        ruleManager.addAll(List.of(new SimpleTestRule("rule1", 1, fact -> true),
+                new SimpleTestRule("rule2", 2, fact -> true)));
+        RuleSet before = ruleManager.getRuleSet();
+        long version = ruleManager.apply(RuleSetDiff.builder()
+                .put(() -> new SimpleTestRule("rule1", 3, fact -> true))
+                .put(new SimpleTestRule("rule3", 0, fact -> true))
+                .remove("rule2")
+                .build());
+        Assertions.assertTrue(version > before.getVersion());
+        Assertions.assertEquals(version, ruleManager.getVersion());
+        Assertions.assertEquals(List.of("rule1", "rule3"), ids(ruleManager, null));
+        Assertions.assertEquals(3, ruleManager.get("rule1").getPriority());
+        //变更前取得的规则集不受影响
+        Assertions.assertEquals(2, before.size());
+        Assertions.assertEquals(1, before.get("rule1").getPriority());
+        Assertions.assertNotNull(before.get("rule2"));
+        //任意一个工厂创建失败时整组变更都不会生效
+        Assertions.assertThrows(IllegalStateException.class, () -> ruleManager.apply(RuleSetDiff.builder()
+                .remove("rule3")
+                .put(() -> {
+                    throw new IllegalStateException("compile failed");
+                })
+                .build()));
+        Assertions.assertEquals(version, ruleManager.getVersion());
+        Assertions.assertNotNull(ruleManager.get("rule3"));
+    }
+
+    @Test
+    public void testApplyKeepsTriggeredState() {
+        RuleManager ruleManager = new CopyOnWriteRuleManager();
+        DelayStatefulTriggerRule rule = delayRule(1000L);
+        rule.setTriggeredStatus("fact1", true);
+        ruleManager.add(rule);
+        ruleManager.apply(RuleSetDiff.builder().put(() -> delayRule(2000L)).build());
+        DelayStatefulTriggerRule replaced = (DelayStatefulTriggerRule) ruleManager.get("rule1");
+        Assertions.assertNotSame(rule, replaced);
+        //替换后的规则继续使用原规则的触发状态，不会重复触发
+        Assertions.assertTrue(replaced.hasTriggered("fact1"));
+    }
+
+    private DelayStatefulTriggerRule delayRule(long triggerDelayMS) {
+        return new DelayStatefulTriggerRule("rule1", "rule1", 1, null, fact -> true, triggerDelayMS) {
+            @Override
+            protected boolean doExecuteThen(Fact fact) {
+                return true;
+            }
+
+            @Override
+            protected boolean doExecuteElse(Fact fact) {
+                return true;
+            }
+        };
+    }
+
+    private Rule fieldRule(String id, int priority, Condition condition) {
+        return new BaseRule(id, id, priority, null, condition) {
+            @Override
+            public void executeThen(Fact fact) {
+            }
+        };
+    }
+
+    private Fact fact(String name, Object value) {
+        return new SimpleFact("fact1", name, value, System.currentTimeMillis());
+    }
+
+    private List<String> matched(RuleManager ruleManager, Fact fact) {
+        List<String> ids = new ArrayList<>();
+        ruleManager.forEach(fact, rule -> ids.add(rule.getId()));
+        return ids;
+    }
+
+    private void verifyRuleManager(RuleManager ruleManager) {
+        SimpleTestRule rule1 = new SimpleTestRule("rule1", 1, fact -> true);
+        SimpleTestRule rule2 = new SimpleTestRule("rule2", 2, fact -> true);
+        SimpleTestRule rule3 = new SimpleTestRule("rule3", 3, fact -> true);
+        rule2.addConcernedFact("fact1");
+        ruleManager.add(rule1);
+        ruleManager.add(rule2);
+        ruleManager.add(rule3);
+        Assertions.assertEquals(List.of("rule3", "rule2", "rule1"), ids(ruleManager, null));
+        Assertions.assertEquals(List.of("rule3", "rule2", "rule1"), ids(ruleManager, "fact1"));
+        Assertions.assertEquals(List.of("rule3", "rule1"), ids(ruleManager, "fact2"));
+        rule3.addConcernedFact("fact2");
+        Assertions.assertEquals(List.of("rule2", "rule1"), ids(ruleManager, "fact1"));
+        Assertions.assertEquals(List.of("rule3", "rule1"), ids(ruleManager, "fact2"));
+        Assertions.assertSame(rule2, ruleManager.remove("rule2"));
+        Assertions.assertNull(ruleManager.get("rule2"));
+        Assertions.assertEquals(List.of("rule1"), ids(ruleManager, "fact1"));
+        //已移除的规则再修改关注的fact，不应影响规则管理器
+        rule2.addConcernedFact("fact2");
+        Assertions.assertEquals(List.of("rule3", "rule1"), ids(ruleManager, "fact2"));
+        ruleManager.clear();
+        Assertions.assertTrue(ids(ruleManager, null).isEmpty());
+    }
+
+    private List<String> ids(RuleManager ruleManager, String factId) {
+        List<String> ids = new ArrayList<>();
+        RuleConsumer consumer = rule -> ids.add(rule.getId());
+        if (factId == null) {
+            ruleManager.forEach(consumer);
+        } else {
+            ruleManager.forEach(factId, consumer);
+        }
+        return ids;
+    }
+
+}
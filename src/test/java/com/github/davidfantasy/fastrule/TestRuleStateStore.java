@@ -0,0 +1,144 @@
+package com.github.davidfantasy.fastrule;
+
+import com.github.davidfantasy.fastrule.fact.Fact;
+import com.github.davidfantasy.fastrule.fact.SimpleFact;
+import com.github.davidfantasy.fastrule.mock.SimpleDelayStatefulTriggerRule;
+import com.github.davidfantasy.fastrule.state.MappedJournalStateStore;
+import com.github.davidfantasy.fastrule.state.RuleState;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+public class TestRuleStateStore {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    public void testJournalReplay() throws Exception {
+        //日志段很小，写入过程中会切换多个日志段
+        MappedJournalStateStore store = new MappedJournalStateStore(dir, 1024, 0);
+        store.open();
+        for (int i = 0; i < 100; i++) {
+            store.save("rule1", "fact" + i, new RuleState(true, 0));
+        }
+        store.save("rule1", "fact1", new RuleState(false, 123));
+        store.remove("rule1", "fact2");
+        store.snapshot();
+        store.save("rule2", "fact1", new RuleState(true, 0));
+        store.remove("rule1", "fact3");
+        //模拟进程崩溃，不调用close
+        MappedJournalStateStore recovered = new MappedJournalStateStore(dir, 1024, 0);
+        recovered.open();
+        Map<String, RuleState> rule1 = load(recovered, "rule1");
+        Assertions.assertEquals(98, rule1.size());
+        Assertions.assertEquals(new RuleState(false, 123), rule1.get("fact1"));
+        Assertions.assertFalse(rule1.containsKey("fact2"));
+        Assertions.assertFalse(rule1.containsKey("fact3"));
+        Assertions.assertEquals(Map.of("fact1", new RuleState(true, 0)), load(recovered, "rule2"));
+        recovered.close();
+        //关闭时生成快照，快照之前的日志段都被清理
+        try (Stream<Path> files = Files.list(dir)) {
+            Assertions.assertEquals(2, files.count());
+        }
+    }
+
+    @Test
+    public void testRestoreOnStart() throws InterruptedException {
+        SimpleDelayStatefulTriggerRule rule = new SimpleDelayStatefulTriggerRule("rule1", (fact) -> {
+            int v = Integer.parseInt(fact.getValue("v").toString());
+            return v < 10;
+        }, null);
+        RuleEngine ruleEngine = startEngine(rule);
+        ruleEngine.fire(new SimpleFact("fact1", "v", 7, null), true);
+        Thread.sleep(100);
+        Assertions.assertEquals(1, rule.getHitFacts().size());
+        ruleEngine.shutdown();
+        //重启后fact1仍处于已触发状态，不会重复触发
+        SimpleDelayStatefulTriggerRule restarted = new SimpleDelayStatefulTriggerRule("rule1", (fact) -> {
+            int v = Integer.parseInt(fact.getValue("v").toString());
+            return v < 10;
+        }, null);
+        ruleEngine = startEngine(restarted);
+        Assertions.assertTrue(restarted.hasTriggered("fact1"));
+        ruleEngine.fire(new SimpleFact("fact1", "v", 8, null), true);
+        ruleEngine.fire(new SimpleFact("fact2", "v", 8, null), true);
+        Thread.sleep(100);
+        Assertions.assertEquals(List.of("fact2"), restarted.getHitFacts().stream().map(Fact::getId).toList());
+        ruleEngine.shutdown();
+    }
+
+    @Test
+    public void testConcurrentWrites() throws Exception {
+        MappedJournalStateStore store = new MappedJournalStateStore(dir, 4096, 0);
+        store.open();
+        Thread[] writers = new Thread[4];
+        for (int t = 0; t < writers.length; t++) {
+            String ruleId = "rule" + t;
+            writers[t] = new Thread(() -> {
+                for (int i = 0; i < 1000; i++) {
+                    store.save(ruleId, "fact" + i, new RuleState(true, i));
+                    if (i % 100 == 0) {
+                        store.snapshot();
+                    }
+                }
+            });
+            writers[t].start();
+        }
+        for (Thread writer : writers) {
+            writer.join();
+        }
+        MappedJournalStateStore recovered = new MappedJournalStateStore(dir, 4096, 0);
+        recovered.open();
+        for (int t = 0; t < writers.length; t++) {
+            Map<String, RuleState> states = load(recovered, "rule" + t);
+            Assertions.assertEquals(1000, states.size());
+            Assertions.assertEquals(new RuleState(true, 999), states.get("fact999"));
+        }
+        recovered.close();
+    }
+
+    @Test
+    public void testBindLateAddedRule() throws InterruptedException {
+        RuleManager ruleManager = new DefaultRuleManager();
+        RuleEngine ruleEngine = new DefaultRuleEngine(ruleManager, RulesEngineConfig.builder()
+                .ruleStateStore(new MappedJournalStateStore(dir)).build());
+        ruleEngine.start();
+        //引擎启动后才添加的规则也会绑定状态存储
+        SimpleDelayStatefulTriggerRule rule = new SimpleDelayStatefulTriggerRule("rule1", (fact) -> true, null);
+        rule.enable();
+        ruleManager.add(rule);
+        ruleEngine.fire(new SimpleFact("fact1", "v", 7, null), true);
+        Thread.sleep(100);
+        Assertions.assertEquals(1, rule.getHitFacts().size());
+        ruleEngine.shutdown();
+        SimpleDelayStatefulTriggerRule restarted = new SimpleDelayStatefulTriggerRule("rule1", (fact) -> true, null);
+        ruleEngine = startEngine(restarted);
+        Assertions.assertTrue(restarted.hasTriggered("fact1"));
+        ruleEngine.shutdown();
+    }
+
+    private RuleEngine startEngine(SimpleDelayStatefulTriggerRule rule) {
+        rule.enable();
+        RuleManager ruleManager = new DefaultRuleManager();
+        ruleManager.add(rule);
+        RuleEngine ruleEngine = new DefaultRuleEngine(ruleManager, RulesEngineConfig.builder()
+                .ruleStateStore(new MappedJournalStateStore(dir)).build());
+        ruleEngine.start();
+        return ruleEngine;
+    }
+
+    private Map<String, RuleState> load(MappedJournalStateStore store, String ruleId) {
+        Map<String, RuleState> states = new HashMap<>();
+        store.load(ruleId, states::put);
+        return states;
+    }
+
+}
@@ -0,0 +1,60 @@
+package com.github.davidfantasy.fastrule;
+
+import com.github.davidfantasy.fastrule.fact.Fact;
+import com.github.davidfantasy.fastrule.fact.SimpleFact;
+import com.github.davidfantasy.fastrule.mock.SimpleTestRule;
+import com.github.davidfantasy.fastrule.trace.RuleTracer;
+import com.github.davidfantasy.fastrule.trace.TraceEvent;
+import com.github.davidfantasy.fastrule.trace.TraceRecord;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class TestRuleTracer {
+
+    @Test
+    public void testTraceSingleRule() throws InterruptedException {
+        RuleManager ruleManager = new DefaultRuleManager();
+        RuleEngine ruleEngine = new DefaultRuleEngine(ruleManager, RulesEngineConfig.builder().build());
+        ruleEngine.start();
+        ruleManager.add(new SimpleTestRule("rule1", 1, fact -> (Integer) fact.getValue("v") > 5));
+        ruleManager.add(new SimpleTestRule("rule2", 2, fact -> true));
+        List<Fact> facts = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            facts.add(new SimpleFact("fact" + i, "v", i, null));
+        }
+        RuleTracer tracer = ruleEngine.getConfig().getTracer();
+        ruleEngine.fireAll(facts, false);
+        Thread.sleep(300);
+        Assertions.assertFalse(tracer.isActive());
+        Assertions.assertTrue(tracer.dump().isEmpty());
+        tracer.enable("rule1", 1);
+        ruleEngine.fireAll(facts, true);
+        Thread.sleep(300);
+        ruleEngine.shutdown();
+        List<TraceRecord> records = tracer.dump();
+        Assertions.assertEquals(10, records.size());
+        Assertions.assertTrue(records.stream().allMatch(r -> r.ruleId().equals("rule1")));
+        Assertions.assertEquals(4, records.stream().filter(r -> r.event() == TraceEvent.HIT).count());
+        Assertions.assertEquals(6, records.stream().filter(r -> r.event() == TraceEvent.MISS).count());
+    }
+
+    @Test
+    public void testRingBuffer() {
+        RuleTracer tracer = new RuleTracer(4);
+        SimpleTestRule rule = new SimpleTestRule("rule1", 1, fact -> true);
+        tracer.enableAll(1);
+        for (int i = 0; i < 10; i++) {
+            tracer.trace(rule, new SimpleFact("fact" + i, "v", i, null), TraceEvent.HIT, null);
+        }
+        List<TraceRecord> records = tracer.dump();
+        Assertions.assertEquals(List.of("fact6", "fact7", "fact8", "fact9"), records.stream().map(TraceRecord::factId).toList());
+        tracer.clear();
+        Assertions.assertTrue(tracer.dump().isEmpty());
+        tracer.disableAll();
+        Assertions.assertFalse(tracer.isActive());
+    }
+
+}
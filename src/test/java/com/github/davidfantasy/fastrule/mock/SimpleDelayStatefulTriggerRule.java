@@ -34,10 +34,9 @@ public class SimpleDelayStatefulTriggerRule extends DelayStatefulTriggerRule {
     }
 
     public void clear() {
-        delayedFacts.clear();
+        clearState();
         hitFacts.clear();
         missFacts.clear();
-        triggered.set(false);
     }
 
 }